@@ -7,11 +7,26 @@ if [ $? -ne 0 ] || [ -z "$TS_AUTH_KEY" ]; then
   exit 1
 fi
 
+function report_ready() {
+    if [ -z "${NODE_READY_URL}" ] || [ -z "${NODE_READY_TOKEN}" ]; then
+        return
+    fi
+
+    for attempt in 1 2 3 4 5; do
+        if curl -sf -X POST -H "x-vpn-node-event: ready" -H "x-vpn-node-token: ${NODE_READY_TOKEN}" "${NODE_READY_URL}" > /dev/null; then
+            return
+        fi
+        sleep 1
+    done
+    echo "Warning: failed to report the node readiness, the bot will rely on ECS health checks."
+}
+
 function up() {
     until tailscale up --authkey="${TS_AUTH_KEY}" --hostname="${TAILSCALE_HOSTNAME}" --advertise-exit-node
     do
         sleep 0.1
     done
+    report_ready
 }
 
 # send this function into the background
@@ -13,8 +13,12 @@ import org.github.akarkin1.auth.RequestAuthenticator;
 import org.github.akarkin1.auth.RequestAuthenticatorConfigurer;
 import org.github.akarkin1.auth.s3.PermissionsService;
 import org.github.akarkin1.auth.s3.PermissionsServiceConfigurer;
-import org.github.akarkin1.deduplication.FSUpdateEventsRegistry;
+import org.github.akarkin1.context.InvocationDeadline;
+import org.github.akarkin1.context.RequestSnapshot;
+import org.github.akarkin1.deduplication.EventsExpirySweeper;
+import org.github.akarkin1.deduplication.ExpiringRecords;
 import org.github.akarkin1.deduplication.UpdateEventsRegistry;
+import org.github.akarkin1.deduplication.UpdateEventsRegistryConfigurer;
 import org.github.akarkin1.dispatcher.command.AssignRolesCommand;
 import org.github.akarkin1.dispatcher.CommandDispatcher;
 import org.github.akarkin1.dispatcher.command.DeleteUsersCommand;
@@ -24,6 +28,12 @@ import org.github.akarkin1.dispatcher.command.ListUsersCommand;
 import org.github.akarkin1.dispatcher.command.RunNodeCommand;
 import org.github.akarkin1.dispatcher.command.SupportedRegionCommand;
 import org.github.akarkin1.dispatcher.command.VersionCommand;
+import org.github.akarkin1.queue.CommandQueue;
+import org.github.akarkin1.queue.CommandQueueConfigurer;
+import org.github.akarkin1.queue.LambdaEventCommandQueue;
+import org.github.akarkin1.readiness.NodeReadinessCallbackHandler;
+import org.github.akarkin1.readiness.NodeReadinessRegistry;
+import org.github.akarkin1.readiness.NodeReadinessRegistryConfigurer;
 import org.github.akarkin1.tailscale.TailscaleEcsNodeServiceConfigurer;
 import org.github.akarkin1.tailscale.TailscaleNodeService;
 import org.github.akarkin1.tg.BotCommunicator;
@@ -34,13 +44,15 @@ import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.User;
 import org.telegram.telegrambots.meta.bots.AbsSender;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static org.github.akarkin1.config.ConfigManager.getAppVersion;
 import static org.github.akarkin1.config.ConfigManager.getBotToken;
 import static org.github.akarkin1.config.ConfigManager.getBotUsernameEnv;
-import static org.github.akarkin1.config.ConfigManager.getEventRootDir;
-import static org.github.akarkin1.config.ConfigManager.getEventTtlSec;
+import static org.github.akarkin1.config.ConfigManager.getEventSweepBatchSize;
+import static org.github.akarkin1.config.ConfigManager.getEventSweepIntervalMs;
 import static org.github.akarkin1.tg.TelegramBotFactory.sender;
 
 @Log4j2
@@ -51,16 +63,29 @@ public class TailscaleVpnLambdaHandler implements
   private static final CommandDispatcher COMMAND_DISPATCHER;
   private static final BotCommunicator COMMUNICATOR;
   private static final UpdateEventsRegistry EVENTS_REGISTRY;
+  private static final List<EventsExpirySweeper> EXPIRY_SWEEPERS = new ArrayList<>();
   private static final String BOT_SERVER_ERROR = "${bot.internal.error}";
   private static final RequestAuthenticator REQUEST_AUTHENTICATOR;
+  private static final NodeReadinessCallbackHandler READINESS_CALLBACK_HANDLER;
+  private static final CommandQueue COMMAND_QUEUE;
 
   static {
     REQUEST_AUTHENTICATOR = new RequestAuthenticatorConfigurer().configure();
 
-    EVENTS_REGISTRY = new FSUpdateEventsRegistry(getEventTtlSec(), getEventRootDir());
+    EVENTS_REGISTRY = new UpdateEventsRegistryConfigurer().configure();
+    final NodeReadinessRegistry readinessRegistry = new NodeReadinessRegistryConfigurer()
+        .configure();
+    if (EVENTS_REGISTRY instanceof ExpiringRecords expiringEvents) {
+      EXPIRY_SWEEPERS.add(expirySweeper(expiringEvents));
+    }
+    if (readinessRegistry instanceof ExpiringRecords expiringTokens) {
+      EXPIRY_SWEEPERS.add(expirySweeper(expiringTokens));
+    }
+    READINESS_CALLBACK_HANDLER = new NodeReadinessCallbackHandler(readinessRegistry);
 
     final AbsSender sender = sender(getBotToken(), getBotUsernameEnv());
-    final TailscaleNodeService nodeService = new TailscaleEcsNodeServiceConfigurer().configure();
+    final TailscaleNodeService nodeService = new TailscaleEcsNodeServiceConfigurer()
+        .configure(readinessRegistry);
     final PermissionsService permissionsService = new PermissionsServiceConfigurer().configure();
     final Authorizer authorizer = new AuthorizerConfigurer().configure(permissionsService);
 
@@ -84,6 +109,8 @@ public class TailscaleVpnLambdaHandler implements
                                                               COMMUNICATOR::sendMessageToTheBot));
     COMMAND_DISPATCHER.registerCommand("/listRegisteredUsers",
                                        new ListUsersCommand(permissionsService));
+
+    COMMAND_QUEUE = new CommandQueueConfigurer().configure(TailscaleVpnLambdaHandler::runCommand);
   }
 
   @Override
@@ -91,6 +118,15 @@ public class TailscaleVpnLambdaHandler implements
       APIGatewayProxyRequestEvent gwEvent,
       Context context) {
 
+    InvocationDeadline.init(context);
+    if (NodeReadinessCallbackHandler.isReadinessCallback(gwEvent)) {
+      return READINESS_CALLBACK_HANDLER.handle(gwEvent);
+    }
+
+    if (LambdaEventCommandQueue.isQueuedCommand(gwEvent)) {
+      return runQueuedCommand(gwEvent);
+    }
+
     Update update;
     try {
       log.debug("Got request: {}", serializeObject(gwEvent));
@@ -98,6 +134,8 @@ public class TailscaleVpnLambdaHandler implements
       String receivedPayload = gwEvent.getBody();
       log.debug("Received payload: {}", receivedPayload);
       if (StringUtils.isBlank(receivedPayload)) {
+        // health-check pings keep the registry tidy when no updates come in
+        sweepExpiredEvents();
         return new APIGatewayProxyResponseEvent()
             .withBody("VPN Bot Lambda performs noramlly. Application version: %s "
                           .formatted(getAppVersion()))
@@ -121,6 +159,9 @@ public class TailscaleVpnLambdaHandler implements
       return new APIGatewayProxyResponseEvent()
           .withBody("{}")
           .withStatusCode(201);
+    } finally {
+      // the command has replied or been queued by now, only the webhook response is pending
+      sweepExpiredEvents();
     }
 
     return new APIGatewayProxyResponseEvent()
@@ -128,6 +169,14 @@ public class TailscaleVpnLambdaHandler implements
         .withStatusCode(201);
   }
 
+  private static EventsExpirySweeper expirySweeper(ExpiringRecords records) {
+    return new EventsExpirySweeper(records, getEventSweepIntervalMs(), getEventSweepBatchSize());
+  }
+
+  private static void sweepExpiredEvents() {
+    EXPIRY_SWEEPERS.forEach(EventsExpirySweeper::sweepIfDue);
+  }
+
   private static String serializeObject(APIGatewayProxyRequestEvent gwEvent) {
     try {
       return MAPPER.writeValueAsString(gwEvent);
@@ -137,14 +186,13 @@ public class TailscaleVpnLambdaHandler implements
   }
 
   private void handleUpdate(Update update) {
-    if (EVENTS_REGISTRY.hasAlreadyProcessed(update)) {
+    if (!EVENTS_REGISTRY.tryRegister(update)) {
       log.info("Skipping duplicated event: {}", update);
       return;
     }
 
     TgRequestContext.initContext(update);
-    log.info("Saving event to the registry (deduplication logic). Update: {}", update);
-    EVENTS_REGISTRY.registerEvent(update);
+    log.info("Event is saved to the registry (deduplication logic). Update: {}", update);
 
     Message message = update.getMessage();
     if (message == null) {
@@ -162,7 +210,33 @@ public class TailscaleVpnLambdaHandler implements
         .map(User::getUserName)
         .orElse("<Unknown>");
     log.info("User {} has started communication with the bot", userName);
-    COMMAND_DISPATCHER.handle(update);
+    COMMAND_QUEUE.submit(update);
+  }
+
+  // The worker side of LambdaEventCommandQueue, the update has been authenticated and registered
+  // by the invocation, that has queued it. The commands report their progress to the user as usual.
+  private static APIGatewayProxyResponseEvent runQueuedCommand(APIGatewayProxyRequestEvent event) {
+    try {
+      Update update = MAPPER.readValue(event.getBody(), Update.class);
+      TgRequestContext.initContext(update);
+      log.info("Running queued command of update {}", update.getUpdateId());
+      runCommand(update);
+    } catch (Exception e) {
+      log.error("Failed to run queued command: ", e);
+      COMMUNICATOR.sendMessageToTheBot(BOT_SERVER_ERROR);
+    } finally {
+      sweepExpiredEvents();
+    }
+
+    return new APIGatewayProxyResponseEvent()
+        .withBody("{}")
+        .withStatusCode(200);
+  }
+
+  private static void runCommand(Update update) {
+    try (RequestSnapshot.Scope ignored = RequestSnapshot.open()) {
+      COMMAND_DISPATCHER.handle(update);
+    }
   }
 
 }
@@ -1,7 +1,14 @@
 package org.github.akarkin1.auth;
 
+import java.util.OptionalLong;
+
 public interface Authorizer {
 
   boolean hasPermission(String tgUsername, Permission permission);
 
+  // Changes whenever the result of hasPermission may change, empty if it is not tracked
+  default OptionalLong getPermissionsVersion() {
+    return OptionalLong.empty();
+  }
+
 }
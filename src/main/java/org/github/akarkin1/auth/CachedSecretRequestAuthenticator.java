@@ -0,0 +1,173 @@
+package org.github.akarkin1.auth;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
+import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
+import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueResponse;
+import software.amazon.awssdk.services.secretsmanager.model.ResourceNotFoundException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Keeps the webhook secret token in memory rather than calling Secrets Manager on every update.
+// A token older than the TTL is still used while it is refreshed in the background. A mismatch
+// may mean the secret has just been rotated, so it refreshes the token in place, at most once per
+// the refresh interval so that bad tokens cannot flood Secrets Manager. Updates sent with the
+// previous version of the secret are accepted for a grace period after the rotation.
+@Slf4j
+@RequiredArgsConstructor
+public class CachedSecretRequestAuthenticator implements RequestAuthenticator {
+
+  private static final String SECRET_TOKEN_HEADER = "x-telegram-bot-api-secret-token";
+  private static final String PREVIOUS_VERSION_STAGE = "AWSPREVIOUS";
+
+  private final SecretsManagerClient client;
+  private final String secretTokenId;
+  private final long ttlMs;
+  private final long minRefreshIntervalMs;
+  private final long previousSecretGraceMs;
+  private final Executor refreshExecutor;
+  private final LongSupplier clock;
+
+  private final AtomicBoolean refreshing = new AtomicBoolean();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong rejections = new AtomicLong();
+  private final AtomicLong refreshes = new AtomicLong();
+  private final AtomicLong mismatchRefreshes = new AtomicLong();
+  private volatile SecretToken secretToken;
+
+  public CachedSecretRequestAuthenticator(SecretsManagerClient client, String secretTokenId,
+                                          long ttlMs, long minRefreshIntervalMs,
+                                          long previousSecretGraceMs) {
+    this(client, secretTokenId, ttlMs, minRefreshIntervalMs, previousSecretGraceMs,
+         Executors.newVirtualThreadPerTaskExecutor(), System::currentTimeMillis);
+  }
+
+  @Override
+  public void authenticate(APIGatewayProxyRequestEvent request)
+      throws UnauthenticatedRequestException {
+    Map<String, String> headers = request.getHeaders();
+    if (headers == null || !headers.containsKey(SECRET_TOKEN_HEADER)) {
+      log.warn("{} is missing", SECRET_TOKEN_HEADER);
+      throw new UnauthenticatedRequestException();
+    }
+
+    String userTokenValue = headers.get(SECRET_TOKEN_HEADER);
+    if (StringUtils.isBlank(userTokenValue)) {
+      log.warn("{} is blank", SECRET_TOKEN_HEADER);
+      throw new UnauthenticatedRequestException();
+    }
+
+    byte[] userToken = userTokenValue.getBytes(StandardCharsets.UTF_8);
+    SecretToken token = currentToken();
+    if (token.matches(userToken, clock.getAsLong())) {
+      hits.incrementAndGet();
+      return;
+    }
+
+    if (clock.getAsLong() - token.fetchedAt() >= minRefreshIntervalMs) {
+      mismatchRefreshes.incrementAndGet();
+      if (refresh().matches(userToken, clock.getAsLong())) {
+        log.info("Secret token {} has been rotated", secretTokenId);
+        return;
+      }
+    }
+
+    rejections.incrementAndGet();
+    throw new UnauthenticatedRequestException();
+  }
+
+  public Stats getStats() {
+    return new Stats(hits.get(), rejections.get(), refreshes.get(), mismatchRefreshes.get());
+  }
+
+  private SecretToken currentToken() {
+    SecretToken token = secretToken;
+    if (token == null) {
+      return refresh();
+    }
+
+    if (clock.getAsLong() - token.fetchedAt() >= ttlMs) {
+      refreshInBackground();
+    }
+    return token;
+  }
+
+  private void refreshInBackground() {
+    if (!refreshing.compareAndSet(false, true)) {
+      return;
+    }
+
+    refreshExecutor.execute(() -> {
+      try {
+        refresh();
+      } catch (Exception e) {
+        log.warn("Failed to refresh secret token {}, using the cached one", secretTokenId, e);
+      } finally {
+        refreshing.set(false);
+      }
+    });
+  }
+
+  private SecretToken refresh() {
+    refreshes.incrementAndGet();
+    long fetchedAt = clock.getAsLong();
+    GetSecretValueResponse current = client.getSecretValue(GetSecretValueRequest.builder()
+                                                               .secretId(secretTokenId)
+                                                               .build());
+    long previousAcceptedUntil = current.createdDate() == null
+        ? 0
+        : current.createdDate().toEpochMilli() + previousSecretGraceMs;
+    byte[] previous = previousAcceptedUntil > fetchedAt ? fetchPrevious() : null;
+
+    SecretToken token = new SecretToken(secretValue(current), previous, previousAcceptedUntil,
+                                        fetchedAt);
+    secretToken = token;
+    return token;
+  }
+
+  private byte[] fetchPrevious() {
+    try {
+      return secretValue(client.getSecretValue(GetSecretValueRequest.builder()
+                                                   .secretId(secretTokenId)
+                                                   .versionStage(PREVIOUS_VERSION_STAGE)
+                                                   .build()));
+    } catch (ResourceNotFoundException e) {
+      // the secret has never been rotated
+      return null;
+    }
+  }
+
+  private static byte[] secretValue(GetSecretValueResponse response) {
+    return response.secretString() != null
+        ? response.secretString().getBytes(StandardCharsets.UTF_8)
+        : response.secretBinary().asByteArray();
+  }
+
+  public record Stats(long hits, long rejections, long refreshes, long mismatchRefreshes) {
+
+  }
+
+  private record SecretToken(byte[] current, byte[] previous, long previousAcceptedUntil,
+                             long fetchedAt) {
+
+    // MessageDigest.isEqual takes the same time wherever the tokens differ
+    boolean matches(byte[] userToken, long now) {
+      boolean matchesCurrent = MessageDigest.isEqual(current, userToken);
+      boolean matchesPrevious = previous != null && now < previousAcceptedUntil
+          && MessageDigest.isEqual(previous, userToken);
+      return matchesCurrent || matchesPrevious;
+    }
+
+  }
+
+}
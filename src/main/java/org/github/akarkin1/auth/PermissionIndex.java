@@ -0,0 +1,68 @@
+package org.github.akarkin1.auth;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Permissions of a revision compiled into a bitmask per user, ROOT_ACCESS being all the bits set,
+// so that a check is a single lookup and a bitwise AND instead of scanning the permission lists.
+// Users are compiled on their first check, so a backend storing users apart loads only them; the
+// loader bypasses the caches of the backend, as a user cached before the revision may be stale.
+final class PermissionIndex {
+
+  private static final long ALL_PERMISSIONS = (1L << Permission.values().length) - 1;
+  // anyone can write to the bot, the unknown users must not grow the index unbounded
+  private static final int MAX_COMPILED_USERS = 4096;
+
+  private final Object revision;
+  private final long version;
+  private final Map<String, Long> masksByUser = new ConcurrentHashMap<>();
+
+  private PermissionIndex(Object revision, long version) {
+    this.revision = revision;
+    this.version = version;
+  }
+
+  static PermissionIndex forRevision(Object revision, long version) {
+    return new PermissionIndex(revision, version);
+  }
+
+  boolean hasPermission(String tgUsername, Permission permission,
+                        Function<String, List<Permission>> permissionsLoader) {
+    if (tgUsername == null) {
+      return false;
+    }
+
+    Long userMask = masksByUser.get(tgUsername);
+    if (userMask == null) {
+      userMask = mask(permissionsLoader.apply(tgUsername));
+      if (masksByUser.size() < MAX_COMPILED_USERS) {
+        masksByUser.put(tgUsername, userMask);
+      }
+    }
+    return (userMask & bit(permission)) != 0;
+  }
+
+  // The permissions provider keeps returning the same revision until something changes
+  boolean isOf(Object permissionsRevision) {
+    return revision == permissionsRevision;
+  }
+
+  long version() {
+    return version;
+  }
+
+  private static long mask(List<Permission> permissions) {
+    long mask = 0;
+    for (Permission permission : permissions) {
+      mask |= permission == Permission.ROOT_ACCESS ? ALL_PERMISSIONS : bit(permission);
+    }
+    return mask;
+  }
+
+  private static long bit(Permission permission) {
+    return 1L << permission.ordinal();
+  }
+
+}
@@ -2,14 +2,22 @@ package org.github.akarkin1.auth;
 
 
 import org.github.akarkin1.config.ConfigManager;
+import org.github.akarkin1.config.YamlApplicationConfiguration.AuthConfiguration;
 import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
 
+import java.util.concurrent.TimeUnit;
+
 public class RequestAuthenticatorConfigurer {
 
   public RequestAuthenticator configure() {
     SecretsManagerClient secretsManager = SecretsManagerClient.create();
     String secretTokenId = ConfigManager.getSecretTokenId();
-    return new SecretManagerRequestAuthenticator(secretsManager, secretTokenId);
+    AuthConfiguration authConfig = ConfigManager.getApplicationYaml().getAuth();
+    return new CachedSecretRequestAuthenticator(
+        secretsManager, secretTokenId,
+        TimeUnit.SECONDS.toMillis(authConfig.getSecretCacheTtlSec()),
+        TimeUnit.SECONDS.toMillis(authConfig.getSecretRefreshMinIntervalSec()),
+        TimeUnit.SECONDS.toMillis(authConfig.getPreviousSecretGraceSec()));
   }
 
 }
@@ -1,5 +1,6 @@
 package org.github.akarkin1.auth;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -7,4 +8,35 @@ public interface UserPermissionsProvider {
 
   Map<String, List<Permission>> getUserPermissions();
 
+  // Backends keeping the users apart load just the one asked for
+  default List<Permission> getUserPermissions(String tgUsername) {
+    return getUserPermissions().getOrDefault(tgUsername, List.of());
+  }
+
+  // Bypasses any cache of the user, so that permissions compiled for a new revision are not older
+  // than the revision
+  default List<Permission> loadUserPermissions(String tgUsername) {
+    return getUserPermissions(tgUsername);
+  }
+
+  // Users in a stable order, starting after the given one (null for the first page)
+  default UsersPage listUsers(String startAfter, int pageSize) {
+    List<String> usernames = getUserPermissions().keySet()
+        .stream()
+        .sorted()
+        .filter(username -> startAfter == null || username.compareTo(startAfter) > 0)
+        .limit(pageSize + 1L)
+        .toList();
+    Map<String, List<Permission>> users = new LinkedHashMap<>();
+    usernames.stream()
+        .limit(pageSize)
+        .forEach(username -> users.put(username, getUserPermissions().get(username)));
+    return UsersPage.of(users, usernames.size() > pageSize);
+  }
+
+  // Another instance once any user's permissions have changed, compared by identity
+  default Object getPermissionsRevision() {
+    return getUserPermissions();
+  }
+
 }
@@ -1,6 +1,8 @@
 package org.github.akarkin1.auth;
 
+import java.util.Collection;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -8,10 +10,21 @@ import java.util.Set;
 
 public interface UserSignupService {
 
-  void updateUserPermissions(String tgUsername, Set<Permission> actions);
+  // Applies the permissions of all the users at once, an empty set deletes the user
+  void applyChanges(Map<String, Set<Permission>> permissionsByUser);
+
+  default void updateUserPermissions(String tgUsername, Set<Permission> actions) {
+    this.applyChanges(Map.of(tgUsername, actions == null ? Set.of() : actions));
+  }
 
   default void deleteUser(String tgUsername) {
-    this.updateUserPermissions(tgUsername, null);
+    this.deleteUsers(List.of(tgUsername));
+  }
+
+  default void deleteUsers(Collection<String> tgUsernames) {
+    Map<String, Set<Permission>> deletions = new HashMap<>();
+    tgUsernames.forEach(tgUsername -> deletions.put(tgUsername, Set.of()));
+    this.applyChanges(deletions);
   }
 
   default void assignRolesToUser(String tgUsername, Set<UserRole> roles) {
@@ -26,7 +39,7 @@ public interface UserSignupService {
       allPermissions.addAll(rolePermissions);
     }
 
-    this.updateUserPermissions(tgUsername, allPermissions);
+    this.applyChanges(Map.of(tgUsername, allPermissions));
   }
 
   default Map<UserRole, List<Permission>> describeRoles() {
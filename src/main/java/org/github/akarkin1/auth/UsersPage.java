@@ -0,0 +1,14 @@
+package org.github.akarkin1.auth;
+
+import java.util.List;
+import java.util.Map;
+
+// nextStartAfter is null on the last page
+public record UsersPage(Map<String, List<Permission>> users, String nextStartAfter) {
+
+  public static UsersPage of(Map<String, List<Permission>> users, boolean hasMore) {
+    String lastUsername = users.keySet().stream().reduce((first, second) -> second).orElse(null);
+    return new UsersPage(users, hasMore ? lastUsername : null);
+  }
+
+}
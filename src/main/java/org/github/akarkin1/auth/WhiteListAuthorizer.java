@@ -4,8 +4,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.github.akarkin1.config.YamlApplicationConfiguration.AuthConfiguration;
 
-import java.util.List;
-import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
 
 // This should be enough for a TG bot, provided that communication between TG Server and lambda is
 // secured with SSL, and no other connections are allowed by a SecurityGroup,
@@ -16,6 +16,8 @@ public class WhiteListAuthorizer implements Authorizer {
 
   private final AuthConfiguration config;
   private final UserPermissionsProvider permissionsProvider;
+  private final AtomicLong versions = new AtomicLong();
+  private volatile PermissionIndex permissionIndex;
 
   @Override
   public boolean hasPermission(String tgUsername, Permission permission) {
@@ -25,11 +27,28 @@ public class WhiteListAuthorizer implements Authorizer {
       return true;
     }
 
-    Map<String, List<Permission>> usersMap = permissionsProvider.getUserPermissions();
-    log.debug("usersMap: {}", usersMap);
+    return currentIndex().hasPermission(tgUsername, permission,
+                                        permissionsProvider::loadUserPermissions);
+  }
+
+  @Override
+  public OptionalLong getPermissionsVersion() {
+    if (!Boolean.TRUE.equals(config.isEnabled())) {
+      // everything is permitted, which never changes
+      return OptionalLong.of(0);
+    }
+
+    return OptionalLong.of(currentIndex().version());
+  }
 
-    return usersMap.containsKey(tgUsername)
-           && (usersMap.get(tgUsername).contains(Permission.ROOT_ACCESS)
-               || usersMap.get(tgUsername).contains(permission));
+  private PermissionIndex currentIndex() {
+    Object revision = permissionsProvider.getPermissionsRevision();
+    PermissionIndex index = permissionIndex;
+    if (index == null || !index.isOf(revision)) {
+      log.debug("Permissions have changed, compiling them again");
+      index = PermissionIndex.forRevision(revision, versions.incrementAndGet());
+      permissionIndex = index;
+    }
+    return index;
   }
 }
@@ -1,17 +1,45 @@
 package org.github.akarkin1.auth.s3;
 
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
 import org.github.akarkin1.config.ConfigManager;
+import org.github.akarkin1.config.RevalidatingS3ConfigCache;
 import org.github.akarkin1.config.YamlApplicationConfiguration.S3Configuration;
 import org.github.akarkin1.s3.S3ConfigManager;
 
+import java.util.concurrent.TimeUnit;
+
+@Log4j2
 public class PermissionsServiceConfigurer {
 
+  private static final String SNAPSHOT_NAME = "permissions";
+  private static final String SINGLE_FILE_BACKEND = "single-file";
+  private static final String SHARDED_BACKEND = "sharded";
+
   public PermissionsService configure() {
     S3Configuration s3 = ConfigManager.getApplicationYaml().getS3();
     S3ConfigManager s3ConfigManager = S3ConfigManager.create(s3);
-    S3PermissionsService s3PermissionsService = new S3PermissionsService(s3ConfigManager, s3);
+    long revalidateIntervalMs = TimeUnit.SECONDS.toMillis(
+        s3.getPermissionsRevalidateIntervalSec());
 
-    return new CachingPermissionsService(s3PermissionsService);
+    String backend = StringUtils.defaultIfBlank(s3.getPermissionsBackend(), SINGLE_FILE_BACKEND);
+    log.info("Using the {} backend of user permissions", backend);
+    return switch (backend) {
+      case SINGLE_FILE_BACKEND -> new S3PermissionsService(
+          s3ConfigManager,
+          RevalidatingS3ConfigCache.create(s3ConfigManager, s3, SNAPSHOT_NAME,
+                                           revalidateIntervalMs, revalidateIntervalMs),
+          s3);
+      // without a snapshot: it would be rewritten with every user loaded, and revalidated user by
+      // user on a cold start, which is what keeping the users apart avoids
+      case SHARDED_BACKEND -> new ShardedS3PermissionsService(
+          s3ConfigManager,
+          new RevalidatingS3ConfigCache(s3ConfigManager, revalidateIntervalMs,
+                                        revalidateIntervalMs, null),
+          s3.getUsersDir());
+      default -> throw new IllegalStateException(
+          "Unknown user permissions backend: '%s'".formatted(backend));
+    };
   }
 
 }
@@ -0,0 +1,10 @@
+package org.github.akarkin1.auth.s3;
+
+public class PermissionsUpdateConflictException extends RuntimeException {
+
+  public PermissionsUpdateConflictException(String key, int attempts) {
+    super("'%s' kept being changed concurrently, gave up after %d attempts".formatted(key,
+                                                                                      attempts));
+  }
+
+}
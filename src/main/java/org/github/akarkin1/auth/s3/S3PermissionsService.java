@@ -2,31 +2,49 @@ package org.github.akarkin1.auth.s3;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
 import org.github.akarkin1.auth.Permission;
+import org.github.akarkin1.config.RevalidatingS3ConfigCache;
 import org.github.akarkin1.config.YamlApplicationConfiguration.S3Configuration;
+import org.github.akarkin1.s3.ConfigContentParser;
+import org.github.akarkin1.s3.ParsedS3ConfigObject;
 import org.github.akarkin1.s3.S3ConfigManager;
 import software.amazon.awssdk.utils.CollectionUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.github.akarkin1.util.JsonUtils.parseJson;
 import static org.github.akarkin1.util.JsonUtils.toJson;
 
+@Log4j2
 @RequiredArgsConstructor
 public class S3PermissionsService implements PermissionsService {
 
+  private static final int MAX_UPDATE_ATTEMPTS = 5;
+  private static final ConfigContentParser<Map<String, List<Permission>>> PERMISSIONS_PARSER =
+      S3PermissionsService::parsePermissions;
+
   private final S3ConfigManager s3ConfigManager;
+  private final RevalidatingS3ConfigCache configCache;
   private final S3Configuration s3Config;
 
   @Override
   public Map<String, List<Permission>> getUserPermissions() {
-    String fileContent = s3ConfigManager.downloadConfigFromS3(s3Config.getUserPermissionsKey());
+    return configCache.get(s3Config.getUserPermissionsKey(), PERMISSIONS_PARSER);
+  }
+
+  private static Map<String, List<Permission>> parsePermissions(InputStream fileContent)
+      throws IOException {
     Map<String, List<String>> userPermissions = parseJson(fileContent,
                                                           new TypeReference<>() {
                                                           });
@@ -34,20 +52,41 @@ public class S3PermissionsService implements PermissionsService {
         .stream()
         .map(entry -> Map.entry(entry.getKey(),
                                 entry.getValue().stream().map(Permission::valueOf).toList()))
-        .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+        .collect(Collectors.toUnmodifiableMap(Entry::getKey, Entry::getValue));
   }
 
+  // One read and one conditional write for all the changes. If another instance has changed the
+  // file in between, the write is rejected and the changes are applied again over the new file.
   @Override
-  public void updateUserPermissions(String tgUsername, Set<Permission> newPermissions) {
-    Map<String, List<Permission>> curUserPermissions = new HashMap<>(this.getUserPermissions());
-    if (CollectionUtils.isNullOrEmpty(newPermissions)) {
-      // delete the user
-      curUserPermissions.remove(tgUsername);
-    } else {
-      curUserPermissions.put(tgUsername, new ArrayList<>(newPermissions));
+  public void applyChanges(Map<String, Set<Permission>> permissionsByUser) {
+    String permissionsKey = s3Config.getUserPermissionsKey();
+    for (int attempt = 1; attempt <= MAX_UPDATE_ATTEMPTS; attempt++) {
+      ParsedS3ConfigObject<Map<String, List<Permission>>> current = s3ConfigManager
+          .downloadConfigIfModified(permissionsKey, null, PERMISSIONS_PARSER, false)
+          .orElseThrow();
+      Map<String, List<Permission>> curUserPermissions = new HashMap<>(current.value());
+      permissionsByUser.forEach((tgUsername, newPermissions) -> {
+        if (CollectionUtils.isNullOrEmpty(newPermissions)) {
+          // delete the user
+          curUserPermissions.remove(tgUsername);
+        } else {
+          curUserPermissions.put(tgUsername, new ArrayList<>(newPermissions));
+        }
+      });
+
+      String content = toJson(curUserPermissions);
+      Optional<String> eTag = s3ConfigManager.uploadConfigIfMatch(permissionsKey, content,
+                                                                  current.eTag());
+      if (eTag.isPresent()) {
+        configCache.put(permissionsKey, content.getBytes(StandardCharsets.UTF_8), eTag.get());
+        return;
+      }
+
+      log.info("{} has been changed concurrently, attempt {} of {}", permissionsKey, attempt,
+               MAX_UPDATE_ATTEMPTS);
     }
 
-    s3ConfigManager.uploadConfigToS3(s3Config.getUserPermissionsKey(), toJson(curUserPermissions));
+    throw new PermissionsUpdateConflictException(permissionsKey, MAX_UPDATE_ATTEMPTS);
   }
 
 }
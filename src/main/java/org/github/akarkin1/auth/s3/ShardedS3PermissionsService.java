@@ -0,0 +1,232 @@
+package org.github.akarkin1.auth.s3;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.github.akarkin1.auth.Permission;
+import org.github.akarkin1.auth.UsersPage;
+import org.github.akarkin1.config.RevalidatingS3ConfigCache;
+import org.github.akarkin1.config.exception.S3DownloadFailureException;
+import org.github.akarkin1.s3.ConfigContentParser;
+import org.github.akarkin1.s3.ParsedS3ConfigObject;
+import org.github.akarkin1.s3.S3ConfigManager;
+import org.github.akarkin1.s3.S3ConfigPage;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.utils.CollectionUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.github.akarkin1.s3.S3ConfigManager.joinPath;
+import static org.github.akarkin1.util.JsonUtils.parseJson;
+import static org.github.akarkin1.util.JsonUtils.toJson;
+
+// Keeps every user in an object of its own, <users-dir>/by-user/<hash prefix>/<username>.json, so
+// that a check loads only the user checked and a change rewrites only the users changed. The hash
+// prefix spreads the users over 256 key prefixes. The manifest holds a revision bumped on every
+// change, revalidating this single small object tells whether any user has changed.
+@Log4j2
+@RequiredArgsConstructor
+public class ShardedS3PermissionsService implements PermissionsService {
+
+  private static final String MANIFEST_FILE_NAME = "manifest.json";
+  private static final String USERS_DIR_NAME = "by-user";
+  private static final String USER_FILE_EXTENSION = ".json";
+  private static final int HASH_PREFIX_BYTES = 1;
+  private static final int LIST_ALL_PAGE_SIZE = 1000;
+  private static final int MAX_MANIFEST_UPDATE_ATTEMPTS = 5;
+  // the revision until the first user is stored
+  private static final Object NO_MANIFEST = new Object();
+  private static final ConfigContentParser<List<Permission>> USER_PARSER =
+      content -> List.copyOf(parseJson(content, new TypeReference<List<Permission>>() {}));
+  private static final ConfigContentParser<Manifest> MANIFEST_PARSER =
+      content -> parseJson(content, new TypeReference<Manifest>() {});
+
+  private final S3ConfigManager s3ConfigManager;
+  private final RevalidatingS3ConfigCache configCache;
+  private final String usersDir;
+
+  // Lists every user, which is what this backend is meant to avoid, prefer listUsers()
+  @Override
+  public Map<String, List<Permission>> getUserPermissions() {
+    Map<String, List<Permission>> userPermissions = new LinkedHashMap<>();
+    String startAfter = null;
+    do {
+      UsersPage page = listUsers(startAfter, LIST_ALL_PAGE_SIZE);
+      userPermissions.putAll(page.users());
+      startAfter = page.nextStartAfter();
+    } while (startAfter != null);
+    return userPermissions;
+  }
+
+  @Override
+  public List<Permission> getUserPermissions(String tgUsername) {
+    return userPermissions(tgUsername, false);
+  }
+
+  // A conditional GET of the user, which is done once per user and manifest revision
+  @Override
+  public List<Permission> loadUserPermissions(String tgUsername) {
+    return userPermissions(tgUsername, true);
+  }
+
+  private List<Permission> userPermissions(String tgUsername, boolean revalidate) {
+    String userFileName = userFileName(tgUsername);
+    try {
+      return revalidate
+          ? configCache.getRevalidated(userFileName, USER_PARSER)
+          : configCache.get(userFileName, USER_PARSER);
+    } catch (S3DownloadFailureException e) {
+      if (isNotFound(e)) {
+        configCache.invalidate(userFileName);
+        return List.of();
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public UsersPage listUsers(String startAfter, int pageSize) {
+    S3ConfigPage page = s3ConfigManager.listConfigs(
+        joinPath(usersDir, USERS_DIR_NAME),
+        startAfter == null ? null : userFileName(startAfter),
+        pageSize);
+    Map<String, List<Permission>> permissionsByFileName = s3ConfigManager.downloadConfigs(
+        page.fileNames(), USER_PARSER);
+
+    Map<String, List<Permission>> users = new LinkedHashMap<>();
+    for (String fileName : page.fileNames()) {
+      users.put(usernameOf(fileName), permissionsByFileName.get(fileName));
+    }
+    return UsersPage.of(users, page.truncated());
+  }
+
+  @Override
+  public Object getPermissionsRevision() {
+    try {
+      return configCache.get(manifestFileName(), MANIFEST_PARSER);
+    } catch (S3DownloadFailureException e) {
+      if (isNotFound(e)) {
+        return NO_MANIFEST;
+      }
+      throw e;
+    }
+  }
+
+  // Users are written one by one, the last write of a user wins. Then the manifest is bumped
+  // conditionally, so that no concurrent bump is lost and the other instances see the change.
+  // Only then the change is acknowledged, to the local cache and to the caller: if the bump
+  // fails, the users written are dropped from the cache and the change is to be applied again.
+  @Override
+  public void applyChanges(Map<String, Set<Permission>> permissionsByUser) {
+    // null for a deleted user
+    Map<String, UploadedUser> uploadedUsers = new LinkedHashMap<>();
+    try {
+      permissionsByUser.forEach((tgUsername, newPermissions) -> {
+        String userFileName = userFileName(tgUsername);
+        if (CollectionUtils.isNullOrEmpty(newPermissions)) {
+          uploadedUsers.put(userFileName, null);
+          s3ConfigManager.deleteConfig(userFileName);
+        } else {
+          String content = toJson(new ArrayList<>(newPermissions));
+          // dropped from the cache on failure, even if the upload itself fails
+          uploadedUsers.put(userFileName, null);
+          uploadedUsers.put(userFileName, new UploadedUser(
+              content, s3ConfigManager.uploadConfigToS3(userFileName, content)));
+        }
+      });
+
+      bumpManifestRevision();
+    } catch (RuntimeException e) {
+      uploadedUsers.keySet().forEach(configCache::invalidate);
+      throw e;
+    }
+
+    uploadedUsers.forEach((userFileName, uploaded) -> {
+      if (uploaded == null) {
+        configCache.invalidate(userFileName);
+      } else {
+        configCache.put(userFileName, uploaded.content().getBytes(StandardCharsets.UTF_8),
+                        uploaded.eTag());
+      }
+    });
+  }
+
+  private void bumpManifestRevision() {
+    String manifestFileName = manifestFileName();
+    for (int attempt = 1; attempt <= MAX_MANIFEST_UPDATE_ATTEMPTS; attempt++) {
+      Optional<ParsedS3ConfigObject<Manifest>> current = downloadManifest();
+      long revision = current.map(manifest -> manifest.value().revision()).orElse(0L);
+      String content = toJson(new Manifest(revision + 1));
+      Optional<String> eTag = current.isEmpty()
+          ? Optional.of(s3ConfigManager.uploadConfigToS3(manifestFileName, content))
+          : s3ConfigManager.uploadConfigIfMatch(manifestFileName, content, current.get().eTag());
+      if (eTag.isPresent()) {
+        configCache.put(manifestFileName, content.getBytes(StandardCharsets.UTF_8), eTag.get());
+        return;
+      }
+
+      log.info("{} has been changed concurrently, attempt {} of {}", manifestFileName, attempt,
+               MAX_MANIFEST_UPDATE_ATTEMPTS);
+    }
+
+    throw new PermissionsUpdateConflictException(manifestFileName, MAX_MANIFEST_UPDATE_ATTEMPTS);
+  }
+
+  private Optional<ParsedS3ConfigObject<Manifest>> downloadManifest() {
+    try {
+      return s3ConfigManager.downloadConfigIfModified(manifestFileName(), null, MANIFEST_PARSER,
+                                                      false);
+    } catch (S3DownloadFailureException e) {
+      if (isNotFound(e)) {
+        return Optional.empty();
+      }
+      throw e;
+    }
+  }
+
+  private String manifestFileName() {
+    return joinPath(usersDir, MANIFEST_FILE_NAME);
+  }
+
+  private String userFileName(String tgUsername) {
+    return joinPath(usersDir, USERS_DIR_NAME, hashPrefix(tgUsername),
+                    tgUsername + USER_FILE_EXTENSION);
+  }
+
+  private static String usernameOf(String userFileName) {
+    String fileName = userFileName.substring(userFileName.lastIndexOf('/') + 1);
+    return fileName.substring(0, fileName.length() - USER_FILE_EXTENSION.length());
+  }
+
+  private static String hashPrefix(String tgUsername) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256")
+          .digest(tgUsername.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(hash, 0, HASH_PREFIX_BYTES);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  }
+
+  private static boolean isNotFound(S3DownloadFailureException e) {
+    return e.getCause() instanceof NoSuchKeyException;
+  }
+
+  public record Manifest(long revision) {
+
+  }
+
+  private record UploadedUser(String content, String eTag) {
+
+  }
+
+}
@@ -17,6 +17,9 @@ public class ConfigManager {
   private static final String APP_CONFIG_YAML = "application.yml";
 
   private static final String EVENT_ROOT_DIR = "/mnt/efs/eventIds";
+  private static final String LOCAL_EVENT_ROOT_DIR = "/tmp/eventIds";
+  private static final String NODE_READY_ROOT_DIR = "/mnt/efs/readyNodes";
+  private static final String NODE_READY_ROOT_DIR_ENV = "NODE_READY_ROOT_DIR";
   private static final String BOT_TOKEN_ENV = "BOT_TOKEN";
   private static final String BOT_USERNAME_ENV = "BOT_USERNAME";
   private static final String BOT_SECRET_TOKEN_ID_ENV = "BOT_SECRET_TOKEN_ID";
@@ -24,7 +27,16 @@ public class ConfigManager {
   private static final String OP_WAIT_TIMEOUT_SEC_ENV = "OPERATION_WAIT_TIMEOUT_SEC";
   private static final String RESTART_SLEEP_TIME_SEC_ENV = "RESTART_SLEEP_TIME_SEC";
   private static final String REGISTERED_EVENT_EXPIRATION_TIME_SEC_ENV = "REGISTERED_EVENT_EXPIRATION_TIME_SEC";
+  private static final String REGISTERED_EVENT_RING_SIZE_ENV = "REGISTERED_EVENT_RING_SIZE";
+  private static final String REGISTERED_EVENT_WINDOW_SIZE_ENV = "REGISTERED_EVENT_WINDOW_SIZE";
+  private static final String EVENT_REGISTRY_BACKEND_ENV = "EVENT_REGISTRY_BACKEND";
+  private static final String REGISTERED_EVENT_SWEEP_INTERVAL_SEC_ENV = "REGISTERED_EVENT_SWEEP_INTERVAL_SEC";
+  private static final String REGISTERED_EVENT_SWEEP_BATCH_SIZE_ENV = "REGISTERED_EVENT_SWEEP_BATCH_SIZE";
   private static final String USED_REGIONS_ENV = "USED_REGIONS";
+  private static final String NODE_READY_CALLBACK_URL_ENV = "NODE_READY_CALLBACK_URL";
+  private static final String COMMAND_EXECUTION_MODE_ENV = "COMMAND_EXECUTION_MODE";
+  // set by the Lambda runtime
+  private static final String FUNCTION_NAME_ENV = "AWS_LAMBDA_FUNCTION_NAME";
 
   private static final YamlApplicationConfiguration APP_CONFIG = YamlApplicationConfiguration
       .load(APP_CONFIG_YAML);
@@ -41,12 +53,64 @@ public class ConfigManager {
     return EVENT_ROOT_DIR;
   }
 
+  public static String getLocalEventRootDir() {
+    return LOCAL_EVENT_ROOT_DIR;
+  }
+
+  public static String getEventRegistryBackend() {
+    return envOrDefault(EVENT_REGISTRY_BACKEND_ENV, "efs");
+  }
+
+  public static String getNodeReadyRootDir() {
+    return envOrDefault(NODE_READY_ROOT_DIR_ENV, NODE_READY_ROOT_DIR);
+  }
+
+  public static long getNodeReadyTokenTtlMs() {
+    return TimeUnit.SECONDS.toMillis(APP_CONFIG.getEcs().getReadiness().getTokenTtlSec());
+  }
+
+  public static String getNodeReadyCallbackUrl() {
+    return envOrDefault(NODE_READY_CALLBACK_URL_ENV, "");
+  }
+
+  // inline | lambda-event
+  public static String getCommandExecutionMode() {
+    return envOrDefault(COMMAND_EXECUTION_MODE_ENV, "inline");
+  }
+
+  public static String getFunctionName() {
+    return envOrThrow(FUNCTION_NAME_ENV, () -> new IllegalStateException(
+        "Environment variable '%s' is not set".formatted(FUNCTION_NAME_ENV)));
+  }
+
   public static Long getEventTtlSec() {
     String envVarVal = envOrDefault(REGISTERED_EVENT_EXPIRATION_TIME_SEC_ENV, "360");
     long longValSec = Long.parseLong(envVarVal);
     return TimeUnit.SECONDS.toMillis(longValSec);
   }
 
+  public static long getEventSweepIntervalMs() {
+    String envVarVal = envOrDefault(REGISTERED_EVENT_SWEEP_INTERVAL_SEC_ENV, "60");
+    long longValSec = Long.parseLong(envVarVal);
+    return TimeUnit.SECONDS.toMillis(longValSec);
+  }
+
+  public static int getEventSweepBatchSize() {
+    String envVarVal = envOrDefault(REGISTERED_EVENT_SWEEP_BATCH_SIZE_ENV, "500");
+    return Integer.parseInt(envVarVal);
+  }
+
+  // only applies to a new ring, an existing one keeps its size
+  public static int getEventRingSize() {
+    String envVarVal = envOrDefault(REGISTERED_EVENT_RING_SIZE_ENV, "65536");
+    return Integer.parseInt(envVarVal);
+  }
+
+  public static int getEventWindowSize() {
+    String envVarVal = envOrDefault(REGISTERED_EVENT_WINDOW_SIZE_ENV, "4096");
+    return Integer.parseInt(envVarVal);
+  }
+
   public static String getAppVersion() {
     return APP_CONFIG.getVersion();
   }
@@ -0,0 +1,81 @@
+package org.github.akarkin1.config;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.github.akarkin1.util.JsonUtils.parseJson;
+import static org.github.akarkin1.util.JsonUtils.toJson;
+
+// Keeps S3 config files with their ETags, so that a new execution environment answers right away
+// from the files seen by the previous ones and only revalidates them. /tmp does not outlive an
+// execution environment, hence the snapshots are kept on EFS by default.
+@Log4j2
+@RequiredArgsConstructor
+public class ConfigSnapshotStore {
+
+  private static final String SNAPSHOT_EXTENSION = ".json";
+
+  private final Path snapshotPath;
+
+  public static ConfigSnapshotStore create(String snapshotDir, String snapshotName) {
+    return new ConfigSnapshotStore(Path.of(snapshotDir, snapshotName + SNAPSHOT_EXTENSION));
+  }
+
+  public Optional<ConfigSnapshot> load() {
+    if (Files.notExists(snapshotPath)) {
+      return Optional.empty();
+    }
+
+    try {
+      return Optional.of(parseJson(Files.readString(snapshotPath), new TypeReference<>() {}));
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to load config snapshot {}, ignoring it", snapshotPath, e);
+      return Optional.empty();
+    }
+  }
+
+  // Written aside and moved in place, so that concurrent instances never read a partial snapshot
+  public void save(ConfigSnapshot snapshot) {
+    Path tempPath = null;
+    try {
+      Files.createDirectories(snapshotPath.getParent());
+      tempPath = Files.createTempFile(snapshotPath.getParent(),
+                                      snapshotPath.getFileName().toString(), ".tmp");
+      Files.writeString(tempPath, toJson(snapshot));
+      Files.move(tempPath, snapshotPath, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (IOException e) {
+      log.warn("Failed to save config snapshot {}", snapshotPath, e);
+      deleteQuietly(tempPath);
+    }
+  }
+
+  private static void deleteQuietly(Path path) {
+    if (path == null) {
+      return;
+    }
+
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      log.warn("Failed to delete {}", path, e);
+    }
+  }
+
+  public record ConfigSnapshot(long savedAt, List<SnapshotFile> files) {
+
+  }
+
+  public record SnapshotFile(String fileName, String eTag, String content) {
+
+  }
+
+}
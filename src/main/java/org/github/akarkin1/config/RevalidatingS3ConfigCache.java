@@ -0,0 +1,282 @@
+package org.github.akarkin1.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+import org.github.akarkin1.config.ConfigSnapshotStore.ConfigSnapshot;
+import org.github.akarkin1.config.ConfigSnapshotStore.SnapshotFile;
+import org.github.akarkin1.config.YamlApplicationConfiguration.S3Configuration;
+import org.github.akarkin1.s3.ConfigContentParser;
+import org.github.akarkin1.s3.ParsedS3ConfigObject;
+import org.github.akarkin1.s3.S3ConfigManager;
+import org.github.akarkin1.s3.S3ConfigObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+// Keeps S3 config files parsed. A file older than the TTL is still served while a conditional GET
+// revalidates it in the background, a file older than the max staleness is revalidated in place.
+// Unless the ETag has changed S3 answers 304, so nothing is downloaded or parsed again.
+@Log4j2
+@RequiredArgsConstructor
+public class RevalidatingS3ConfigCache {
+
+  private final S3ConfigManager s3ConfigManager;
+  private final long ttlMs;
+  private final long maxStaleMs;
+  // null when the files are not persisted
+  private final ConfigSnapshotStore snapshotStore;
+  private final Executor refreshExecutor;
+  private final LongSupplier clock;
+
+  private final Map<String, CachedFile> cachedFiles = new ConcurrentHashMap<>();
+  private final Set<String> refreshingFiles = ConcurrentHashMap.newKeySet();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong staleHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong notModified = new AtomicLong();
+
+  public RevalidatingS3ConfigCache(S3ConfigManager s3ConfigManager, long ttlMs, long maxStaleMs,
+                                   ConfigSnapshotStore snapshotStore) {
+    this(s3ConfigManager, ttlMs, maxStaleMs, snapshotStore,
+         Executors.newVirtualThreadPerTaskExecutor(), System::currentTimeMillis);
+  }
+
+  public static RevalidatingS3ConfigCache create(S3ConfigManager s3ConfigManager,
+                                                 S3Configuration config, String snapshotName) {
+    return create(s3ConfigManager, config, snapshotName,
+                  TimeUnit.SECONDS.toMillis(config.getConfigCacheTtlSec()),
+                  TimeUnit.SECONDS.toMillis(config.getConfigCacheMaxStaleSec()));
+  }
+
+  // With the max staleness equal to the TTL no file is served older than the TTL
+  public static RevalidatingS3ConfigCache create(S3ConfigManager s3ConfigManager,
+                                                 S3Configuration config, String snapshotName,
+                                                 long ttlMs, long maxStaleMs) {
+    RevalidatingS3ConfigCache configCache = new RevalidatingS3ConfigCache(
+        s3ConfigManager, ttlMs, maxStaleMs, snapshotStoreOf(config, snapshotName));
+    configCache.restoreSnapshot();
+    return configCache;
+  }
+
+  // The snapshot directory is on EFS by default; without it the files are loaded from S3 on a
+  // cold start, as with no snapshot directory configured
+  private static ConfigSnapshotStore snapshotStoreOf(S3Configuration config, String snapshotName) {
+    String snapshotDir = config.getConfigSnapshotDir();
+    if (StringUtils.isBlank(snapshotDir)) {
+      return null;
+    }
+
+    try {
+      Files.createDirectories(Path.of(snapshotDir));
+    } catch (IOException | SecurityException e) {
+      log.warn("Config snapshot directory {} is not available, snapshots are disabled",
+               snapshotDir, e);
+      return null;
+    }
+    return ConfigSnapshotStore.create(snapshotDir, snapshotName);
+  }
+
+  // The parser of a file must be the same on every call, its result is what gets cached
+  @SuppressWarnings("unchecked")
+  public <T> T get(String fileName, ConfigContentParser<T> parser) {
+    CachedFile cached = cachedFiles.get(fileName);
+    long age = cached == null ? Long.MAX_VALUE : clock.getAsLong() - cached.validatedAt();
+
+    if (age < ttlMs) {
+      hits.incrementAndGet();
+      return (T) parsedValue(fileName, cached, parser);
+    }
+
+    if (age < maxStaleMs) {
+      staleHits.incrementAndGet();
+      refreshInBackground(fileName, cached, parser);
+      return (T) parsedValue(fileName, cached, parser);
+    }
+
+    return revalidateInPlace(fileName, cached, parser);
+  }
+
+  // Revalidates the file whatever its age, for the callers that must see every change made before
+  // the call; an unchanged file costs a conditional GET only
+  public <T> T getRevalidated(String fileName, ConfigContentParser<T> parser) {
+    return revalidateInPlace(fileName, cachedFiles.get(fileName), parser);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T revalidateInPlace(String fileName, CachedFile cached,
+                                  ConfigContentParser<T> parser) {
+    misses.incrementAndGet();
+    CachedFile loaded = revalidate(fileName, cached, parser);
+    cachedFiles.put(fileName, loaded);
+    saveSnapshotIfChanged(cached, loaded);
+    return (T) loaded.value();
+  }
+
+  public void invalidate(String fileName) {
+    cachedFiles.remove(fileName);
+  }
+
+  // For a file just uploaded by this instance, so that it is not downloaded back
+  public void put(String fileName, byte[] content, String eTag) {
+    CachedFile previous = cachedFiles.put(fileName, new CachedFile(null, content, eTag,
+                                                                   clock.getAsLong()));
+    saveSnapshotIfChanged(previous, cachedFiles.get(fileName));
+  }
+
+  // Files of the snapshot are served as validated when the snapshot was saved, so an old snapshot
+  // is not served beyond the staleness allowed, while all of them are revalidated at once
+  public void restoreSnapshot() {
+    if (snapshotStore == null) {
+      return;
+    }
+
+    snapshotStore.load().ifPresent(snapshot -> {
+      long restoredAt = clock.getAsLong();
+      for (SnapshotFile file : snapshot.files()) {
+        cachedFiles.putIfAbsent(file.fileName(), new CachedFile(
+            null, file.content().getBytes(StandardCharsets.UTF_8), file.eTag(),
+            snapshot.savedAt()));
+      }
+      log.info("Restored {} config files saved {} ms ago", snapshot.files().size(),
+               restoredAt - snapshot.savedAt());
+      refreshExecutor.execute(() -> revalidateRestored(snapshot));
+    });
+  }
+
+  public Stats getStats() {
+    return new Stats(hits.get(), staleHits.get(), misses.get(), notModified.get());
+  }
+
+  private void revalidateRestored(ConfigSnapshot snapshot) {
+    Map<String, String> eTagsByFileName = snapshot.files()
+        .stream()
+        .collect(Collectors.toMap(SnapshotFile::fileName, SnapshotFile::eTag));
+    long validatedAt = clock.getAsLong();
+    boolean changed = false;
+    for (var revalidated : s3ConfigManager.revalidateConfigs(eTagsByFileName).entrySet()) {
+      String fileName = revalidated.getKey();
+      CachedFile restored = cachedFiles.get(fileName);
+      if (restored == null || !Objects.equals(restored.eTag(),
+                                              eTagsByFileName.get(fileName))) {
+        // loaded or invalidated in the meantime
+        continue;
+      }
+
+      if (revalidated.getValue().isEmpty()) {
+        notModified.incrementAndGet();
+        cachedFiles.replace(fileName, restored, restored.validatedAt(validatedAt));
+      } else {
+        S3ConfigObject modified = revalidated.getValue().get();
+        changed |= cachedFiles.replace(fileName, restored, new CachedFile(
+            null, modified.content(), modified.eTag(), validatedAt));
+      }
+    }
+
+    if (changed) {
+      saveSnapshot();
+    }
+  }
+
+  // Files restored from a snapshot are parsed on the first access, when their parser is known
+  private Object parsedValue(String fileName, CachedFile cached, ConfigContentParser<?> parser) {
+    if (cached.value() != null) {
+      return cached.value();
+    }
+
+    CachedFile parsed = cached.parsed(parser.parse(cached.content()));
+    cachedFiles.replace(fileName, cached, parsed);
+    return parsed.value();
+  }
+
+  private void refreshInBackground(String fileName, CachedFile stale, ConfigContentParser<?> parser) {
+    if (!refreshingFiles.add(fileName)) {
+      return;
+    }
+
+    refreshExecutor.execute(() -> {
+      try {
+        CachedFile refreshed = revalidate(fileName, stale, parser);
+        if (cachedFiles.replace(fileName, stale, refreshed)) {
+          saveSnapshotIfChanged(stale, refreshed);
+        }
+      } catch (Exception e) {
+        log.warn("Failed to revalidate config file {}, serving the stale one", fileName, e);
+      } finally {
+        refreshingFiles.remove(fileName);
+      }
+    });
+  }
+
+  private CachedFile revalidate(String fileName, CachedFile cached, ConfigContentParser<?> parser) {
+    long validatedAt = clock.getAsLong();
+    // the file is parsed from the response stream, its bytes are kept for the snapshot only
+    Optional<? extends ParsedS3ConfigObject<?>> modified =
+        s3ConfigManager.downloadConfigIfModified(fileName, cached == null ? null : cached.eTag(),
+                                                 parser, snapshotStore != null);
+    if (modified.isEmpty()) {
+      notModified.incrementAndGet();
+      CachedFile validated = cached.validatedAt(validatedAt);
+      return validated.value() == null
+          ? validated.parsed(parser.parse(validated.content()))
+          : validated;
+    }
+
+    log.debug("Config file {} has changed, ETag: {}", fileName, modified.get().eTag());
+    return new CachedFile(modified.get().value(), modified.get().content(),
+                          modified.get().eTag(), validatedAt);
+  }
+
+  private void saveSnapshotIfChanged(CachedFile previous, CachedFile current) {
+    if (previous == null || !Objects.equals(previous.eTag(), current.eTag())) {
+      saveSnapshot();
+    }
+  }
+
+  private void saveSnapshot() {
+    if (snapshotStore == null) {
+      return;
+    }
+
+    snapshotStore.save(new ConfigSnapshot(
+        clock.getAsLong(),
+        cachedFiles.entrySet()
+            .stream()
+            .map(file -> new SnapshotFile(file.getKey(), file.getValue().eTag(),
+                                          new String(file.getValue().content(),
+                                                     StandardCharsets.UTF_8)))
+            .toList()));
+  }
+
+  public record Stats(long hits, long staleHits, long misses, long notModified) {
+
+  }
+
+  // value is null until a file restored from a snapshot gets parsed, content is null for a
+  // downloaded file when there is no snapshot to keep it for
+  private record CachedFile(Object value, byte[] content, String eTag, long validatedAt) {
+
+    CachedFile validatedAt(long validatedAt) {
+      return new CachedFile(value, content, eTag, validatedAt);
+    }
+
+    CachedFile parsed(Object value) {
+      return new CachedFile(value, content, eTag, validatedAt);
+    }
+
+  }
+
+}
@@ -9,14 +9,16 @@ import org.github.akarkin1.config.YamlApplicationConfiguration.S3Configuration;
 import org.github.akarkin1.config.exception.S3DownloadFailureException;
 import org.github.akarkin1.config.model.CfnStackOutputParameter;
 import org.github.akarkin1.config.model.StackOutputParameters;
+import org.github.akarkin1.s3.ConfigContentParser;
 import org.github.akarkin1.s3.S3ConfigManager;
 import software.amazon.awssdk.regions.Region;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static org.github.akarkin1.s3.S3ConfigManager.joinPath;
 import static org.github.akarkin1.util.JsonUtils.parseJson;
@@ -33,24 +35,26 @@ public class S3TaskConfigService implements TaskConfigService {
       .stream()
       .collect(Collectors.toMap(Region::id, r -> r));
 
-  private static final String AWS_LINE_SEPARATOR = "\n";
+  private static final String SNAPSHOT_NAME = "task-config";
 
-  private final S3ConfigManager s3ConfigManager;
+  private final RevalidatingS3ConfigCache configCache;
   private final S3Configuration config;
 
   public static S3TaskConfigService create(S3Configuration config) {
     S3ConfigManager s3ConfigManager = S3ConfigManager.create(config);
-    return new S3TaskConfigService(s3ConfigManager, config);
+    RevalidatingS3ConfigCache configCache = RevalidatingS3ConfigCache.create(
+        s3ConfigManager, config, SNAPSHOT_NAME);
+    return new S3TaskConfigService(configCache, config);
   }
 
   @Override
   public List<Region> getSupportedRegions() throws S3DownloadFailureException {
-    String regionsContent = s3ConfigManager.downloadConfigFromS3(config.getRegionsKey());
-    return parseRegions(regionsContent);
+    return configCache.get(config.getRegionsKey(), S3TaskConfigService::parseRegions);
   }
 
-  private static List<Region> parseRegions(String content) {
-    return Stream.of(content.split(AWS_LINE_SEPARATOR))
+  private static List<Region> parseRegions(InputStream content) throws IOException {
+    return ConfigContentParser.lines().parse(content)
+        .stream()
         .map(String::trim)
         .filter(regionId -> {
           if (!KNOWN_REGIONS.containsKey(regionId)) {
@@ -67,9 +71,12 @@ public class S3TaskConfigService implements TaskConfigService {
   @Override
   public TaskRuntimeParameters getTaskRuntimeParameters(Region region)
       throws S3DownloadFailureException {
+    return configCache.get(joinPath(region.id(), config.getStackOutputParametersKey()),
+                           S3TaskConfigService::parseRuntimeParameters);
+  }
 
-    String jsonContent = s3ConfigManager.downloadConfigFromS3(
-        joinPath(region.id(), config.getStackOutputParametersKey()));
+  private static TaskRuntimeParameters parseRuntimeParameters(InputStream jsonContent)
+      throws IOException {
     List<CfnStackOutputParameter> outputParameters = parseJson(jsonContent,
                                                                new TypeReference<>() {});
 
@@ -88,7 +95,6 @@ public class S3TaskConfigService implements TaskConfigService {
       }
     }
     return runtimeParamBuilder.build();
-
   }
 
 }
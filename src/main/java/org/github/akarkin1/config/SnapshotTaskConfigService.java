@@ -0,0 +1,29 @@
+package org.github.akarkin1.config;
+
+import lombok.RequiredArgsConstructor;
+import org.github.akarkin1.context.RequestSnapshot;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class SnapshotTaskConfigService implements TaskConfigService {
+
+  static final String SUPPORTED_REGIONS_CATEGORY = "task-config-supported-regions";
+  static final String RUNTIME_PARAMETERS_CATEGORY = "task-config-runtime-parameters";
+
+  private final TaskConfigService delegate;
+
+  @Override
+  public List<Region> getSupportedRegions() {
+    return RequestSnapshot.computeIfAbsent(SUPPORTED_REGIONS_CATEGORY, SUPPORTED_REGIONS_CATEGORY,
+                                           delegate::getSupportedRegions);
+  }
+
+  @Override
+  public TaskRuntimeParameters getTaskRuntimeParameters(Region region) {
+    return RequestSnapshot.computeIfAbsent(RUNTIME_PARAMETERS_CATEGORY, region,
+                                           () -> delegate.getTaskRuntimeParameters(region));
+  }
+
+}
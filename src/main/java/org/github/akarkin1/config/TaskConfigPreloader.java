@@ -0,0 +1,74 @@
+package org.github.akarkin1.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Fetches the stack outputs of all the supported regions at once while the Lambda initializes,
+// rather than one region at a time on the first request touching it. Only warms up the cache of
+// the config service, which keeps revalidating the files afterwards; nothing loaded here is
+// served directly. A region failing or not answering in time is left to be loaded lazily.
+@Log4j2
+@RequiredArgsConstructor
+public class TaskConfigPreloader {
+
+  private final TaskConfigService configService;
+  private final long timeoutMs;
+
+  // Returns the number of regions whose stack outputs have been loaded
+  public int preload() {
+    long startedAt = System.nanoTime();
+    List<Region> regions;
+    try {
+      regions = configService.getSupportedRegions();
+    } catch (RuntimeException e) {
+      log.warn("Failed to preload the supported regions", e);
+      regions = List.of();
+    }
+
+    int preloadedRegions = 0;
+    // closing waits for the loads cancelled on timeout to give up on their interruption
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      Map<Region, Future<TaskRuntimeParameters>> pendingRegions = new LinkedHashMap<>();
+      for (Region region : regions) {
+        pendingRegions.put(region,
+                           executor.submit(() -> configService.getTaskRuntimeParameters(region)));
+      }
+
+      long deadline = System.currentTimeMillis() + timeoutMs;
+      for (Entry<Region, Future<TaskRuntimeParameters>> pendingRegion
+          : pendingRegions.entrySet()) {
+        Region region = pendingRegion.getKey();
+        long remainingMs = Math.max(0, deadline - System.currentTimeMillis());
+        try {
+          pendingRegion.getValue().get(remainingMs, TimeUnit.MILLISECONDS);
+          preloadedRegions++;
+        } catch (TimeoutException e) {
+          log.warn("Stack outputs of region {} are not loaded within {} ms", region, timeoutMs);
+          pendingRegion.getValue().cancel(true);
+        } catch (ExecutionException e) {
+          log.warn("Failed to preload stack outputs of region {}", region, e.getCause());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          pendingRegion.getValue().cancel(true);
+        }
+      }
+    }
+
+    log.info("Preloaded stack outputs of {} out of {} regions in {} ms", preloadedRegions,
+             regions.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+    return preloadedRegions;
+  }
+
+}
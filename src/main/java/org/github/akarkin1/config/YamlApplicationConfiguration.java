@@ -32,8 +32,14 @@ public class YamlApplicationConfiguration {
     private String regionsKey;
     private String stackOutputParametersKey;
     private String userPermissionsKey;
-    private Boolean cacheSupportedRegions;
-    private Boolean cacheTaskRuntimeParameters;
+    private String eventIdsDir;
+    private long configCacheTtlSec;
+    private long configCacheMaxStaleSec;
+    private long preloadTimeoutMs;
+    private String configSnapshotDir;
+    private long permissionsRevalidateIntervalSec;
+    private String permissionsBackend;
+    private String usersDir;
 
   }
 
@@ -48,6 +54,8 @@ public class YamlApplicationConfiguration {
     private String hostNameTag;
     private String runByTag;
     private String serviceNameTag;
+    private EcsInventory inventory;
+    private EcsNodeReadiness readiness;
 
   }
 
@@ -56,7 +64,30 @@ public class YamlApplicationConfiguration {
   public static class EcsContainerHealth {
 
     private long intervalMs;
+    private long pendingMaxIntervalMs;
     private long timeoutSec;
+    private long deadlineMarginMs;
+
+  }
+
+  @Getter
+  @Setter
+  public static class EcsInventory {
+
+    private long regionTimeoutMs;
+    private long publicIpCacheTtlSec;
+    private String discovery;
+    private long cacheTtlSec;
+    private long cacheMaxStaleSec;
+
+  }
+
+  @Getter
+  @Setter
+  public static class EcsNodeReadiness {
+
+    private long fallbackPollIntervalMs;
+    private long tokenTtlSec;
 
   }
 
@@ -73,6 +104,9 @@ public class YamlApplicationConfiguration {
   public static class AuthConfiguration {
 
     private boolean enabled;
+    private long secretCacheTtlSec;
+    private long secretRefreshMinIntervalSec;
+    private long previousSecretGraceSec;
 
   }
 
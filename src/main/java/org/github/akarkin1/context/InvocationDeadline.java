@@ -0,0 +1,27 @@
+package org.github.akarkin1.context;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import lombok.experimental.UtilityClass;
+
+// The moment the current Lambda invocation is terminated at. Long-running waits use it to give up
+// early enough to still answer the user.
+@UtilityClass
+public class InvocationDeadline {
+
+  private static volatile long deadline = Long.MAX_VALUE;
+
+  public static void init(Context context) {
+    deadline = context == null
+        ? Long.MAX_VALUE
+        : System.currentTimeMillis() + context.getRemainingTimeInMillis();
+  }
+
+  public static long get() {
+    return deadline;
+  }
+
+  public static void clear() {
+    deadline = Long.MAX_VALUE;
+  }
+
+}
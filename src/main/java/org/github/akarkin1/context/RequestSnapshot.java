@@ -0,0 +1,143 @@
+package org.github.akarkin1.context;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Values read from AWS while a bot command is handled are kept until the command is done, so that
+// all the checks a command does look at the same data, and the data is fetched only once.
+// Outside of an open scope the values are loaded on every call. A task run on another thread
+// on behalf of the command (e.g. a region scan) sees the scope only when wrapped with propagate.
+@Log4j2
+@UtilityClass
+public class RequestSnapshot {
+
+  private static final ThreadLocal<Snapshot> SNAPSHOT = new ThreadLocal<>();
+  private static final Map<String, AtomicLong> SAVED_CALLS = new ConcurrentHashMap<>();
+
+  public static Scope open() {
+    SNAPSHOT.set(new Snapshot(new ConcurrentHashMap<>(), new AtomicLong()));
+    return RequestSnapshot::close;
+  }
+
+  public static <T> Callable<T> propagate(Callable<T> task) {
+    Snapshot snapshot = SNAPSHOT.get();
+    if (snapshot == null) {
+      return task;
+    }
+
+    return () -> {
+      Snapshot previous = SNAPSHOT.get();
+      SNAPSHOT.set(snapshot);
+      try {
+        return task.call();
+      } finally {
+        if (previous == null) {
+          SNAPSHOT.remove();
+        } else {
+          SNAPSHOT.set(previous);
+        }
+      }
+    };
+  }
+
+  public static boolean isOpen() {
+    return SNAPSHOT.get() != null;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T> T computeIfAbsent(String category, Object id, Supplier<T> loader) {
+    Snapshot snapshot = SNAPSHOT.get();
+    if (snapshot == null) {
+      return loader.get();
+    }
+
+    // not computeIfAbsent of the map: a slow load must not block the other regions' loads
+    SnapshotKey key = new SnapshotKey(category, id);
+    Object cached = snapshot.values().get(key);
+    if (cached != null) {
+      countSavedCall(category);
+      return (T) cached;
+    }
+
+    T value = loader.get();
+    if (value != null) {
+      snapshot.values().put(key, value);
+    }
+    return value;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T> Map<Object, T> getAll(String category) {
+    Snapshot snapshot = SNAPSHOT.get();
+    Map<Object, T> values = new HashMap<>();
+    if (snapshot == null) {
+      return values;
+    }
+
+    snapshot.values().forEach((key, value) -> {
+      if (key.category().equals(category)) {
+        values.put(key.id(), (T) value);
+      }
+    });
+    return values;
+  }
+
+  public static void countSavedCall(String category) {
+    Snapshot snapshot = SNAPSHOT.get();
+    if (snapshot != null) {
+      snapshot.savedCalls().incrementAndGet();
+    }
+    SAVED_CALLS.computeIfAbsent(category, ignore -> new AtomicLong()).incrementAndGet();
+  }
+
+  public static void invalidate(String category) {
+    Snapshot snapshot = SNAPSHOT.get();
+    if (snapshot != null) {
+      snapshot.values().keySet().removeIf(key -> key.category().equals(category));
+    }
+  }
+
+  public static long getSavedCalls(String category) {
+    AtomicLong savedCalls = SAVED_CALLS.get(category);
+    return savedCalls == null ? 0 : savedCalls.get();
+  }
+
+  public static Map<String, Long> getSavedCalls() {
+    Map<String, Long> savedCalls = new HashMap<>();
+    SAVED_CALLS.forEach((category, count) -> savedCalls.put(category, count.get()));
+    return savedCalls;
+  }
+
+  private static void close() {
+    Snapshot snapshot = SNAPSHOT.get();
+    if (snapshot != null && snapshot.savedCalls().get() > 0) {
+      log.debug("Request snapshot saved {} calls to AWS. Saved since start: {}",
+                snapshot.savedCalls().get(), getSavedCalls());
+    }
+    SNAPSHOT.remove();
+  }
+
+  public interface Scope extends AutoCloseable {
+
+    @Override
+    void close();
+
+  }
+
+  private record SnapshotKey(String category, Object id) {
+
+  }
+
+  // shared by the threads a command fans out to, hence concurrent
+  private record Snapshot(Map<SnapshotKey, Object> values, AtomicLong savedCalls) {
+
+  }
+
+}
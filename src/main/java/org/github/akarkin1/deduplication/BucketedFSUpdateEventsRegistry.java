@@ -0,0 +1,195 @@
+package org.github.akarkin1.deduplication;
+
+import lombok.extern.log4j.Log4j2;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+// Update ids are written into buckets of consecutive ids (Telegram numbers the updates of a bot
+// one by one), so the place of an event depends on its id only: a claim is a single exclusive
+// file creation, and racing invocations always compete for the same file, whatever their clocks
+// say. A bucket keeps being written to while its ids come in, and expires as a whole once its
+// latest event is older than the TTL.
+// Events left in the same root directory by FSUpdateEventsRegistry (a flat file per update) are
+// still honored, and swept by their age, until none of them is left.
+@Log4j2
+public class BucketedFSUpdateEventsRegistry implements ExpiringUpdateEventsRegistry {
+
+  static final long IDS_PER_BUCKET = 1_000;
+  static final String BUCKET_PREFIX = "u";
+
+  private final long registeredEventExpirationTimeMs;
+  private final Path rootPath;
+  private final LongSupplier clock;
+  private volatile boolean flatEventsPresent = true;
+
+  public BucketedFSUpdateEventsRegistry(long registeredEventExpirationTimeMs, String rootDir) {
+    this(registeredEventExpirationTimeMs, rootDir, System::currentTimeMillis);
+  }
+
+  BucketedFSUpdateEventsRegistry(long registeredEventExpirationTimeMs, String rootDir,
+                                 LongSupplier clock) {
+    this.registeredEventExpirationTimeMs = registeredEventExpirationTimeMs;
+    this.rootPath = Paths.get(rootDir);
+    this.clock = clock;
+  }
+
+  @Override
+  public boolean hasAlreadyProcessed(Update update) {
+    return Files.exists(eventPath(update)) || existsAsFlatFile(update);
+  }
+
+  @Override
+  public void registerEvent(Update update) {
+    try {
+      createEventFile(update);
+    } catch (IOException e) {
+      log.error("Failed to register event: {}", update, e);
+    }
+  }
+
+  // Only the versions before the id buckets wrote the flat files, so they are checked after the
+  // claim without a race between the instances of this version.
+  @Override
+  public boolean tryRegister(Update update) {
+    try {
+      createEventFile(update);
+    } catch (FileAlreadyExistsException e) {
+      return false;
+    } catch (IOException e) {
+      log.error("Failed to register event: {}", update, e);
+      return true;
+    }
+
+    return !existsAsFlatFile(update);
+  }
+
+  private void createEventFile(Update update) throws IOException {
+    Path eventPath = eventPath(update);
+    try {
+      Files.createFile(eventPath);
+    } catch (NoSuchFileException e) {
+      // the first event of the bucket creates it
+      Files.createDirectories(eventPath.getParent());
+      Files.createFile(eventPath);
+    }
+  }
+
+  private boolean existsAsFlatFile(Update update) {
+    return flatEventsPresent
+           && Files.exists(rootPath.resolve(String.valueOf(update.getUpdateId())));
+  }
+
+  @Override
+  public int deleteExpired(int maxDeletions) {
+    long now = clock.getAsLong();
+    int deletedFiles = 0;
+    int remainingFlatEvents = 0;
+    try (Stream<Path> foundPaths = Files.list(rootPath)) {
+      Iterator<Path> paths = foundPaths.iterator();
+      while (deletedFiles < maxDeletions && paths.hasNext()) {
+        Path path = paths.next();
+        String name = path.getFileName().toString();
+        if (!Files.isDirectory(path)) {
+          if (now - lastModifiedOf(path) > registeredEventExpirationTimeMs) {
+            deletedFiles += deleteFileWithoutException(path) ? 1 : 0;
+          } else {
+            remainingFlatEvents++;
+          }
+        } else if (name.startsWith(BUCKET_PREFIX)) {
+          // an event created in a bucket updates its modification time
+          long lastModified = lastModifiedOf(path);
+          if (now - lastModified > registeredEventExpirationTimeMs) {
+            deletedFiles += deleteBucket(path, maxDeletions - deletedFiles);
+            // the deletions touch the bucket, a partially deleted one must stay expired
+            restoreLastModified(path, lastModified);
+          }
+        }
+      }
+
+      if (paths.hasNext()) {
+        // the batch is exhausted, flat events may be among the paths not visited
+        return deletedFiles;
+      }
+    } catch (NoSuchFileException e) {
+      // nothing has been registered yet
+      return deletedFiles;
+    } catch (IOException e) {
+      log.error("Failed to list directory: {}", rootPath, e);
+      return deletedFiles;
+    }
+
+    if (flatEventsPresent && remainingFlatEvents == 0) {
+      log.info("No events of the flat layout are left in {}", rootPath);
+    }
+    flatEventsPresent = remainingFlatEvents > 0;
+    return deletedFiles;
+  }
+
+  // The bucket directory itself is deleted once all of its events are
+  private static int deleteBucket(Path bucketPath, int maxDeletions) {
+    log.debug("Deleting expired bucket {}", bucketPath);
+    int deletedFiles = 0;
+    try (Stream<Path> eventFiles = Files.list(bucketPath)) {
+      Iterator<Path> paths = eventFiles.iterator();
+      while (paths.hasNext()) {
+        if (deletedFiles == maxDeletions) {
+          return deletedFiles;
+        }
+        deletedFiles += deleteFileWithoutException(paths.next()) ? 1 : 0;
+      }
+    } catch (NoSuchFileException e) {
+      // already deleted by a concurrent invocation
+      return deletedFiles;
+    } catch (IOException e) {
+      log.error("Failed to list bucket: {}", bucketPath, e);
+      return deletedFiles;
+    }
+    deleteFileWithoutException(bucketPath);
+    return deletedFiles;
+  }
+
+  private static long lastModifiedOf(Path path) {
+    try {
+      return Files.getLastModifiedTime(path).toMillis();
+    } catch (IOException e) {
+      // a file deleted concurrently is as good as expired
+      return 0;
+    }
+  }
+
+  private static void restoreLastModified(Path bucketPath, long lastModified) {
+    try {
+      Files.setLastModifiedTime(bucketPath, FileTime.fromMillis(lastModified));
+    } catch (NoSuchFileException e) {
+      // the bucket is deleted completely
+    } catch (IOException e) {
+      log.error("Failed to restore modification time of bucket: {}", bucketPath, e);
+    }
+  }
+
+  private static boolean deleteFileWithoutException(Path path) {
+    try {
+      return Files.deleteIfExists(path);
+    } catch (IOException e) {
+      log.error("Failed to delete file during cleanup procedure: {}", path.getFileName(), e);
+      return false;
+    }
+  }
+
+  private Path eventPath(Update update) {
+    long updateId = update.getUpdateId();
+    return rootPath.resolve(BUCKET_PREFIX + Math.floorDiv(updateId, IDS_PER_BUCKET))
+        .resolve(String.valueOf(updateId));
+  }
+
+}
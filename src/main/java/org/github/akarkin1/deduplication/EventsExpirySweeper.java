@@ -0,0 +1,70 @@
+package org.github.akarkin1.deduplication;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Keeps expiry off the path that answers the user: the handler calls it once an update has been
+// handled, or on a health-check ping. At most one sweep runs per interval, and it deletes no more
+// than a batch of events, leaving the rest of a backlog to the following sweeps.
+// The expired node readiness tokens are swept the same way.
+@Log4j2
+public class EventsExpirySweeper {
+
+  private static final long NEVER = Long.MIN_VALUE;
+
+  private final ExpiringRecords registry;
+  private final long minIntervalMs;
+  private final int batchSize;
+  private final LongSupplier clock;
+  private final AtomicLong lastSweepAt = new AtomicLong(NEVER);
+
+  public EventsExpirySweeper(ExpiringRecords registry, long minIntervalMs,
+                             int batchSize) {
+    this(registry, minIntervalMs, batchSize, System::currentTimeMillis);
+  }
+
+  EventsExpirySweeper(ExpiringRecords registry, long minIntervalMs, int batchSize,
+                      LongSupplier clock) {
+    this.registry = registry;
+    this.minIntervalMs = minIntervalMs;
+    this.batchSize = batchSize;
+    this.clock = clock;
+  }
+
+  public Optional<SweepReport> sweepIfDue() {
+    long now = clock.getAsLong();
+    long lastSweep = lastSweepAt.get();
+    if (lastSweep != NEVER && now - lastSweep < minIntervalMs
+        || !lastSweepAt.compareAndSet(lastSweep, now)) {
+      return Optional.empty();
+    }
+
+    long startedAt = System.nanoTime();
+    int deletedEvents;
+    try {
+      deletedEvents = registry.deleteExpired(batchSize);
+    } catch (RuntimeException e) {
+      // runs in the finally block of the handler, so it must not replace the outcome of an update
+      log.error("Failed to delete expired records of {}", registry.getClass().getSimpleName(), e);
+      return Optional.empty();
+    }
+    SweepReport report = new SweepReport(
+        deletedEvents, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+    log.info("Deleted {} expired records of {} in {} ms", report.deletedEvents(),
+             registry.getClass().getSimpleName(), report.elapsedMs());
+    if (deletedEvents == batchSize) {
+      log.info("The batch of {} events is exhausted, the rest is left to the next sweep",
+               batchSize);
+    }
+    return Optional.of(report);
+  }
+
+  public record SweepReport(int deletedEvents, long elapsedMs) {
+
+  }
+
+}
@@ -0,0 +1,8 @@
+package org.github.akarkin1.deduplication;
+
+// Records on a shared file system, which nobody deletes but an EventsExpirySweeper
+public interface ExpiringRecords {
+
+  // Deletes no more than the given number of expired records, returns how many were deleted
+  int deleteExpired(int maxDeletions);
+}
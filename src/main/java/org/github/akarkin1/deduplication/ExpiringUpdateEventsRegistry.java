@@ -0,0 +1,6 @@
+package org.github.akarkin1.deduplication;
+
+// A registry, which keeps a record per event and has to delete the expired ones explicitly
+public interface ExpiringUpdateEventsRegistry extends UpdateEventsRegistry, ExpiringRecords {
+
+}
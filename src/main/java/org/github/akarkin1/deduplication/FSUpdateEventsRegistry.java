@@ -6,14 +6,17 @@ import lombok.val;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Iterator;
 import java.util.stream.Stream;
 
 @Log4j2
 @RequiredArgsConstructor
-public class FSUpdateEventsRegistry implements UpdateEventsRegistry {
+public class FSUpdateEventsRegistry implements ExpiringUpdateEventsRegistry {
 
   private final long registeredEventExpirationTimeMs;
   private final String rootDir;
@@ -39,8 +42,29 @@ public class FSUpdateEventsRegistry implements UpdateEventsRegistry {
     } catch (IOException e) {
       log.error("Failed to register event: {}", update, e);
     }
+  }
+
+  @Override
+  public boolean tryRegister(Update update) {
+    String updateId = String.valueOf(update.getUpdateId());
+
+    Path eventPath = Paths.get(rootDir, updateId);
+    boolean registered = true;
+    try {
+      // create-exclusive, so exactly one of concurrent invocations gets the event
+      try {
+        Files.createFile(eventPath);
+      } catch (NoSuchFileException e) {
+        Files.createDirectories(eventPath.getParent());
+        Files.createFile(eventPath);
+      }
+    } catch (FileAlreadyExistsException e) {
+      registered = false;
+    } catch (IOException e) {
+      log.error("Failed to register event: {}", update, e);
+    }
 
-    deleteExpiredFiles();
+    return registered;
   }
 
   private void logListDir(String rootDir) throws IOException {
@@ -50,31 +74,40 @@ public class FSUpdateEventsRegistry implements UpdateEventsRegistry {
     }
   }
 
-  private void deleteExpiredFiles() {
+  @Override
+  public int deleteExpired(int maxDeletions) {
+    int deletedFiles = 0;
     try (Stream<Path> foundFiles = Files.list(Paths.get(rootDir))) {
-      foundFiles.forEach(path -> {
-        val file = path.toFile();
+      Iterator<Path> paths = foundFiles.iterator();
+      while (deletedFiles < maxDeletions && paths.hasNext()) {
+        val file = paths.next().toFile();
 
         if (file.isDirectory()) {
-          return;
+          continue;
         }
 
         long currentTimeMs = System.currentTimeMillis();
         long lastModified = file.lastModified();
-        if (currentTimeMs - lastModified > registeredEventExpirationTimeMs) {
-          deleteFileWithoutException(path);
+        if (currentTimeMs - lastModified > registeredEventExpirationTimeMs
+            && deleteFileWithoutException(file.toPath())) {
+          deletedFiles++;
         }
-      });
+      }
+    } catch (NoSuchFileException e) {
+      // nothing has been registered yet
     } catch (IOException e) {
       log.error("Failed to list directory: {}", rootDir, e);
     }
+    return deletedFiles;
   }
 
-  private static void deleteFileWithoutException(Path path) {
+  private static boolean deleteFileWithoutException(Path path) {
     try {
       Files.delete(path);
+      return true;
     } catch (IOException e) {
       log.error("Failed to delete file during cleanup procedure: {}", path.getFileName(), e);
+      return false;
     }
   }
 }
@@ -0,0 +1,125 @@
+package org.github.akarkin1.deduplication;
+
+import lombok.extern.log4j.Log4j2;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+// Telegram update ids grow within a bot (until the sequence is restarted), so rather than a file per update a single state file
+// keeps the highest registered id and a bitmap of the ids right below it (retried webhook calls
+// may arrive out of order). The state read last stays in memory, so a retry hitting a warm
+// instance is answered without EFS I/O; the file is only read and written, under an exclusive
+// lock, to register an id this instance has not seen yet.
+@Log4j2
+public class HighWaterMarkUpdateEventsRegistry implements UpdateEventsRegistry {
+
+  static final String STATE_FILE_NAME = "high-water-mark";
+
+  // FileLock is held on behalf of the whole JVM, so threads of one process serialize on their own
+  private static final Map<Path, Object> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+  private final Path statePath;
+  private final int windowSize;
+  private final Object processLock;
+  private final AtomicLong localHits = new AtomicLong();
+  private final AtomicLong stateReads = new AtomicLong();
+  private volatile UpdateIdWindow window;
+
+  public HighWaterMarkUpdateEventsRegistry(String rootDir, int windowSize) {
+    this.statePath = Paths.get(rootDir, STATE_FILE_NAME).toAbsolutePath();
+    this.windowSize = windowSize;
+    this.processLock = PROCESS_LOCKS.computeIfAbsent(statePath, path -> new Object());
+    this.window = new UpdateIdWindow(windowSize);
+  }
+
+  @Override
+  public boolean hasAlreadyProcessed(Update update) {
+    long updateId = update.getUpdateId();
+    if (window.contains(updateId)) {
+      localHits.incrementAndGet();
+      return true;
+    }
+
+    return syncState(updateId, false);
+  }
+
+  @Override
+  public void registerEvent(Update update) {
+    tryRegister(update);
+  }
+
+  @Override
+  public boolean tryRegister(Update update) {
+    long updateId = update.getUpdateId();
+    if (window.contains(updateId)) {
+      localHits.incrementAndGet();
+      return false;
+    }
+
+    return !syncState(updateId, true);
+  }
+
+  public Stats getStats() {
+    return new Stats(localHits.get(), stateReads.get());
+  }
+
+  // Returns whether the update has been registered before
+  private boolean syncState(long updateId, boolean register) {
+    synchronized (processLock) {
+      try (FileChannel channel = openState();
+           FileLock ignored = channel.lock()) {
+        stateReads.incrementAndGet();
+        UpdateIdWindow state = UpdateIdWindow.read(channel, windowSize);
+        boolean seen = state.contains(updateId);
+        if (seen && state.isBelow(updateId)) {
+          log.warn("Update {} is below the window of the mark {}, deeming it processed",
+                   updateId, state.getHighWaterMark());
+        }
+
+        if (!seen && register && state.isSequenceReset(updateId)) {
+          log.info("Update {} is far below the mark {}, starting the window over", updateId,
+                   state.getHighWaterMark());
+        }
+
+        if (!seen && register) {
+          state.add(updateId);
+          state.write(channel);
+          channel.force(false);
+        }
+        // never modified once published
+        window = state;
+        return seen;
+      } catch (IOException e) {
+        log.error("Failed to access the deduplication state: {}", statePath, e);
+        return false;
+      }
+    }
+  }
+
+  private FileChannel openState() throws IOException {
+    try {
+      return FileChannel.open(statePath, CREATE, READ, WRITE);
+    } catch (NoSuchFileException e) {
+      Files.createDirectories(statePath.getParent());
+      return FileChannel.open(statePath, CREATE, READ, WRITE);
+    }
+  }
+
+  public record Stats(long localHits, long stateReads) {
+
+  }
+
+}
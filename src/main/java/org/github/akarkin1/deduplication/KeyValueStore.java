@@ -0,0 +1,14 @@
+package org.github.akarkin1.deduplication;
+
+import java.time.Instant;
+
+// A store with a conditional put of an entry carrying a TTL attribute (as DynamoDB offers, or S3
+// with the expiration time in the object metadata). An expired entry counts as absent.
+public interface KeyValueStore {
+
+  // Stores the key unless a live entry exists (replacing an expired one), returns whether this
+  // call stored it
+  boolean putIfAbsent(String key, Instant expiresAt);
+
+  boolean contains(String key);
+}
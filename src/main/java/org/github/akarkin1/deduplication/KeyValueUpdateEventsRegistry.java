@@ -0,0 +1,61 @@
+package org.github.akarkin1.deduplication;
+
+import lombok.extern.log4j.Log4j2;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.time.Instant;
+import java.util.function.LongSupplier;
+
+// Needs no file system, so the Lambda does not have to be placed into a VPC to reach EFS. The
+// store expires the entries by their TTL attribute, hence there is nothing to sweep.
+@Log4j2
+public class KeyValueUpdateEventsRegistry implements UpdateEventsRegistry {
+
+  private static final String KEY_PREFIX = "update-";
+
+  private final KeyValueStore store;
+  private final long registeredEventExpirationTimeMs;
+  private final LongSupplier clock;
+
+  public KeyValueUpdateEventsRegistry(KeyValueStore store, long registeredEventExpirationTimeMs) {
+    this(store, registeredEventExpirationTimeMs, System::currentTimeMillis);
+  }
+
+  KeyValueUpdateEventsRegistry(KeyValueStore store, long registeredEventExpirationTimeMs,
+                               LongSupplier clock) {
+    this.store = store;
+    this.registeredEventExpirationTimeMs = registeredEventExpirationTimeMs;
+    this.clock = clock;
+  }
+
+  @Override
+  public boolean hasAlreadyProcessed(Update update) {
+    try {
+      return store.contains(keyOf(update));
+    } catch (RuntimeException e) {
+      log.error("Failed to look up event: {}", update, e);
+      return false;
+    }
+  }
+
+  @Override
+  public void registerEvent(Update update) {
+    tryRegister(update);
+  }
+
+  @Override
+  public boolean tryRegister(Update update) {
+    Instant expiresAt = Instant.ofEpochMilli(clock.getAsLong() + registeredEventExpirationTimeMs);
+    try {
+      return store.putIfAbsent(keyOf(update), expiresAt);
+    } catch (RuntimeException e) {
+      log.error("Failed to register event: {}", update, e);
+      return true;
+    }
+  }
+
+  private static String keyOf(Update update) {
+    return KEY_PREFIX + update.getUpdateId();
+  }
+
+}
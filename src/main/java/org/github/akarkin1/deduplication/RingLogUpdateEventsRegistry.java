@@ -0,0 +1,198 @@
+package org.github.akarkin1.deduplication;
+
+import lombok.extern.log4j.Log4j2;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+// All the recent update ids live in one fixed-size file instead of a file per update: the slot
+// of an update is its id modulo the ring size, so a lookup or an insert is a 16 bytes access at
+// a known offset, and an entry expires by its age or by a later update taking over its slot.
+// The file is mapped once per instance and every slot access holds a FileChannel lock on the
+// slot; the NFS client revalidates the mapped pages when the lock is taken and writes them back
+// when it is released, which keeps the instances sharing the file over EFS consistent.
+// The ring size is kept in the header, and an existing ring is used with its own size whatever
+// the instance is configured with, so instances of different configurations share one ring
+// rather than wiping it for each other. To resize the ring, its file has to be deleted.
+@Log4j2
+public class RingLogUpdateEventsRegistry implements UpdateEventsRegistry {
+
+  static final String RING_FILE_NAME = "ring.log";
+  static final int HEADER_SIZE = 16;
+  static final int SLOT_SIZE = 16;
+  private static final int MAGIC = 0x52494e47;
+
+  // FileLock is held on behalf of the whole JVM, so threads of one process serialize on their own
+  private static final Map<Path, Object> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+  private final Path ringPath;
+  private final int configuredRingSize;
+  private final long registeredEventExpirationTimeMs;
+  private final LongSupplier clock;
+  private final Object processLock;
+  private FileChannel channel;
+  private MappedByteBuffer ring;
+  private int ringSize;
+
+  public RingLogUpdateEventsRegistry(long registeredEventExpirationTimeMs, String rootDir,
+                                     int ringSize) {
+    this(registeredEventExpirationTimeMs, rootDir, ringSize, System::currentTimeMillis);
+  }
+
+  RingLogUpdateEventsRegistry(long registeredEventExpirationTimeMs, String rootDir, int ringSize,
+                              LongSupplier clock) {
+    this.ringPath = Paths.get(rootDir, RING_FILE_NAME).toAbsolutePath();
+    this.configuredRingSize = ringSize;
+    this.registeredEventExpirationTimeMs = registeredEventExpirationTimeMs;
+    this.clock = clock;
+    this.processLock = PROCESS_LOCKS.computeIfAbsent(ringPath, path -> new Object());
+  }
+
+  @Override
+  public boolean hasAlreadyProcessed(Update update) {
+    long updateId = update.getUpdateId();
+    synchronized (processLock) {
+      try {
+        FileChannel mappedChannel = mappedChannel();
+        int offset = slotOffset(updateId);
+        try (FileLock ignored = mappedChannel.lock(offset, SLOT_SIZE, true)) {
+          return isLive(offset, updateId, clock.getAsLong());
+        }
+      } catch (IOException e) {
+        log.error("Failed to read the deduplication ring: {}", ringPath, e);
+        unmap();
+        return false;
+      }
+    }
+  }
+
+  @Override
+  public void registerEvent(Update update) {
+    tryRegister(update);
+  }
+
+  @Override
+  public boolean tryRegister(Update update) {
+    long updateId = update.getUpdateId();
+    synchronized (processLock) {
+      try {
+        FileChannel mappedChannel = mappedChannel();
+        int offset = slotOffset(updateId);
+        try (FileLock ignored = mappedChannel.lock(offset, SLOT_SIZE, false)) {
+          long now = clock.getAsLong();
+          if (isLive(offset, updateId, now)) {
+            return false;
+          }
+
+          if (isLive(offset, ring.getLong(offset), now)) {
+            log.warn("Update {} takes over the slot of the live update {}, the ring of {} slots "
+                     + "is too small for the event rate", updateId, ring.getLong(offset), ringSize);
+          }
+          ring.putLong(offset, updateId);
+          ring.putLong(offset + Long.BYTES, now);
+          ring.force(offset, SLOT_SIZE);
+          return true;
+        }
+      } catch (IOException e) {
+        log.error("Failed to register event: {}", update, e);
+        unmap();
+        return true;
+      }
+    }
+  }
+
+  private boolean isLive(int offset, long updateId, long now) {
+    return ring.getLong(offset) == updateId
+           && now - ring.getLong(offset + Long.BYTES) <= registeredEventExpirationTimeMs;
+  }
+
+  private int slotOffset(long updateId) {
+    return HEADER_SIZE + (int) Math.floorMod(updateId, (long) ringSize) * SLOT_SIZE;
+  }
+
+  private FileChannel mappedChannel() throws IOException {
+    if (ring != null) {
+      return channel;
+    }
+
+    try {
+      channel = FileChannel.open(ringPath, CREATE, READ, WRITE);
+    } catch (NoSuchFileException e) {
+      Files.createDirectories(ringPath.getParent());
+      channel = FileChannel.open(ringPath, CREATE, READ, WRITE);
+    }
+
+    try (FileLock ignored = channel.lock()) {
+      int existingRingSize = readRingSize();
+      if (existingRingSize > 0) {
+        if (existingRingSize != configuredRingSize) {
+          log.warn("The deduplication ring {} has {} slots, using it instead of the configured {}",
+                   ringPath, existingRingSize, configuredRingSize);
+        }
+        ringSize = existingRingSize;
+        ring = channel.map(MapMode.READ_WRITE, 0, fileSizeOf(ringSize));
+      } else {
+        log.warn("Initializing the deduplication ring {} of {} slots", ringPath,
+                 configuredRingSize);
+        ringSize = configuredRingSize;
+        channel.truncate(0);
+        ring = channel.map(MapMode.READ_WRITE, 0, fileSizeOf(ringSize));
+        ring.putInt(0, MAGIC);
+        ring.putInt(Integer.BYTES, ringSize);
+        ring.force();
+      }
+    }
+    return channel;
+  }
+
+  // Returns the size of the ring in the file, or 0 if the file does not hold a complete ring
+  private int readRingSize() throws IOException {
+    if (channel.size() < HEADER_SIZE) {
+      return 0;
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+      // reads the whole header
+    }
+    int existingRingSize = header.getInt(Integer.BYTES);
+    if (header.getInt(0) != MAGIC || existingRingSize <= 0
+        || channel.size() != fileSizeOf(existingRingSize)) {
+      return 0;
+    }
+    return existingRingSize;
+  }
+
+  private static long fileSizeOf(int ringSize) {
+    return HEADER_SIZE + (long) ringSize * SLOT_SIZE;
+  }
+
+  private void unmap() {
+    ring = null;
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        log.warn("Failed to close the deduplication ring: {}", ringPath, e);
+      }
+      channel = null;
+    }
+  }
+
+}
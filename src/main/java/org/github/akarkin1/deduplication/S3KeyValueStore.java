@@ -0,0 +1,123 @@
+package org.github.akarkin1.deduplication;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+import static org.github.akarkin1.s3.S3ConfigManager.joinPath;
+
+// Empty objects created with If-None-Match: *, so S3 itself rejects the second writer of a key.
+// S3 has no per-object TTL, so the expiration time is kept in the object metadata: an expired
+// object counts as absent, and is taken over with a put conditional on its ETag, which again
+// lets only one of the racing writers win.
+public class S3KeyValueStore implements KeyValueStore {
+
+  static final String EXPIRES_AT_METADATA = "expires-at";
+  private static final String IF_MATCH_HEADER = "If-Match";
+  private static final int PRECONDITION_FAILED = 412;
+  private static final int CONDITIONAL_REQUEST_CONFLICT = 409;
+  private static final int NOT_FOUND = 404;
+
+  private final S3Client s3Client;
+  private final String bucket;
+  private final String keyPrefix;
+  private final LongSupplier clock;
+
+  public S3KeyValueStore(S3Client s3Client, String bucket, String keyPrefix) {
+    this(s3Client, bucket, keyPrefix, System::currentTimeMillis);
+  }
+
+  S3KeyValueStore(S3Client s3Client, String bucket, String keyPrefix, LongSupplier clock) {
+    this.s3Client = s3Client;
+    this.bucket = bucket;
+    this.keyPrefix = keyPrefix;
+    this.clock = clock;
+  }
+
+  @Override
+  public boolean putIfAbsent(String key, Instant expiresAt) {
+    if (tryPut(key, expiresAt, null)) {
+      return true;
+    }
+
+    Optional<HeadObjectResponse> existing = head(key);
+    if (existing.isEmpty()) {
+      // deleted in the meantime
+      return tryPut(key, expiresAt, null);
+    }
+
+    return isExpired(existing.get()) && tryPut(key, expiresAt, existing.get().eTag());
+  }
+
+  @Override
+  public boolean contains(String key) {
+    return head(key).filter(existing -> !isExpired(existing)).isPresent();
+  }
+
+  // Creates the object if there is none, or replaces the one of the given ETag
+  private boolean tryPut(String key, Instant expiresAt, String replacedETag) {
+    PutObjectRequest.Builder request = PutObjectRequest.builder()
+        .bucket(bucket)
+        .key(joinPath(keyPrefix, key))
+        .metadata(Map.of(EXPIRES_AT_METADATA, expiresAt.toString()));
+    if (replacedETag == null) {
+      request.ifNoneMatch("*");
+    } else {
+      request.overrideConfiguration(override -> override.putHeader(IF_MATCH_HEADER,
+                                                                   replacedETag));
+    }
+
+    try {
+      s3Client.putObject(request.build(), RequestBody.empty());
+      return true;
+    } catch (S3Exception e) {
+      if (e.statusCode() == PRECONDITION_FAILED || e.statusCode() == CONDITIONAL_REQUEST_CONFLICT) {
+        // the object exists (or has changed), or a concurrent put of it is in progress
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  private Optional<HeadObjectResponse> head(String key) {
+    HeadObjectRequest request = HeadObjectRequest.builder()
+        .bucket(bucket)
+        .key(joinPath(keyPrefix, key))
+        .build();
+    try {
+      return Optional.of(s3Client.headObject(request));
+    } catch (NoSuchKeyException e) {
+      return Optional.empty();
+    } catch (S3Exception e) {
+      if (e.statusCode() == NOT_FOUND) {
+        return Optional.empty();
+      }
+      throw e;
+    }
+  }
+
+  // An object without a readable expiration time never expires
+  private boolean isExpired(HeadObjectResponse object) {
+    String expiresAt = object.metadata().get(EXPIRES_AT_METADATA);
+    if (expiresAt == null) {
+      return false;
+    }
+
+    try {
+      return Instant.parse(expiresAt).toEpochMilli() <= clock.getAsLong();
+    } catch (DateTimeParseException e) {
+      return false;
+    }
+  }
+
+}
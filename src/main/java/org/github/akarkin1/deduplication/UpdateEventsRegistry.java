@@ -7,4 +7,7 @@ public interface UpdateEventsRegistry {
   boolean hasAlreadyProcessed(Update update);
 
   void registerEvent(Update update);
+
+  // Registers the event unless it has been registered already, returns whether this call did it
+  boolean tryRegister(Update update);
 }
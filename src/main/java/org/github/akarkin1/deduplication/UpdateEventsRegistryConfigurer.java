@@ -0,0 +1,47 @@
+package org.github.akarkin1.deduplication;
+
+import lombok.extern.log4j.Log4j2;
+import org.github.akarkin1.config.ConfigManager;
+import org.github.akarkin1.config.YamlApplicationConfiguration.S3Configuration;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import static org.github.akarkin1.config.ConfigManager.getEventRegistryBackend;
+import static org.github.akarkin1.config.ConfigManager.getEventRingSize;
+import static org.github.akarkin1.config.ConfigManager.getEventRootDir;
+import static org.github.akarkin1.config.ConfigManager.getEventTtlSec;
+import static org.github.akarkin1.config.ConfigManager.getEventWindowSize;
+import static org.github.akarkin1.config.ConfigManager.getLocalEventRootDir;
+
+@Log4j2
+public class UpdateEventsRegistryConfigurer {
+
+  private static final String EFS_BACKEND = "efs";
+  private static final String EFS_RING_BACKEND = "efs-ring";
+  private static final String EFS_HIGH_WATER_MARK_BACKEND = "efs-high-water-mark";
+  private static final String S3_BACKEND = "s3";
+  // only deduplicates retries reaching the same execution environment
+  private static final String LOCAL_BACKEND = "local";
+
+  public UpdateEventsRegistry configure() {
+    String backend = getEventRegistryBackend();
+    log.info("Using the {} backend of the events registry", backend);
+    return switch (backend) {
+      case EFS_BACKEND -> new BucketedFSUpdateEventsRegistry(getEventTtlSec(), getEventRootDir());
+      case EFS_RING_BACKEND -> new RingLogUpdateEventsRegistry(getEventTtlSec(), getEventRootDir(),
+                                                               getEventRingSize());
+      case EFS_HIGH_WATER_MARK_BACKEND -> new HighWaterMarkUpdateEventsRegistry(
+          getEventRootDir(), getEventWindowSize());
+      case S3_BACKEND -> new KeyValueUpdateEventsRegistry(s3KeyValueStore(), getEventTtlSec());
+      case LOCAL_BACKEND -> new BucketedFSUpdateEventsRegistry(getEventTtlSec(),
+                                                               getLocalEventRootDir());
+      default -> throw new IllegalStateException(
+          "Unknown events registry backend: '%s'".formatted(backend));
+    };
+  }
+
+  private static KeyValueStore s3KeyValueStore() {
+    S3Configuration s3 = ConfigManager.getApplicationYaml().getS3();
+    return new S3KeyValueStore(S3Client.create(), s3.getConfigBucket(), s3.getEventIdsDir());
+  }
+
+}
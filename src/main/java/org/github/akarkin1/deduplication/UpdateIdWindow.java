@@ -0,0 +1,113 @@
+package org.github.akarkin1.deduplication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// The highest registered update id and a bitmap of the ids right below it, indexed by the id
+// modulo the window size. Ids that fell out of the window are deemed to be processed already,
+// unless they are so far below the mark that the sequence must have been restarted: Telegram
+// picks a random id for the next update once a bot has had no updates for a week.
+final class UpdateIdWindow {
+
+  static final long SEQUENCE_RESET_DISTANCE = 1_000_000;
+
+  private final long[] bits;
+  private final int size;
+  private long highWaterMark;
+
+  UpdateIdWindow(int size) {
+    this.bits = new long[Math.ceilDiv(size, Long.SIZE)];
+    this.size = bits.length * Long.SIZE;
+  }
+
+  long getHighWaterMark() {
+    return highWaterMark;
+  }
+
+  boolean isBelow(long updateId) {
+    return updateId <= highWaterMark - size;
+  }
+
+  boolean isSequenceReset(long updateId) {
+    return updateId <= highWaterMark - Math.max(size, SEQUENCE_RESET_DISTANCE);
+  }
+
+  boolean contains(long updateId) {
+    if (updateId > highWaterMark || isSequenceReset(updateId)) {
+      return false;
+    }
+
+    return isBelow(updateId) || (bits[wordOf(updateId)] & maskOf(updateId)) != 0;
+  }
+
+  void add(long updateId) {
+    if (isSequenceReset(updateId)) {
+      // none of the ids of the new sequence has been seen yet
+      Arrays.fill(bits, 0);
+      highWaterMark = updateId;
+    } else if (updateId > highWaterMark) {
+      advanceTo(updateId);
+    } else if (isBelow(updateId)) {
+      return;
+    }
+
+    bits[wordOf(updateId)] |= maskOf(updateId);
+  }
+
+  private void advanceTo(long newHighWaterMark) {
+    if (newHighWaterMark - highWaterMark >= size) {
+      Arrays.fill(bits, 0);
+    } else {
+      for (long id = highWaterMark + 1; id <= newHighWaterMark; id++) {
+        bits[wordOf(id)] &= ~maskOf(id);
+      }
+    }
+    highWaterMark = newHighWaterMark;
+  }
+
+  static UpdateIdWindow read(FileChannel channel, int size) throws IOException {
+    UpdateIdWindow window = new UpdateIdWindow(size);
+    ByteBuffer buffer = ByteBuffer.allocate(window.byteSize());
+    int read = Math.max(0, channel.read(buffer, 0));
+    if (read < Long.BYTES) {
+      return window;
+    }
+
+    buffer.flip();
+    window.highWaterMark = buffer.getLong();
+    if (read != window.byteSize() || channel.size() != window.byteSize()) {
+      // written with another window size, so nothing below the mark can be trusted to be new
+      Arrays.fill(window.bits, -1L);
+      return window;
+    }
+
+    buffer.asLongBuffer().get(window.bits);
+    return window;
+  }
+
+  void write(FileChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(byteSize());
+    buffer.putLong(highWaterMark);
+    buffer.asLongBuffer().put(bits);
+    buffer.rewind();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, buffer.position());
+    }
+    channel.truncate(byteSize());
+  }
+
+  private int byteSize() {
+    return Long.BYTES * (1 + bits.length);
+  }
+
+  private int wordOf(long updateId) {
+    return (int) (Math.floorMod(updateId, size) / Long.SIZE);
+  }
+
+  private static long maskOf(long updateId) {
+    return 1L << Math.floorMod(updateId, Long.SIZE);
+  }
+
+}
@@ -18,18 +18,25 @@ import org.telegram.telegrambots.meta.api.objects.Update;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Log4j2
 public class CommandDispatcher {
 
+  private static final int MAX_MEMOIZED_USERS = 1024;
+
   private final Map<String, BotCommand<?>> registeredCommand = new LinkedHashMap<>();
 
   private final BotCommunicator botCommunicator;
 
   private final Authorizer authorizer;
 
+  private volatile SupportedCommands supportedCommands = new SupportedCommands(
+      Long.MIN_VALUE, new ConcurrentHashMap<>());
+
   public CommandDispatcher(BotCommunicator botCommunicator, Authorizer authorizer) {
     this.botCommunicator = botCommunicator;
     this.authorizer = authorizer;
@@ -38,6 +45,7 @@ public class CommandDispatcher {
 
   public void registerCommand(String name, BotCommand<?> command) {
     registeredCommand.put(name, command);
+    supportedCommands = new SupportedCommands(Long.MIN_VALUE, new ConcurrentHashMap<>());
   }
 
   public void handle(Update updateEvent) {
@@ -113,8 +121,34 @@ public class CommandDispatcher {
     botCommunicator.sendMessageToTheBot("${common.command.not-supported.error}" + getSupportedCommands(), command);
   }
 
+  // The list only depends on the user's permissions, so it is kept until they change
   public String getSupportedCommands() {
     String username = TgRequestContext.getUsername();
+    OptionalLong permissionsVersion = authorizer.getPermissionsVersion();
+    if (permissionsVersion.isEmpty() || username == null) {
+      return listSupportedCommands(username);
+    }
+
+    SupportedCommands commands = supportedCommands;
+    if (commands.permissionsVersion() != permissionsVersion.getAsLong()) {
+      commands = new SupportedCommands(permissionsVersion.getAsLong(), new ConcurrentHashMap<>());
+      supportedCommands = commands;
+    }
+
+    String cached = commands.byUsername().get(username);
+    if (cached != null) {
+      return cached;
+    }
+
+    String listed = listSupportedCommands(username);
+    // any Telegram user can write to the bot, so the unknown ones must not grow it unbounded
+    if (commands.byUsername().size() < MAX_MEMOIZED_USERS) {
+      commands.byUsername().put(username, listed);
+    }
+    return listed;
+  }
+
+  private String listSupportedCommands(String username) {
     return registeredCommand.entrySet()
         .stream()
         .filter(command -> isAuthorizedToUseCommand(command.getValue(), username))
@@ -127,4 +161,8 @@ public class CommandDispatcher {
         .stream()
         .allMatch(permission -> authorizer.hasPermission(username, permission));
   }
+
+  private record SupportedCommands(long permissionsVersion, Map<String, String> byUsername) {
+
+  }
 }
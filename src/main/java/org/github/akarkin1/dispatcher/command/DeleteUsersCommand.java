@@ -8,9 +8,10 @@ import org.github.akarkin1.dispatcher.response.EmptyResponse;
 import org.github.akarkin1.message.MessageConsumer;
 import org.github.akarkin1.util.UserNameUtil;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Predicate;
 
 @RequiredArgsConstructor
 public class DeleteUsersCommand implements BotCommand<EmptyResponse> {
@@ -30,12 +31,15 @@ public class DeleteUsersCommand implements BotCommand<EmptyResponse> {
       return EmptyResponse.NONE;
     }
 
-    Map<String, List<Permission>> userPermissions = permissionsService.getUserPermissions();
+    // only the users to delete are looked up
+    Map<String, List<Permission>> userPermissions = new HashMap<>();
+    usersNames.forEach(userName -> userPermissions.put(
+        userName, permissionsService.getUserPermissions(userName)));
     List<String> notFoundUsers = usersNames.stream()
-        .filter(Predicate.not(userPermissions::containsKey))
+        .filter(userName -> userPermissions.get(userName).isEmpty())
         .toList();
 
-    boolean atLeastOneDeleted = false;
+    List<String> usersToDelete = new ArrayList<>();
     for (String userName : usersNames) {
       if (notFoundUsers.contains(userName)) {
         messageConsumer.accept("${command.delete-users.user-not-found.error} %s.".formatted(userName));
@@ -48,13 +52,18 @@ public class DeleteUsersCommand implements BotCommand<EmptyResponse> {
         continue;
       }
 
-      permissionsService.deleteUser(userName);
-      messageConsumer.accept("${command.delete-users.user-is-deleted.message}", userName);
-      atLeastOneDeleted = true;
+      usersToDelete.add(userName);
     }
 
-    if (!atLeastOneDeleted) {
+    if (usersToDelete.isEmpty()) {
       messageConsumer.accept("${command.delete-users.no-user-to-delete.message}");
+      return EmptyResponse.NONE;
+    }
+
+    // a single update of the permissions for all the users
+    permissionsService.deleteUsers(usersToDelete);
+    for (String userName : usersToDelete) {
+      messageConsumer.accept("${command.delete-users.user-is-deleted.message}", userName);
     }
 
     return EmptyResponse.NONE;
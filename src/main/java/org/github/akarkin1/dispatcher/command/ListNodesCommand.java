@@ -5,6 +5,7 @@ import org.github.akarkin1.auth.Authorizer;
 import org.github.akarkin1.auth.Permission;
 import org.github.akarkin1.dispatcher.response.TextCommandResponse;
 import org.github.akarkin1.ecs.TaskInfo;
+import org.github.akarkin1.ecs.TaskInventory;
 import org.github.akarkin1.tailscale.TailscaleNodeService;
 import org.github.akarkin1.tg.TgRequestContext;
 
@@ -29,13 +30,16 @@ public final class ListNodesCommand implements BotCommand<TextCommandResponse> {
       username = null;
     }
 
-    List<TaskInfo> taskInfos = tailscaleNodeService.listTasks(username);
+    TaskInventory inventory = tailscaleNodeService.listTasks(username);
+    List<TaskInfo> taskInfos = inventory.tasks();
 
+    StringBuilder responseBuilder = new StringBuilder();
     if (taskInfos.isEmpty()) {
-      return new TextCommandResponse("${command.list-nodes.no-nodes-run.message}");
+      responseBuilder.append("${command.list-nodes.no-nodes-run.message}");
+      appendSkippedRegions(inventory, responseBuilder);
+      return new TextCommandResponse(responseBuilder.toString());
     }
 
-    StringBuilder responseBuilder = new StringBuilder();
     responseBuilder.append("${command.list-nodes.running-nodes.message}: ").append("\n");
 
     taskInfos.forEach(taskInfo ->
@@ -43,10 +47,20 @@ public final class ListNodesCommand implements BotCommand<TextCommandResponse> {
                               .append("\t\t${common.node.status.message}: %s%n".formatted(taskInfo.getState()))
                               .append("\t\t${common.node.public-ip.message}: %s%n".formatted(taskInfo.getPublicIp()))
                               .append("\t\t${common.node.region.message}: %s (%s)%n".formatted(taskInfo.getLocation(), taskInfo.getRegion())));
+    appendSkippedRegions(inventory, responseBuilder);
 
     return new TextCommandResponse(responseBuilder.toString());
   }
 
+  private static void appendSkippedRegions(TaskInventory inventory, StringBuilder responseBuilder) {
+    if (inventory.isComplete()) {
+      return;
+    }
+
+    responseBuilder.append("\n${command.list-nodes.skipped-regions.warning}: ")
+        .append(inventory.skippedRegions());
+  }
+
   @Override
   public String getDescription() {
     return "${command.list-nodes.description.message}";
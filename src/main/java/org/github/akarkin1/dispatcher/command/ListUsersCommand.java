@@ -3,7 +3,9 @@ package org.github.akarkin1.dispatcher.command;
 import lombok.RequiredArgsConstructor;
 import org.github.akarkin1.auth.Permission;
 import org.github.akarkin1.auth.UserPermissionsProvider;
+import org.github.akarkin1.auth.UsersPage;
 import org.github.akarkin1.dispatcher.response.TextCommandResponse;
+import org.github.akarkin1.util.UserNameUtil;
 
 import java.util.List;
 import java.util.Map;
@@ -11,12 +13,16 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class ListUsersCommand implements BotCommand<TextCommandResponse> {
 
+  private static final int PAGE_SIZE = 50;
+
   private final UserPermissionsProvider userPermissionsProvider;
 
   @Override
   public TextCommandResponse run(List<String> args) {
-
-    Map<String, List<Permission>> userPermissions = userPermissionsProvider.getUserPermissions();
+    // the users are paged, the next page starts after the username given
+    String startAfter = args.isEmpty() ? null : UserNameUtil.normalizeUserName(args.getFirst());
+    UsersPage page = userPermissionsProvider.listUsers(startAfter, PAGE_SIZE);
+    Map<String, List<Permission>> userPermissions = page.users();
 
     if (userPermissions.isEmpty()) {
       return new TextCommandResponse("${command.list-users.no-users-registered.message}");
@@ -26,6 +32,10 @@ public class ListUsersCommand implements BotCommand<TextCommandResponse> {
     responseBuilder.append("${command.list-users.list-of-registered-users.message}\n");
     userPermissions.forEach((userName, permissions) -> responseBuilder
         .append("\t - %s (${command.list-users.user-permissions.message} %s)\n".formatted(userName, permissions)));
+    if (page.nextStartAfter() != null) {
+      responseBuilder.append("${command.list-users.next-page.message} /listRegisteredUsers %s\n"
+                                 .formatted(page.nextStartAfter()));
+    }
 
     return new TextCommandResponse(responseBuilder.toString());
   }
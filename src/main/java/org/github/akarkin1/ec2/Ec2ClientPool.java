@@ -2,18 +2,21 @@ package org.github.akarkin1.ec2;
 
 import software.amazon.awssdk.services.ec2.Ec2Client;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Ec2ClientPool implements Ec2ClientProvider {
   private final Ec2ClientProvider delegate;
-  private final Map<String, Ec2Client> pool = new HashMap<>();
+  private final Map<String, Ec2Client> pool = new ConcurrentHashMap<>();
+
+  Ec2ClientPool(Ec2ClientProvider delegate) {
+    this.delegate = delegate;
+  }
 
   public Ec2ClientPool() {
     this.delegate = new SimpleEc2ClientProvider();
   }
 
-
   @Override
   public Ec2Client getForRegion(String regionName) {
     return pool.computeIfAbsent(regionName, delegate::getForRegion);
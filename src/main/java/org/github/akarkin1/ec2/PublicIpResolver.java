@@ -0,0 +1,102 @@
+package org.github.akarkin1.ec2;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeNetworkInterfacesRequest;
+import software.amazon.awssdk.services.ec2.model.Filter;
+import software.amazon.awssdk.services.ec2.model.NetworkInterface;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+// A Fargate task keeps its ENI (and the public IP assigned to it) for its whole lifetime,
+// and ENI ids are never reused, so a resolved IP is never outdated. It is still evicted after
+// the TTL: the ENIs of stopped tasks are never asked for again and would pile up otherwise.
+@Log4j2
+@RequiredArgsConstructor
+public class PublicIpResolver {
+
+  private static final String NETWORK_INTERFACE_ID_FILTER = "network-interface-id";
+  private static final int MAX_FILTER_VALUES = 200;
+
+  private final Ec2ClientPool ec2ClientPool;
+  private final long cacheTtlMs;
+  private final LongSupplier clock;
+  private final Map<String, CachedPublicIp> publicIpByNetworkInterface = new ConcurrentHashMap<>();
+
+  public PublicIpResolver(Ec2ClientPool ec2ClientPool, long cacheTtlMs) {
+    this(ec2ClientPool, cacheTtlMs, System::currentTimeMillis);
+  }
+
+  public Map<String, String> resolvePublicIps(String regionName,
+                                              Collection<String> networkInterfaceIds) {
+    Map<String, String> resolvedIps = new HashMap<>();
+    long now = clock.getAsLong();
+    evictExpired(now);
+
+    List<String> unresolvedIds = networkInterfaceIds.stream()
+        .distinct()
+        .filter(Predicate.not(id -> putIfCached(id, resolvedIps)))
+        .toList();
+    if (unresolvedIds.isEmpty()) {
+      return resolvedIps;
+    }
+
+    log.debug("Resolving public IPs of {} network interfaces in {}", unresolvedIds.size(),
+              regionName);
+    Ec2Client ec2Client = ec2ClientPool.getForRegion(regionName);
+    for (int from = 0; from < unresolvedIds.size(); from += MAX_FILTER_VALUES) {
+      List<String> chunk = unresolvedIds.subList(
+          from, Math.min(from + MAX_FILTER_VALUES, unresolvedIds.size()));
+      DescribeNetworkInterfacesRequest request = DescribeNetworkInterfacesRequest.builder()
+          .filters(Filter.builder()
+                       .name(NETWORK_INTERFACE_ID_FILTER)
+                       .values(chunk)
+                       .build())
+          .build();
+
+      for (NetworkInterface networkInterface : ec2Client
+          .describeNetworkInterfacesPaginator(request)
+          .networkInterfaces()) {
+        if (networkInterface.association() == null
+            || networkInterface.association().publicIp() == null) {
+          // the IP is not assigned yet, it will be resolved next time
+          continue;
+        }
+
+        String publicIp = networkInterface.association().publicIp();
+        publicIpByNetworkInterface.put(networkInterface.networkInterfaceId(),
+                                       new CachedPublicIp(publicIp, now));
+        resolvedIps.put(networkInterface.networkInterfaceId(), publicIp);
+      }
+    }
+
+    return resolvedIps;
+  }
+
+  private boolean putIfCached(String networkInterfaceId, Map<String, String> resolvedIps) {
+    CachedPublicIp cached = publicIpByNetworkInterface.get(networkInterfaceId);
+    if (cached == null) {
+      return false;
+    }
+
+    resolvedIps.put(networkInterfaceId, cached.publicIp());
+    return true;
+  }
+
+  private void evictExpired(long now) {
+    publicIpByNetworkInterface.values()
+        .removeIf(cached -> now - cached.resolvedAt() > cacheTtlMs);
+  }
+
+  private record CachedPublicIp(String publicIp, long resolvedAt) {
+
+  }
+
+}
@@ -0,0 +1,195 @@
+package org.github.akarkin1.ecs;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsConfiguration;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Keeps the nodes of the service per region. A region older than the TTL is still served while it
+// is reloaded in the background, a region older than the max staleness is reloaded in place.
+// Nodes started by the bot invalidate their region right away, the ones stopped on idle
+// disappear from the cache within the TTL. Nodes started by another Lambda instance are not seen
+// until then, so the hostname checks bypass the cache with collectFreshInventory.
+@Log4j2
+@RequiredArgsConstructor
+public class CachingEcsManager implements EcsManager {
+
+  private final EcsManager delegate;
+  private final RegionalInventoryEngine inventoryEngine;
+  private final EcsConfiguration config;
+  private final long ttlMs;
+  private final long maxStaleMs;
+  private final ExecutorService refreshExecutor;
+  private final LongSupplier clock;
+
+  private final Map<Region, CachedRegion> cachedRegions = new ConcurrentHashMap<>();
+  private final Set<Region> refreshingRegions = ConcurrentHashMap.newKeySet();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong staleHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public CachingEcsManager(EcsManager delegate,
+                           RegionalInventoryEngine inventoryEngine,
+                           EcsConfiguration config,
+                           long ttlMs,
+                           long maxStaleMs) {
+    this(delegate, inventoryEngine, config, ttlMs, maxStaleMs,
+         Executors.newVirtualThreadPerTaskExecutor(), System::currentTimeMillis);
+  }
+
+  @Override
+  public TaskInfo startTask(Region region, String hostName, Map<String, String> tags) {
+    TaskInfo taskInfo = delegate.startTask(region, hostName, tags);
+    // a marker rather than a removal, so that a load, which began before the start,
+    // does not put the region back without the new task
+    cachedRegions.put(region, CachedRegion.invalidated());
+    return taskInfo;
+  }
+
+  @Override
+  public RunTaskStatus checkTaskHealth(Region region, String clusterName, String taskId) {
+    return delegate.checkTaskHealth(region, clusterName, taskId);
+  }
+
+  @Override
+  public TaskInventory collectInventory(Map<String, String> matchingTags) {
+    if (!config.getServiceName().equals(matchingTags.get(config.getServiceNameTag()))) {
+      return delegate.collectInventory(matchingTags);
+    }
+
+    TaskInventory inventory = inventoryEngine.collect(getSortedRegions(), this::getServiceTasks);
+    log.debug("Node inventory cache stats: {}", getStats());
+    return inventory.narrow(matchingTags);
+  }
+
+  @Override
+  public TaskInventory collectFreshInventory(Map<String, String> matchingTags) {
+    if (!config.getServiceName().equals(matchingTags.get(config.getServiceNameTag()))) {
+      return delegate.collectFreshInventory(matchingTags);
+    }
+
+    TaskInventory inventory = inventoryEngine.collect(getSortedRegions(), this::loadServiceTasks);
+    return inventory.narrow(matchingTags);
+  }
+
+  @Override
+  public List<TaskInfo> listTasks(Region region, Map<String, String> matchingTags) {
+    if (!config.getServiceName().equals(matchingTags.get(config.getServiceNameTag()))) {
+      return delegate.listTasks(region, matchingTags);
+    }
+
+    return getServiceTasks(region)
+        .stream()
+        .filter(task -> task.matchesTags(matchingTags))
+        .toList();
+  }
+
+  @Override
+  public Set<String> getSupportedRegions() {
+    return delegate.getSupportedRegions();
+  }
+
+  @Override
+  public Optional<TaskInfo> getFullTaskInfo(Region region, String clusterName, String taskId) {
+    return delegate.getFullTaskInfo(region, clusterName, taskId);
+  }
+
+  public Stats getStats() {
+    return new Stats(hits.get(), staleHits.get(), misses.get());
+  }
+
+  private List<Region> getSortedRegions() {
+    return delegate.getSupportedRegions()
+        .stream()
+        .map(Region::of)
+        .sorted(Comparator.comparing(Region::id))
+        .toList();
+  }
+
+  private List<TaskInfo> getServiceTasks(Region region) {
+    CachedRegion cached = cachedRegions.get(region);
+    long age = cached == null || cached.isInvalidated()
+        ? Long.MAX_VALUE
+        : clock.getAsLong() - cached.loadedAt();
+
+    if (age < ttlMs) {
+      hits.incrementAndGet();
+      return cached.tasks();
+    }
+
+    if (age < maxStaleMs) {
+      staleHits.incrementAndGet();
+      refreshInBackground(region, cached);
+      return cached.tasks();
+    }
+
+    misses.incrementAndGet();
+    return loadServiceTasks(region);
+  }
+
+  private List<TaskInfo> loadServiceTasks(Region region) {
+    CachedRegion cached = cachedRegions.get(region);
+    CachedRegion loaded = load(region);
+    storeIfUnchanged(region, cached, loaded);
+    return loaded.tasks();
+  }
+
+  private void refreshInBackground(Region region, CachedRegion stale) {
+    if (!refreshingRegions.add(region)) {
+      return;
+    }
+
+    refreshExecutor.execute(() -> {
+      try {
+        storeIfUnchanged(region, stale, load(region));
+      } catch (Exception e) {
+        log.warn("Failed to refresh nodes of region {}, serving the stale ones", region, e);
+      } finally {
+        refreshingRegions.remove(region);
+      }
+    });
+  }
+
+  // a region invalidated or reloaded in the meantime is not overwritten with possibly outdated
+  // tasks; the entries are compared by identity, since two loads may have equal components
+  private void storeIfUnchanged(Region region, CachedRegion expected, CachedRegion loaded) {
+    cachedRegions.compute(region, (key, current) -> current == expected ? loaded : current);
+  }
+
+  private CachedRegion load(Region region) {
+    long loadedAt = clock.getAsLong();
+    List<TaskInfo> tasks = delegate.listTasks(region, Map.of(config.getServiceNameTag(),
+                                                             config.getServiceName()));
+    return new CachedRegion(tasks, loadedAt);
+  }
+
+  public record Stats(long hits, long staleHits, long misses) {
+
+  }
+
+  private record CachedRegion(List<TaskInfo> tasks, long loadedAt) {
+
+    private static final long INVALIDATED_AT = Long.MIN_VALUE;
+
+    static CachedRegion invalidated() {
+      return new CachedRegion(List.of(), INVALIDATED_AT);
+    }
+
+    boolean isInvalidated() {
+      return loadedAt == INVALIDATED_AT;
+    }
+
+  }
+
+}
@@ -0,0 +1,24 @@
+package org.github.akarkin1.ecs;
+
+import lombok.RequiredArgsConstructor;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class ClusterScanTaskDiscovery implements TaskDiscovery {
+
+  private final EcsClientProvider ecsClientProvider;
+
+  @Override
+  public Iterator<List<Task>> discoverTasks(Region region,
+                                            String clusterName,
+                                            String taskDefinition,
+                                            Map<String, String> matchingTags) {
+    return new ClusterTaskIterator(ecsClientProvider.get(region), clusterName);
+  }
+
+}
@@ -0,0 +1,76 @@
+package org.github.akarkin1.ecs;
+
+import lombok.extern.log4j.Log4j2;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.DescribeTasksRequest;
+import software.amazon.awssdk.services.ecs.model.DescribeTasksResponse;
+import software.amazon.awssdk.services.ecs.model.ListTasksRequest;
+import software.amazon.awssdk.services.ecs.model.Task;
+import software.amazon.awssdk.services.ecs.model.TaskField;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Pages through ListTasks lazily and describes every page as soon as it arrives, so at most one
+// page of tasks (DescribeTasks accepts no more than 100 of them) is held in memory at a time.
+@Log4j2
+public class ClusterTaskIterator implements Iterator<List<Task>> {
+
+  static final int MAX_DESCRIBED_TASKS = 100;
+
+  private final EcsClient client;
+  private final String clusterName;
+  private final Iterator<String> taskArns;
+
+  public ClusterTaskIterator(EcsClient client, String clusterName) {
+    this(client, clusterName, null, null);
+  }
+
+  // startedBy and family are the ListTasks filters, null for none
+  public ClusterTaskIterator(EcsClient client, String clusterName, String startedBy,
+                             String family) {
+    this.client = client;
+    this.clusterName = clusterName;
+    ListTasksRequest listTasksRequest = ListTasksRequest.builder()
+        .cluster(clusterName)
+        .startedBy(startedBy)
+        .family(family)
+        .maxResults(MAX_DESCRIBED_TASKS)
+        .build();
+    this.taskArns = client.listTasksPaginator(listTasksRequest).taskArns().iterator();
+  }
+
+  @Override
+  public boolean hasNext() {
+    return taskArns.hasNext();
+  }
+
+  @Override
+  public List<Task> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException("No more tasks in the cluster %s".formatted(clusterName));
+    }
+
+    List<String> chunk = new ArrayList<>(MAX_DESCRIBED_TASKS);
+    while (chunk.size() < MAX_DESCRIBED_TASKS && taskArns.hasNext()) {
+      chunk.add(taskArns.next());
+    }
+
+    DescribeTasksRequest describeTasksRequest = DescribeTasksRequest.builder()
+        .cluster(clusterName)
+        .tasks(chunk)
+        .include(TaskField.TAGS)
+        .build();
+    DescribeTasksResponse resp = client.describeTasks(describeTasksRequest);
+    if (resp.hasFailures() && !resp.failures().isEmpty()) {
+      // tasks stopped in between ListTasks and DescribeTasks calls end up here
+      log.debug("Some tasks of the cluster {} could not be described: {}", clusterName,
+                resp.failures());
+    }
+
+    return resp.tasks();
+  }
+
+}
@@ -15,7 +15,19 @@ public interface EcsManager {
 
   RunTaskStatus checkTaskHealth(Region region, String clusterName, String taskId);
 
-  List<TaskInfo> listTasks(Map<String, String> matchingTags);
+  TaskInventory collectInventory(Map<String, String> matchingTags);
+
+  // unlike collectInventory, never served from a cache shared between requests:
+  // the hostname checks have to see the nodes started by other Lambda instances
+  default TaskInventory collectFreshInventory(Map<String, String> matchingTags) {
+    return collectInventory(matchingTags);
+  }
+
+  default List<TaskInfo> listTasks(Map<String, String> matchingTags) {
+    return collectInventory(matchingTags).tasks();
+  }
+
+  List<TaskInfo> listTasks(Region region, Map<String, String> matchingTags);
 
   Set<String> getSupportedRegions();
 
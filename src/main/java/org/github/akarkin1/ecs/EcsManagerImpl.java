@@ -1,19 +1,14 @@
 package org.github.akarkin1.ecs;
 
 import lombok.RequiredArgsConstructor;
-import lombok.SneakyThrows;
 import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
 import org.github.akarkin1.config.TaskConfigService;
 import org.github.akarkin1.config.TaskRuntimeParameters;
 import org.github.akarkin1.config.YamlApplicationConfiguration.EcsConfiguration;
-import org.github.akarkin1.config.YamlApplicationConfiguration.EcsContainerHealth;
-import org.github.akarkin1.ec2.Ec2ClientPool;
+import org.github.akarkin1.ec2.PublicIpResolver;
+import org.github.akarkin1.readiness.NodeReadinessRegistry;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.ec2.Ec2Client;
-import software.amazon.awssdk.services.ec2.model.DescribeNetworkInterfacesRequest;
-import software.amazon.awssdk.services.ec2.model.DescribeNetworkInterfacesResponse;
-import software.amazon.awssdk.services.ec2.model.NetworkInterface;
-import software.amazon.awssdk.services.ec2.model.NetworkInterfaceAssociation;
 import software.amazon.awssdk.services.ecs.EcsClient;
 import software.amazon.awssdk.services.ecs.model.AssignPublicIp;
 import software.amazon.awssdk.services.ecs.model.Attachment;
@@ -21,11 +16,8 @@ import software.amazon.awssdk.services.ecs.model.AwsVpcConfiguration;
 import software.amazon.awssdk.services.ecs.model.ContainerOverride;
 import software.amazon.awssdk.services.ecs.model.DescribeTasksRequest;
 import software.amazon.awssdk.services.ecs.model.DescribeTasksResponse;
-import software.amazon.awssdk.services.ecs.model.HealthStatus;
 import software.amazon.awssdk.services.ecs.model.KeyValuePair;
 import software.amazon.awssdk.services.ecs.model.LaunchType;
-import software.amazon.awssdk.services.ecs.model.ListTasksRequest;
-import software.amazon.awssdk.services.ecs.model.ListTasksResponse;
 import software.amazon.awssdk.services.ecs.model.NetworkConfiguration;
 import software.amazon.awssdk.services.ecs.model.RunTaskRequest;
 import software.amazon.awssdk.services.ecs.model.RunTaskResponse;
@@ -35,11 +27,12 @@ import software.amazon.awssdk.services.ecs.model.TaskField;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Log4j2
@@ -49,12 +42,21 @@ public class EcsManagerImpl implements EcsManager {
   private static final String CONTAINER_NAME = "vpn-container";
   private static final String ELASTIC_NETWORK_INTERFACE_FIELD = "ElasticNetworkInterface";
   private static final String NETWORK_INTERFACE_ID = "networkInterfaceId";
+  private static final String NODE_READY_URL_ENV = "NODE_READY_URL";
+  private static final String NODE_READY_TOKEN_ENV = "NODE_READY_TOKEN";
 
   private final TaskConfigService taskConfigService;
   private final EcsClientPool ecsClientPool;
-  private final Ec2ClientPool ec2ClientPool;
+  private final PublicIpResolver publicIpResolver;
   private final EcsConfiguration config;
   private final Map<String, String> regionToCitiesMap;
+  private final RegionalInventoryEngine inventoryEngine;
+  private final TaskDiscovery taskDiscovery;
+  private final StartedByMarker startedByMarker;
+  private final TaskHealthWatcher taskHealthWatcher;
+  private final NodeReadinessRegistry readinessRegistry;
+  private final String readinessCallbackUrl;
+  private final Map<String, String> readinessTokenByTaskId = new ConcurrentHashMap<>();
 
   @Override
   public TaskInfo startTask(Region region, String hostName, Map<String, String> tags) {
@@ -68,13 +70,23 @@ public class EcsManagerImpl implements EcsManager {
         .awsvpcConfiguration(awsVpcConfig)
         .build();
 
+    List<KeyValuePair> environment = new ArrayList<>();
+    environment.add(env(config.getHostNameEnv(), hostName));
+    String readinessToken = issueReadinessToken();
+    if (readinessToken != null) {
+      // visible to ecs:DescribeTasks, see FSNodeReadinessRegistry for why it is acceptable
+      environment.add(env(NODE_READY_URL_ENV, readinessCallbackUrl));
+      environment.add(env(NODE_READY_TOKEN_ENV, readinessToken));
+    }
+
     ContainerOverride containerOverride = ContainerOverride.builder()
         .name(CONTAINER_NAME)
-        .environment(env(config.getHostNameEnv(), hostName))
+        .environment(environment)
         .build();
 
     RunTaskRequest runTaskRequest = RunTaskRequest.builder()
         .tags(toEcsTags(tags))
+        .startedBy(startedByMarker.of(tags).orElse(null))
         .cluster(taskParams.getEcsClusterName())
         .taskDefinition(taskParams.getEcsTaskDefinition())
         .count(1)
@@ -91,62 +103,38 @@ public class EcsManagerImpl implements EcsManager {
     }
 
     Task task = resp.tasks().getFirst();
+    String taskId = taskIdFromArn(task.taskArn());
+    if (readinessToken != null) {
+      readinessTokenByTaskId.put(taskId, readinessToken);
+    }
 
     return TaskInfo.builder()
-        .id(taskIdFromArn(task.taskArn()))
+        .id(taskId)
         .cluster(taskParams.getEcsClusterName())
         .region(region)
         .build();
   }
 
-  @Override
-  @SneakyThrows(InterruptedException.class)
-  public RunTaskStatus checkTaskHealth(Region region, String clusterName, String taskId) {
-    EcsContainerHealth health = config.getHealth();
-
-    DescribeTasksRequest describeTasksRequest = DescribeTasksRequest.builder()
-        .cluster(clusterName)
-        .tasks(taskId)
-        .build();
-    EcsClient client = ecsClientPool.get(region);
-    long startedAt = System.currentTimeMillis();
-    RunTaskStatus lastStatus = RunTaskStatus.UNKNOWN;
-
-    for (; ; ) {
-      long timePassed = System.currentTimeMillis() - startedAt;
-
-      if (timePassed >= TimeUnit.SECONDS.toMillis(health.getTimeoutSec())) {
-        return lastStatus;
-      }
-
-      DescribeTasksResponse resp = client.describeTasks(describeTasksRequest);
-      List<Task> runningTasks = resp.tasks();
-      if (!resp.hasTasks() || runningTasks.isEmpty()) {
-        log.warn("No tasks found. Retrying...");
-        TimeUnit.MILLISECONDS.sleep(health.getIntervalMs());
-        continue;
-      }
-      if (resp.hasFailures() && !resp.failures().isEmpty()) {
-        log.error("Failed to get list of tasks. Failures: ");
-        resp.failures().forEach(log::error);
-        return RunTaskStatus.UNHEALTHY;
-      }
-
-      Task task = runningTasks.getFirst();
-      if (!HealthStatus.HEALTHY.equals(task.healthStatus())) {
-        TimeUnit.MILLISECONDS.sleep(health.getIntervalMs());
-        continue;
-      }
+  // without a token the node does not call back, and its health is polled on ECS instead
+  private String issueReadinessToken() {
+    if (StringUtils.isBlank(readinessCallbackUrl) || !readinessRegistry.isEnabled()) {
+      return null;
+    }
 
-      lastStatus = getContainerHealthStatus(task);
-      if (RunTaskStatus.HEALTHY.equals(lastStatus)) {
-        return RunTaskStatus.HEALTHY;
-      } else {
-        TimeUnit.MILLISECONDS.sleep(health.getIntervalMs());
-      }
+    try {
+      return readinessRegistry.issueToken();
+    } catch (RuntimeException e) {
+      log.warn("Failed to issue a node readiness token, falling back to ECS health polling", e);
+      return null;
     }
   }
 
+  @Override
+  public RunTaskStatus checkTaskHealth(Region region, String clusterName, String taskId) {
+    String readinessToken = readinessTokenByTaskId.remove(taskId);
+    return taskHealthWatcher.watch(region, clusterName, taskId, readinessToken).join();
+  }
+
   private RunTaskStatus getContainerHealthStatus(Task task) {
     return task.containers()
         .stream()
@@ -167,6 +155,11 @@ public class EcsManagerImpl implements EcsManager {
         .toList();
   }
 
+  private static Map<String, String> toTagMap(List<Tag> tags) {
+    return tags.stream()
+        .collect(Collectors.toMap(Tag::key, Tag::value, (first, second) -> first));
+  }
+
   private static KeyValuePair env(String name, String value) {
     return KeyValuePair.builder()
         .name(name)
@@ -175,72 +168,91 @@ public class EcsManagerImpl implements EcsManager {
   }
 
   @Override
-  public List<TaskInfo> listTasks(Map<String, String> matchingTags) {
+  public TaskInventory collectInventory(Map<String, String> matchingTags) {
+    return inventoryEngine.collect(taskConfigService.getSupportedRegions(),
+                                   region -> listTasks(region, matchingTags));
+  }
+
+  @Override
+  public List<TaskInfo> listTasks(Region region, Map<String, String> matchingTags) {
     List<TaskInfo> foundTasks = new ArrayList<>();
 
-    for (Region region : taskConfigService.getSupportedRegions()) {
-      TaskRuntimeParameters taskRuntimeParameters = taskConfigService.getTaskRuntimeParameters(
-          region);
-      String clusterName = taskRuntimeParameters.getEcsClusterName();
-      EcsClient client = ecsClientPool.get(region);
-      ListTasksRequest listTasksRequest = ListTasksRequest.builder()
-          .cluster(clusterName)
-          .build();
-      ListTasksResponse listTasksResponse = client.listTasks(listTasksRequest);
-      List<String> taskArns = listTasksResponse.taskArns();
-      if (taskArns.isEmpty()) {
-        continue;
+    TaskRuntimeParameters taskRuntimeParameters = taskConfigService.getTaskRuntimeParameters(
+        region);
+    String clusterName = taskRuntimeParameters.getEcsClusterName();
+    Iterator<List<Task>> taskChunks = taskDiscovery.discoverTasks(
+        region, clusterName, taskRuntimeParameters.getEcsTaskDefinition(), matchingTags);
+    while (taskChunks.hasNext()) {
+      foundTasks.addAll(toMatchingTaskInfos(region, clusterName, taskChunks.next(),
+                                            matchingTags));
+    }
+
+    return foundTasks;
+  }
+
+  private List<TaskInfo> toMatchingTaskInfos(Region region,
+                                             String clusterName,
+                                             List<Task> tasks,
+                                             Map<String, String> matchingTags) {
+    List<TaskInfo> foundTasks = new ArrayList<>();
+    List<Task> matchingTasks = new ArrayList<>();
+    for (Task task : tasks) {
+      log.debug("Task tags: {}, checking tags: {}", task.tags(), matchingTags);
+      boolean tagMissmatch = task.tags()
+          .stream()
+          .anyMatch(tag -> matchingTags.containsKey(tag.key())
+                           && !matchingTags.get(tag.key()).equals(tag.value()));
+
+      if (!tagMissmatch) {
+        matchingTasks.add(task);
       }
+    }
 
-      DescribeTasksRequest describeTasksRequest = DescribeTasksRequest.builder()
+    Map<String, String> publicIps = resolvePublicIps(region, matchingTasks);
+    for (Task task : matchingTasks) {
+      log.debug("Task attachments: {}", task.attachments());
+
+      String publicIp = getNetworkInterfaceId(task).map(publicIps::get).orElse(null);
+
+      log.debug("Task tags: {}, Hostname tag name: {}", task.tags(),
+                config.getHostNameTag());
+      String hostName = task.tags()
+          .stream()
+          .filter(tag -> config.getHostNameTag().equals(tag.key()))
+          .map(Tag::value)
+          .findFirst()
+          .orElse(null);
+
+      TaskInfo taskInfo = TaskInfo.builder()
+          .hostName(hostName)
+          .id(taskIdFromArn(task.taskArn()))
+          .state(getContainerHealthStatus(task).name())
           .cluster(clusterName)
-          .tasks(taskArns)
-          .include(TaskField.TAGS)
+          .region(region)
+          .location(regionToCitiesMap.get(region.id()))
+          .publicIp(publicIp)
+          .tags(toTagMap(task.tags()))
           .build();
 
-      DescribeTasksResponse describeTaskResp = client.describeTasks(describeTasksRequest);
-      for (Task task : describeTaskResp.tasks()) {
-        log.debug("Task tags: {}, checking tags: {}", task.tags(), matchingTags);
-        boolean tagMissmatch = task.tags()
-            .stream()
-            .anyMatch(tag -> matchingTags.containsKey(tag.key())
-                             && !matchingTags.get(tag.key()).equals(tag.value()));
-
-        if (tagMissmatch) {
-          continue;
-        }
-
-        log.debug("Task attachments: {}", task.attachments());
-
-        String publicIp = getTaskPublicIp(region, task);
-
-        log.debug("Task tags: {}, Hostname tag name: {}", task.tags(),
-                  config.getHostNameTag());
-        String hostName = task.tags()
-            .stream()
-            .filter(tag -> config.getHostNameTag().equals(tag.key()))
-            .map(Tag::value)
-            .findFirst()
-            .orElse(null);
-
-        TaskInfo taskInfo = TaskInfo.builder()
-            .hostName(hostName)
-            .id(taskIdFromArn(task.taskArn()))
-            .state(getContainerHealthStatus(task).name())
-            .cluster(clusterName)
-            .region(region)
-            .location(regionToCitiesMap.get(region.id()))
-            .publicIp(publicIp)
-            .build();
-
-        foundTasks.add(taskInfo);
-      }
+      foundTasks.add(taskInfo);
     }
 
     return foundTasks;
   }
 
-  private String getTaskPublicIp(Region region, Task task) {
+  private Map<String, String> resolvePublicIps(Region region, List<Task> tasks) {
+    List<String> networkInterfaceIds = tasks.stream()
+        .map(EcsManagerImpl::getNetworkInterfaceId)
+        .flatMap(Optional::stream)
+        .toList();
+    if (networkInterfaceIds.isEmpty()) {
+      return Map.of();
+    }
+
+    return publicIpResolver.resolvePublicIps(region.id(), networkInterfaceIds);
+  }
+
+  private static Optional<String> getNetworkInterfaceId(Task task) {
     return task.attachments()
         .stream()
         .filter(attachment -> ELASTIC_NETWORK_INTERFACE_FIELD.equals(attachment.type()))
@@ -248,22 +260,7 @@ public class EcsManagerImpl implements EcsManager {
         .flatMap(Collection::stream)
         .filter(detail -> NETWORK_INTERFACE_ID.equals(detail.name()))
         .map(KeyValuePair::value)
-        .findFirst()
-        .map(networkInterfaceId -> this.fetchPublicIp(region, networkInterfaceId))
-        .orElse(null);
-  }
-
-  private String fetchPublicIp(Region region, String networkInterfaceId) {
-    Ec2Client ec2Client = ec2ClientPool.getForRegion(region.id());
-    DescribeNetworkInterfacesRequest request = DescribeNetworkInterfacesRequest.builder()
-        .networkInterfaceIds(networkInterfaceId)
-        .build();
-    DescribeNetworkInterfacesResponse response = ec2Client.describeNetworkInterfaces(request);
-    return response.networkInterfaces().stream()
-        .map(NetworkInterface::association)
-        .map(NetworkInterfaceAssociation::publicIp)
-        .findFirst()
-        .orElse(null);
+        .findFirst();
   }
 
   private static String taskIdFromArn(String taskArn) {
@@ -293,7 +290,10 @@ public class EcsManagerImpl implements EcsManager {
 
     return describeTaskResp.tasks().stream()
         .map(task -> {
-          String publicIp = getTaskPublicIp(region, task);
+          String publicIp = resolvePublicIps(region, List.of(task)).values()
+              .stream()
+              .findFirst()
+              .orElse(null);
 
           String hostName = task.tags()
               .stream()
@@ -310,6 +310,7 @@ public class EcsManagerImpl implements EcsManager {
               .region(region)
               .location(regionToCitiesMap.get(region.id()))
               .publicIp(publicIp)
+              .tags(toTagMap(task.tags()))
               .build();
         })
         .findFirst();
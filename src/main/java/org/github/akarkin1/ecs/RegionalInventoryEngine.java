@@ -0,0 +1,71 @@
+package org.github.akarkin1.ecs;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.github.akarkin1.context.RequestSnapshot;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+// Queries all the regions at once, so the overall latency is bound by the slowest region
+// (but no more than the region timeout), rather than by the sum of all of them.
+@Log4j2
+@RequiredArgsConstructor
+public class RegionalInventoryEngine {
+
+  private final ExecutorService executor;
+  private final long regionTimeoutMs;
+
+  public RegionalInventoryEngine(long regionTimeoutMs) {
+    this(Executors.newVirtualThreadPerTaskExecutor(), regionTimeoutMs);
+  }
+
+  public TaskInventory collect(List<Region> regions,
+                               Function<Region, List<TaskInfo>> regionQuery) {
+    Map<Region, Future<List<TaskInfo>>> pendingRegions = new LinkedHashMap<>();
+    for (Region region : regions) {
+      // the region scans read the task config through the snapshot of the command
+      pendingRegions.put(region, executor.submit(
+          RequestSnapshot.propagate(() -> regionQuery.apply(region))));
+    }
+
+    long deadline = System.currentTimeMillis() + regionTimeoutMs;
+    List<TaskInfo> foundTasks = new ArrayList<>();
+    List<Region> skippedRegions = new ArrayList<>();
+
+    for (Entry<Region, Future<List<TaskInfo>>> pendingRegion : pendingRegions.entrySet()) {
+      Region region = pendingRegion.getKey();
+      Future<List<TaskInfo>> regionTasks = pendingRegion.getValue();
+      long remainingMs = Math.max(0, deadline - System.currentTimeMillis());
+      try {
+        foundTasks.addAll(regionTasks.get(remainingMs, TimeUnit.MILLISECONDS));
+      } catch (TimeoutException e) {
+        log.warn("Region {} has not responded within {} ms, skipping it", region,
+                 regionTimeoutMs);
+        regionTasks.cancel(true);
+        skippedRegions.add(region);
+      } catch (ExecutionException e) {
+        log.error("Failed to list tasks in region {}, skipping it", region, e.getCause());
+        skippedRegions.add(region);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        regionTasks.cancel(true);
+        skippedRegions.add(region);
+      }
+    }
+
+    return new TaskInventory(foundTasks, skippedRegions);
+  }
+
+}
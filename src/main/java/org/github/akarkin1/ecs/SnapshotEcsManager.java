@@ -0,0 +1,97 @@
+package org.github.akarkin1.ecs;
+
+import lombok.RequiredArgsConstructor;
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsConfiguration;
+import org.github.akarkin1.context.RequestSnapshot;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+// Within a request, a node inventory is fetched once and then narrowed down on the client side:
+// e.g. a hostname check and choosing a free hostname both look at the same scan of the service.
+@RequiredArgsConstructor
+public class SnapshotEcsManager implements EcsManager {
+
+  static final String INVENTORY_CATEGORY = "ecs-inventory";
+  // kept apart, so that a hostname check never reuses a scan served from the inventory cache
+  static final String FRESH_INVENTORY_CATEGORY = "ecs-fresh-inventory";
+
+  private final EcsManager delegate;
+  private final EcsConfiguration config;
+
+  @Override
+  public TaskInfo startTask(Region region, String hostName, Map<String, String> tags) {
+    RequestSnapshot.invalidate(INVENTORY_CATEGORY);
+    RequestSnapshot.invalidate(FRESH_INVENTORY_CATEGORY);
+    return delegate.startTask(region, hostName, tags);
+  }
+
+  @Override
+  public RunTaskStatus checkTaskHealth(Region region, String clusterName, String taskId) {
+    return delegate.checkTaskHealth(region, clusterName, taskId);
+  }
+
+  @Override
+  public TaskInventory collectInventory(Map<String, String> matchingTags) {
+    return collectSnapshot(INVENTORY_CATEGORY, matchingTags, delegate::collectInventory);
+  }
+
+  @Override
+  public TaskInventory collectFreshInventory(Map<String, String> matchingTags) {
+    return collectSnapshot(FRESH_INVENTORY_CATEGORY, matchingTags,
+                           delegate::collectFreshInventory);
+  }
+
+  @Override
+  public List<TaskInfo> listTasks(Region region, Map<String, String> matchingTags) {
+    return delegate.listTasks(region, matchingTags);
+  }
+
+  @Override
+  public Set<String> getSupportedRegions() {
+    return delegate.getSupportedRegions();
+  }
+
+  @Override
+  public Optional<TaskInfo> getFullTaskInfo(Region region, String clusterName, String taskId) {
+    return delegate.getFullTaskInfo(region, clusterName, taskId);
+  }
+
+  private TaskInventory collectSnapshot(String category,
+                                        Map<String, String> matchingTags,
+                                        Function<Map<String, String>, TaskInventory> collector) {
+    if (!RequestSnapshot.isOpen()) {
+      return collector.apply(matchingTags);
+    }
+
+    Map<Object, TaskInventory> snapshots = RequestSnapshot.getAll(category);
+    for (Entry<Object, TaskInventory> snapshot : snapshots.entrySet()) {
+      @SuppressWarnings("unchecked")
+      Map<String, String> snapshotTags = (Map<String, String>) snapshot.getKey();
+      if (matchingTags.entrySet().containsAll(snapshotTags.entrySet())) {
+        RequestSnapshot.countSavedCall(category);
+        return snapshot.getValue().narrow(matchingTags);
+      }
+    }
+
+    Map<String, String> snapshotTags = snapshotTags(matchingTags);
+    TaskInventory inventory = RequestSnapshot.computeIfAbsent(
+        category, snapshotTags, () -> collector.apply(snapshotTags));
+    return inventory.narrow(matchingTags);
+  }
+
+  // a hostname is the only tag, which is not worth a separate scan: a command, that checks it,
+  // usually needs all the hostnames of the service as well
+  private Map<String, String> snapshotTags(Map<String, String> matchingTags) {
+    Map<String, String> snapshotTags = new HashMap<>(matchingTags);
+    snapshotTags.remove(config.getHostNameTag());
+    return Map.copyOf(snapshotTags);
+  }
+
+}
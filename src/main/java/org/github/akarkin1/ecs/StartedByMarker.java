@@ -0,0 +1,30 @@
+package org.github.akarkin1.ecs;
+
+import lombok.RequiredArgsConstructor;
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsConfiguration;
+
+import java.util.Map;
+import java.util.Optional;
+
+// ListTasks can filter by "startedBy" on the server side, so the service name and the user, who
+// has run the task, are encoded there in addition to the tags.
+@RequiredArgsConstructor
+public class StartedByMarker {
+
+  private static final int MAX_STARTED_BY_LENGTH = 128;
+
+  private final EcsConfiguration config;
+
+  public Optional<String> of(Map<String, String> tags) {
+    String serviceName = tags.get(config.getServiceNameTag());
+    String runBy = tags.get(config.getRunByTag());
+    if (serviceName == null || runBy == null) {
+      return Optional.empty();
+    }
+
+    String marker = "%s/%s".formatted(serviceName, runBy)
+        .replaceAll("[^A-Za-z0-9_/-]", "_");
+    return Optional.of(marker.substring(0, Math.min(marker.length(), MAX_STARTED_BY_LENGTH)));
+  }
+
+}
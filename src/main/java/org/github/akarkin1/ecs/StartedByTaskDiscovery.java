@@ -0,0 +1,83 @@
+package org.github.akarkin1.ecs;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Narrows ListTasks down on the ECS side: to the tasks of a particular user with the "startedBy"
+// filter, and the other queries, e.g. the hostname checks, to the task definition family of the
+// service, so that the tasks of other task definitions sharing the cluster are not described.
+// Tasks started before the marker was introduced have no startedBy, so a user query falls back to
+// the family scan until a scan of the cluster has found none of them.
+@RequiredArgsConstructor
+public class StartedByTaskDiscovery implements TaskDiscovery {
+
+  private final EcsClientProvider ecsClientProvider;
+  private final StartedByMarker startedByMarker;
+  // new tasks are always marked, so once a cluster has no unmarked tasks it stays so
+  private final Set<String> markedClusters = ConcurrentHashMap.newKeySet();
+
+  @Override
+  public Iterator<List<Task>> discoverTasks(Region region,
+                                            String clusterName,
+                                            String taskDefinition,
+                                            Map<String, String> matchingTags) {
+    EcsClient client = ecsClientProvider.get(region);
+    String clusterKey = region.id() + "/" + clusterName;
+    Optional<String> startedBy = startedByMarker.of(matchingTags);
+    if (startedBy.isPresent() && markedClusters.contains(clusterKey)) {
+      return new ClusterTaskIterator(client, clusterName, startedBy.get(), null);
+    }
+
+    return new UnmarkedTaskTracker(
+        new ClusterTaskIterator(client, clusterName, null, taskFamilyOf(taskDefinition)),
+        () -> markedClusters.add(clusterKey));
+  }
+
+  // The task definition is either its ARN or family[:revision]
+  static String taskFamilyOf(String taskDefinition) {
+    if (taskDefinition == null) {
+      return null;
+    }
+
+    String familyAndRevision = taskDefinition.substring(taskDefinition.lastIndexOf('/') + 1);
+    int revisionStart = familyAndRevision.indexOf(':');
+    return revisionStart < 0 ? familyAndRevision : familyAndRevision.substring(0, revisionStart);
+  }
+
+  // Reports a scan, that has gone through all the tasks without meeting an unmarked one
+  @RequiredArgsConstructor
+  private static class UnmarkedTaskTracker implements Iterator<List<Task>> {
+
+    private final Iterator<List<Task>> taskChunks;
+    private final Runnable onAllMarked;
+    private boolean unmarkedTaskFound;
+
+    @Override
+    public boolean hasNext() {
+      boolean hasNext = taskChunks.hasNext();
+      if (!hasNext && !unmarkedTaskFound) {
+        onAllMarked.run();
+      }
+      return hasNext;
+    }
+
+    @Override
+    public List<Task> next() {
+      List<Task> tasks = taskChunks.next();
+      unmarkedTaskFound |= tasks.stream().anyMatch(task -> StringUtils.isBlank(task.startedBy()));
+      return tasks;
+    }
+
+  }
+
+}
@@ -0,0 +1,22 @@
+package org.github.akarkin1.ecs;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public interface TaskDiscovery {
+
+  /**
+   * Returns chunks of described tasks (including tags) of the cluster. Implementations may skip
+   * tasks not matching the tags, but they are not obliged to – the caller still filters them.
+   * The task definition is the one the service runs its tasks with in the cluster.
+   */
+  Iterator<List<Task>> discoverTasks(Region region,
+                                     String clusterName,
+                                     String taskDefinition,
+                                     Map<String, String> matchingTags);
+
+}
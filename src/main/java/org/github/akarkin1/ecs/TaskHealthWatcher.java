@@ -0,0 +1,341 @@
+package org.github.akarkin1.ecs;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsConfiguration;
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsContainerHealth;
+import org.github.akarkin1.context.InvocationDeadline;
+import org.github.akarkin1.readiness.NodeReadinessRegistry;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ecs.model.DescribeTasksRequest;
+import software.amazon.awssdk.services.ecs.model.DescribeTasksResponse;
+import software.amazon.awssdk.services.ecs.model.HealthStatus;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// All the tasks, which are being started in the same cluster at the same time, are checked with
+// a single DescribeTasks call per interval: one polling loop runs per cluster while it has
+// pending tasks, and every task gets its status through its own future.
+// Provisioning a Fargate task takes most of the first minute, so until a task is RUNNING it is
+// polled with an exponentially growing interval.
+// A task started with a readiness token is considered healthy as soon as the node reports it is
+// up. Such a task is only checked on the local readiness registry every interval, while ECS is
+// polled rarely, in case the node fails to call back.
+@Log4j2
+@RequiredArgsConstructor
+public class TaskHealthWatcher {
+
+  private static final String RUNNING_STATUS = "RUNNING";
+
+  private final EcsClientProvider ecsClientProvider;
+  private final EcsConfiguration config;
+  private final NodeReadinessRegistry readinessRegistry;
+  private final Executor pollingExecutor;
+  private final PollingClock clock;
+
+  private final Map<ClusterKey, Map<String, PendingTask>> pendingTasks = new HashMap<>();
+  private final AtomicLong checkedTasks = new AtomicLong();
+  private final AtomicLong polls = new AtomicLong();
+
+  public TaskHealthWatcher(EcsClientProvider ecsClientProvider,
+                           EcsConfiguration config,
+                           NodeReadinessRegistry readinessRegistry) {
+    this(ecsClientProvider, config, readinessRegistry,
+         Executors.newVirtualThreadPerTaskExecutor(), PollingClock.SYSTEM);
+  }
+
+  public CompletableFuture<RunTaskStatus> watch(Region region, String clusterName, String taskId) {
+    return watch(region, clusterName, taskId, null);
+  }
+
+  public CompletableFuture<RunTaskStatus> watch(Region region,
+                                                String clusterName,
+                                                String taskId,
+                                                String readinessToken) {
+    EcsContainerHealth health = config.getHealth();
+    long now = clock.now();
+    long deadline = Math.min(now + TimeUnit.SECONDS.toMillis(health.getTimeoutSec()),
+                             InvocationDeadline.get() - health.getDeadlineMarginMs());
+    PendingTask pendingTask = new PendingTask(taskId, readinessToken, now, deadline,
+                                              health.getIntervalMs());
+    if (readinessToken != null) {
+      pendingTask.nextPollAt = now + fallbackPollIntervalMs();
+    }
+    ClusterKey cluster = new ClusterKey(region, clusterName);
+
+    synchronized (pendingTasks) {
+      Map<String, PendingTask> clusterTasks = pendingTasks.get(cluster);
+      if (clusterTasks == null) {
+        clusterTasks = new LinkedHashMap<>();
+        pendingTasks.put(cluster, clusterTasks);
+        pollingExecutor.execute(() -> pollCluster(cluster));
+      }
+      clusterTasks.put(taskId, pendingTask);
+      pendingTasks.notifyAll();
+    }
+
+    return pendingTask.status;
+  }
+
+  public Stats getStats() {
+    return new Stats(checkedTasks.get(), polls.get());
+  }
+
+  private void pollCluster(ClusterKey cluster) {
+    for (; ; ) {
+      List<PendingTask> dueTasks;
+      long pollUntil;
+      synchronized (pendingTasks) {
+        Map<String, PendingTask> clusterTasks = pendingTasks.get(cluster);
+        if (clusterTasks.isEmpty()) {
+          pendingTasks.remove(cluster);
+          return;
+        }
+
+        try {
+          waitForDueTasks(clusterTasks);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          List.copyOf(clusterTasks.values())
+              .forEach(task -> complete(cluster, task, task.lastStatus));
+          return;
+        }
+
+        long now = clock.now();
+        checkReadiness(cluster, clusterTasks.values(), now);
+
+        // the tasks, which are due soon, are polled along with the due ones to share the call
+        pollUntil = now + config.getHealth().getIntervalMs() / 2;
+        dueTasks = clusterTasks.values()
+            .stream()
+            .filter(task -> task.nextPollAt <= pollUntil || task.deadline <= now)
+            .toList();
+      }
+
+      List<PendingTask> tasksToPoll = dueTasks.stream()
+          .filter(task -> task.nextPollAt <= pollUntil)
+          .toList();
+      for (int from = 0; from < tasksToPoll.size();
+           from += ClusterTaskIterator.MAX_DESCRIBED_TASKS) {
+        List<PendingTask> chunk = tasksToPoll.subList(
+            from, Math.min(from + ClusterTaskIterator.MAX_DESCRIBED_TASKS, tasksToPoll.size()));
+        try {
+          checkTasks(cluster, chunk);
+        } catch (Exception e) {
+          log.warn("Failed to check health of tasks in cluster {}. Retrying...", cluster, e);
+        }
+      }
+
+      long now = clock.now();
+      for (PendingTask task : dueTasks) {
+        if (task.status.isDone()) {
+          continue;
+        }
+
+        if (now >= task.deadline) {
+          complete(cluster, task, task.lastStatus);
+        } else {
+          task.nextPollAt = now + nextPollInterval(task);
+        }
+      }
+    }
+  }
+
+  private void waitForDueTasks(Map<String, PendingTask> clusterTasks)
+      throws InterruptedException {
+    for (; ; ) {
+      long wakeUpAt = clusterTasks.values()
+          .stream()
+          .mapToLong(task -> Math.min(Math.min(task.nextPollAt, task.nextReadinessCheckAt),
+                                      task.deadline))
+          .min()
+          .orElse(Long.MAX_VALUE);
+      long waitMs = wakeUpAt - clock.now();
+      if (waitMs <= 0) {
+        return;
+      }
+      // woken up earlier when a task is added
+      clock.waitOn(pendingTasks, waitMs);
+    }
+  }
+
+  private void checkReadiness(ClusterKey cluster, Collection<PendingTask> tasks, long now) {
+    List<PendingTask> readyTasks = new ArrayList<>();
+    for (PendingTask task : tasks) {
+      if (task.readinessToken == null || task.nextReadinessCheckAt > now) {
+        continue;
+      }
+
+      if (readinessRegistry.isReady(task.readinessToken)) {
+        readyTasks.add(task);
+      } else {
+        task.nextReadinessCheckAt = now + config.getHealth().getIntervalMs();
+      }
+    }
+
+    readyTasks.forEach(task -> complete(cluster, task, RunTaskStatus.HEALTHY));
+  }
+
+  private long nextPollInterval(PendingTask task) {
+    EcsContainerHealth health = config.getHealth();
+    if (task.readinessToken != null) {
+      return fallbackPollIntervalMs();
+    }
+
+    if (RUNNING_STATUS.equals(task.lifecycleStatus)) {
+      return health.getIntervalMs();
+    }
+
+    task.pendingIntervalMs = Math.min(task.pendingIntervalMs * 2,
+                                      Math.max(health.getPendingMaxIntervalMs(),
+                                               health.getIntervalMs()));
+    return task.pendingIntervalMs;
+  }
+
+  private long fallbackPollIntervalMs() {
+    return Math.max(config.getReadiness().getFallbackPollIntervalMs(),
+                    config.getHealth().getIntervalMs());
+  }
+
+  private void checkTasks(ClusterKey cluster, List<PendingTask> tasks) {
+    Map<String, PendingTask> tasksById = new HashMap<>();
+    tasks.forEach(task -> {
+      task.polls++;
+      tasksById.put(task.taskId, task);
+    });
+
+    DescribeTasksRequest describeTasksRequest = DescribeTasksRequest.builder()
+        .cluster(cluster.clusterName())
+        .tasks(tasksById.keySet())
+        .build();
+    DescribeTasksResponse resp = ecsClientProvider.get(cluster.region())
+        .describeTasks(describeTasksRequest);
+    if (resp.hasFailures() && !resp.failures().isEmpty()) {
+      // a task, which has just been started, may be not visible yet
+      log.warn("Some tasks have not been found. Failures: {}", resp.failures());
+    }
+
+    for (Task task : resp.tasks()) {
+      PendingTask pendingTask = tasksById.get(taskIdFromArn(task.taskArn()));
+      if (pendingTask == null) {
+        continue;
+      }
+
+      pendingTask.lifecycleStatus = task.lastStatus();
+      if (!HealthStatus.HEALTHY.equals(task.healthStatus())) {
+        continue;
+      }
+
+      pendingTask.lastStatus = getContainerHealthStatus(task);
+      if (RunTaskStatus.HEALTHY.equals(pendingTask.lastStatus)) {
+        complete(cluster, pendingTask, RunTaskStatus.HEALTHY);
+      }
+    }
+  }
+
+  private RunTaskStatus getContainerHealthStatus(Task task) {
+    return task.containers()
+        .stream()
+        .filter(container -> container.name().equals(config.getEssentialContainerName()))
+        .map(container -> RunTaskStatus.valueOf(container.healthStatus().name()))
+        .findFirst()
+        .orElse(RunTaskStatus.UNKNOWN);
+  }
+
+  // only called by the polling loop of the cluster, so a task is never completed twice
+  private void complete(ClusterKey cluster, PendingTask task, RunTaskStatus status) {
+    if (task.status.isDone()) {
+      return;
+    }
+
+    synchronized (pendingTasks) {
+      pendingTasks.get(cluster).remove(task.taskId, task);
+    }
+    if (task.readinessToken != null) {
+      readinessRegistry.forget(task.readinessToken);
+    }
+    checkedTasks.incrementAndGet();
+    polls.addAndGet(task.polls);
+    log.info("Health check of task {} finished with {} after {} polls in {} ms", task.taskId,
+             status, task.polls, clock.now() - task.watchedSince);
+    task.status.complete(status);
+  }
+
+  private static String taskIdFromArn(String taskArn) {
+    return taskArn.substring(taskArn.lastIndexOf('/') + 1);
+  }
+
+  public record Stats(long checkedTasks, long polls) {
+
+  }
+
+  // the time the polling loops run by; a test replaces it to drive them without real waits
+  interface PollingClock {
+
+    PollingClock SYSTEM = new PollingClock() {
+      @Override
+      public long now() {
+        return System.currentTimeMillis();
+      }
+
+      @Override
+      public void waitOn(Object monitor, long waitMs) throws InterruptedException {
+        monitor.wait(waitMs);
+      }
+    };
+
+    long now();
+
+    // called with the monitor held, may return earlier when the monitor is notified
+    void waitOn(Object monitor, long waitMs) throws InterruptedException;
+
+  }
+
+  private record ClusterKey(Region region, String clusterName) {
+
+  }
+
+  private static class PendingTask {
+
+    private final String taskId;
+    private final String readinessToken;
+    private final long watchedSince;
+    private final long deadline;
+    private final CompletableFuture<RunTaskStatus> status = new CompletableFuture<>();
+    private volatile RunTaskStatus lastStatus = RunTaskStatus.UNKNOWN;
+    private volatile String lifecycleStatus;
+    private volatile long nextPollAt;
+    private volatile long nextReadinessCheckAt = Long.MAX_VALUE;
+    private volatile long pendingIntervalMs;
+    private volatile int polls;
+
+    private PendingTask(String taskId,
+                        String readinessToken,
+                        long watchedSince,
+                        long deadline,
+                        long intervalMs) {
+      this.taskId = taskId;
+      this.readinessToken = readinessToken;
+      if (readinessToken != null) {
+        this.nextReadinessCheckAt = watchedSince + intervalMs;
+      }
+      this.watchedSince = watchedSince;
+      this.deadline = deadline;
+      this.pendingIntervalMs = intervalMs;
+      this.nextPollAt = watchedSince + intervalMs;
+    }
+
+  }
+
+}
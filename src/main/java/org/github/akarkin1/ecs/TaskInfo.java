@@ -5,6 +5,8 @@ import lombok.Getter;
 import lombok.ToString;
 import software.amazon.awssdk.regions.Region;
 
+import java.util.Map;
+
 
 @Getter
 @Builder
@@ -18,5 +20,18 @@ public class TaskInfo {
   private String publicIp;
   private String location;
   private Region region;
+  private Map<String, String> tags;
+
+  // a task matches unless any of its tags has a different value
+  public boolean matchesTags(Map<String, String> matchingTags) {
+    if (tags == null) {
+      return true;
+    }
+
+    return tags.entrySet()
+        .stream()
+        .noneMatch(tag -> matchingTags.containsKey(tag.getKey())
+                          && !matchingTags.get(tag.getKey()).equals(tag.getValue()));
+  }
 
 }
@@ -0,0 +1,21 @@
+package org.github.akarkin1.ecs;
+
+import software.amazon.awssdk.regions.Region;
+
+import java.util.List;
+import java.util.Map;
+
+public record TaskInventory(List<TaskInfo> tasks, List<Region> skippedRegions) {
+
+  public boolean isComplete() {
+    return skippedRegions.isEmpty();
+  }
+
+  public TaskInventory narrow(Map<String, String> matchingTags) {
+    return new TaskInventory(tasks.stream()
+                                 .filter(task -> task.matchesTags(matchingTags))
+                                 .toList(),
+                             skippedRegions);
+  }
+
+}
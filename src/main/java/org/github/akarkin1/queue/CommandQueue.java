@@ -0,0 +1,11 @@
+package org.github.akarkin1.queue;
+
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+// Hands the command of an update over to a worker. The update has already been authenticated and
+// registered as processed, so the worker only runs the command.
+public interface CommandQueue {
+
+  void submit(Update update);
+
+}
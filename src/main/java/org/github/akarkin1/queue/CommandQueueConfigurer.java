@@ -0,0 +1,31 @@
+package org.github.akarkin1.queue;
+
+import lombok.extern.log4j.Log4j2;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+
+import java.util.function.Consumer;
+
+import static org.github.akarkin1.config.ConfigManager.getCommandExecutionMode;
+import static org.github.akarkin1.config.ConfigManager.getFunctionName;
+
+@Log4j2
+public class CommandQueueConfigurer {
+
+  private static final String INLINE_MODE = "inline";
+  private static final String LAMBDA_EVENT_MODE = "lambda-event";
+
+  // the worker runs the commands of the inline mode
+  public CommandQueue configure(Consumer<Update> worker) {
+    String mode = getCommandExecutionMode();
+    log.info("Using the {} command execution mode", mode);
+    return switch (mode) {
+      case INLINE_MODE -> new InlineCommandQueue(worker);
+      case LAMBDA_EVENT_MODE -> new LambdaEventCommandQueue(LambdaClient.create(),
+                                                            getFunctionName());
+      default -> throw new IllegalStateException(
+          "Unknown command execution mode: '%s'".formatted(mode));
+    };
+  }
+
+}
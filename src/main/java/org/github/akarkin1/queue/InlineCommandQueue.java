@@ -0,0 +1,19 @@
+package org.github.akarkin1.queue;
+
+import lombok.RequiredArgsConstructor;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.function.Consumer;
+
+// Runs the command right within the webhook call, for local runs and when no queue is configured
+@RequiredArgsConstructor
+public class InlineCommandQueue implements CommandQueue {
+
+  private final Consumer<Update> worker;
+
+  @Override
+  public void submit(Update update) {
+    worker.accept(update);
+  }
+
+}
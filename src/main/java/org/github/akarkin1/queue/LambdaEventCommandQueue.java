@@ -0,0 +1,57 @@
+package org.github.akarkin1.queue;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.lambda.model.InvocationType;
+import software.amazon.awssdk.services.lambda.model.InvokeRequest;
+import software.amazon.awssdk.services.lambda.model.InvokeResponse;
+
+import java.util.Map;
+
+import static org.github.akarkin1.util.JsonUtils.toJson;
+
+// Invokes the function itself with the Event invocation type: Lambda queues the event and answers
+// at once, so the webhook is acknowledged in milliseconds while the command runs in an invocation
+// of its own. The queued event is shaped as an API Gateway request, so the same handler gets it.
+@Log4j2
+@RequiredArgsConstructor
+public class LambdaEventCommandQueue implements CommandQueue {
+
+  static final String EVENT_HEADER = "x-vpn-bot-event";
+  static final String RUN_COMMAND_EVENT = "run-command";
+  private static final int ACCEPTED = 202;
+
+  private final LambdaClient lambdaClient;
+  private final String functionName;
+
+  // A request of API Gateway always has a request context, so unlike the header, a webhook caller
+  // cannot make it look like a queued command, which is only invokable with the Lambda IAM role
+  public static boolean isQueuedCommand(APIGatewayProxyRequestEvent request) {
+    return request.getRequestContext() == null
+           && request.getHeaders() != null
+           && RUN_COMMAND_EVENT.equals(request.getHeaders().get(EVENT_HEADER));
+  }
+
+  @Override
+  public void submit(Update update) {
+    String event = toJson(Map.of("headers", Map.of(EVENT_HEADER, RUN_COMMAND_EVENT),
+                                 "body", toJson(update)));
+    InvokeRequest request = InvokeRequest.builder()
+        .functionName(functionName)
+        .invocationType(InvocationType.EVENT)
+        .payload(SdkBytes.fromUtf8String(event))
+        .build();
+
+    InvokeResponse response = lambdaClient.invoke(request);
+    if (response.statusCode() != ACCEPTED) {
+      throw new IllegalStateException("Command of update %s has not been queued, status: %s"
+                                          .formatted(update.getUpdateId(), response.statusCode()));
+    }
+    log.info("Command of update {} has been queued to {}", update.getUpdateId(), functionName);
+  }
+
+}
@@ -0,0 +1,31 @@
+package org.github.akarkin1.readiness;
+
+// Used when the Lambda has no shared storage for the readiness reports: no token is issued,
+// so the nodes do not call back, and their health is polled on ECS only.
+public class DisabledNodeReadinessRegistry implements NodeReadinessRegistry {
+
+  @Override
+  public boolean isEnabled() {
+    return false;
+  }
+
+  @Override
+  public String issueToken() {
+    throw new IllegalStateException("Node readiness reports are disabled");
+  }
+
+  @Override
+  public boolean markReady(String token) {
+    return false;
+  }
+
+  @Override
+  public boolean isReady(String token) {
+    return false;
+  }
+
+  @Override
+  public void forget(String token) {
+  }
+
+}
@@ -0,0 +1,127 @@
+package org.github.akarkin1.readiness;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.github.akarkin1.deduplication.ExpiringRecords;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+// The node reports it is up to whichever Lambda instance receives the callback, so the signal is
+// passed to the waiting instance through EFS. Only the hash of a token is stored, and a node can
+// mark itself ready only if its token has been issued before.
+// The token reaches the node as a container environment override, so anyone allowed to call
+// ecs:DescribeTasks can read it while the task is starting. The worst it allows is to report
+// the node ready too early: a token is valid for a single task, until its health check is done
+// or the TTL passes, and it grants nothing but the callback.
+// The expired tokens of the nodes, which never called back, are deleted by EventsExpirySweeper.
+@Log4j2
+@RequiredArgsConstructor
+public class FSNodeReadinessRegistry implements NodeReadinessRegistry, ExpiringRecords {
+
+  private static final String PENDING_SUFFIX = ".pending";
+  private static final String READY_SUFFIX = ".ready";
+  private static final int TOKEN_BYTES = 32;
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private final long tokenExpirationTimeMs;
+  private final String rootDir;
+
+  @Override
+  public String issueToken() {
+    byte[] tokenBytes = new byte[TOKEN_BYTES];
+    RANDOM.nextBytes(tokenBytes);
+    String token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+
+    try {
+      Files.createFile(Paths.get(rootDir, hash(token) + PENDING_SUFFIX));
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to register node readiness token", e);
+    }
+
+    return token;
+  }
+
+  @Override
+  public boolean markReady(String token) {
+    String tokenHash = hash(token);
+    if (Files.notExists(Paths.get(rootDir, tokenHash + PENDING_SUFFIX))) {
+      return false;
+    }
+
+    try {
+      Files.createFile(Paths.get(rootDir, tokenHash + READY_SUFFIX));
+    } catch (FileAlreadyExistsException e) {
+      log.debug("Node has already been marked as ready");
+    } catch (IOException e) {
+      log.error("Failed to mark node as ready", e);
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public boolean isReady(String token) {
+    return Files.exists(Paths.get(rootDir, hash(token) + READY_SUFFIX));
+  }
+
+  @Override
+  public void forget(String token) {
+    String tokenHash = hash(token);
+    deleteFileWithoutException(Paths.get(rootDir, tokenHash + PENDING_SUFFIX));
+    deleteFileWithoutException(Paths.get(rootDir, tokenHash + READY_SUFFIX));
+  }
+
+  @Override
+  public int deleteExpired(int maxDeletions) {
+    int deletedFiles = 0;
+    long currentTimeMs = System.currentTimeMillis();
+    try (Stream<Path> foundFiles = Files.list(Paths.get(rootDir))) {
+      Iterator<Path> paths = foundFiles.iterator();
+      while (deletedFiles < maxDeletions && paths.hasNext()) {
+        Path path = paths.next();
+        if (currentTimeMs - path.toFile().lastModified() > tokenExpirationTimeMs
+            && deleteFileWithoutException(path)) {
+          deletedFiles++;
+        }
+      }
+    } catch (NoSuchFileException e) {
+      // no token has been issued yet
+    } catch (IOException e) {
+      log.error("Failed to list directory: {}", rootDir, e);
+    }
+    return deletedFiles;
+  }
+
+  private static boolean deleteFileWithoutException(Path path) {
+    try {
+      return Files.deleteIfExists(path);
+    } catch (IOException e) {
+      log.error("Failed to delete file: {}", path.getFileName(), e);
+      return false;
+    }
+  }
+
+  private static String hash(String token) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
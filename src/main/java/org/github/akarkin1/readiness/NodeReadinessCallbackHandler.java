@@ -0,0 +1,48 @@
+package org.github.akarkin1.readiness;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Optional;
+
+// Handles the call a node makes once Tailscale is up (see start_tailscale.sh). It comes through
+// the same API route as Telegram updates, and is told apart by the event header.
+@Log4j2
+@RequiredArgsConstructor
+public class NodeReadinessCallbackHandler {
+
+  private static final String EVENT_HEADER = "x-vpn-node-event";
+  private static final String TOKEN_HEADER = "x-vpn-node-token";
+  private static final String READY_EVENT = "ready";
+
+  private final NodeReadinessRegistry readinessRegistry;
+
+  public static boolean isReadinessCallback(APIGatewayProxyRequestEvent request) {
+    return READY_EVENT.equals(header(request, EVENT_HEADER));
+  }
+
+  public APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent request) {
+    String token = header(request, TOKEN_HEADER);
+    if (StringUtils.isBlank(token) || !readinessRegistry.markReady(token)) {
+      log.warn("Node readiness callback with unknown token has been rejected");
+      return new APIGatewayProxyResponseEvent()
+          .withBody("{}")
+          .withStatusCode(403);
+    }
+
+    log.info("Node has reported it is ready");
+    return new APIGatewayProxyResponseEvent()
+        .withBody("{}")
+        .withStatusCode(200);
+  }
+
+  private static String header(APIGatewayProxyRequestEvent request, String name) {
+    return Optional.ofNullable(request.getHeaders())
+        .map(headers -> headers.get(name))
+        .orElse(null);
+  }
+
+}
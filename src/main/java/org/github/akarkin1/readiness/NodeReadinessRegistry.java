@@ -0,0 +1,17 @@
+package org.github.akarkin1.readiness;
+
+public interface NodeReadinessRegistry {
+
+  default boolean isEnabled() {
+    return true;
+  }
+
+  String issueToken();
+
+  boolean markReady(String token);
+
+  boolean isReady(String token);
+
+  void forget(String token);
+
+}
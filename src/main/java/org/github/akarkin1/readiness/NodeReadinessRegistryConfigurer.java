@@ -0,0 +1,37 @@
+package org.github.akarkin1.readiness;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.github.akarkin1.config.ConfigManager.getNodeReadyCallbackUrl;
+import static org.github.akarkin1.config.ConfigManager.getNodeReadyRootDir;
+import static org.github.akarkin1.config.ConfigManager.getNodeReadyTokenTtlMs;
+
+// The readiness reports need a directory shared by all the Lambda instances (the EFS mount).
+// Without it, e.g. when the Lambda runs outside of the VPC, the nodes are checked on ECS only.
+@Log4j2
+public class NodeReadinessRegistryConfigurer {
+
+  public NodeReadinessRegistry configure() {
+    String rootDir = getNodeReadyRootDir();
+    if (StringUtils.isBlank(getNodeReadyCallbackUrl()) || StringUtils.isBlank(rootDir)) {
+      log.info("Node readiness reports are disabled, node health is polled on ECS");
+      return new DisabledNodeReadinessRegistry();
+    }
+
+    try {
+      Files.createDirectories(Paths.get(rootDir));
+    } catch (IOException | SecurityException e) {
+      log.warn("Node readiness directory {} is not available, node health is polled on ECS",
+               rootDir, e);
+      return new DisabledNodeReadinessRegistry();
+    }
+
+    return new FSNodeReadinessRegistry(getNodeReadyTokenTtlMs(), rootDir);
+  }
+
+}
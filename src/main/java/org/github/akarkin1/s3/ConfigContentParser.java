@@ -0,0 +1,46 @@
+package org.github.akarkin1.s3;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Parses a config file straight from its bytes, so that no intermediate String of the whole file
+// is built. The stream is closed by the caller.
+@FunctionalInterface
+public interface ConfigContentParser<T> {
+
+  // Config files are small, the default 8 KB char buffer would mostly stay unused
+  int LINE_BUFFER_SIZE = 512;
+
+  T parse(InputStream content) throws IOException;
+
+  // Blank lines are skipped. The reader is not closed, the stream is closed by the caller.
+  static ConfigContentParser<List<String>> lines() {
+    return content -> {
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(content, StandardCharsets.UTF_8), LINE_BUFFER_SIZE);
+      List<String> lines = new ArrayList<>();
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (!line.isEmpty()) {
+          lines.add(line);
+        }
+      }
+      return lines;
+    };
+  }
+
+  default T parse(byte[] content) {
+    try {
+      return parse(new ByteArrayInputStream(content));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to parse config content", e);
+    }
+  }
+
+}
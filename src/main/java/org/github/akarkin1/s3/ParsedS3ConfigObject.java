@@ -0,0 +1,6 @@
+package org.github.akarkin1.s3;
+
+// content is the raw UTF-8 bytes the value was parsed from, null unless it was asked to be kept
+public record ParsedS3ConfigObject<T>(T value, byte[] content, String eTag) {
+
+}
@@ -2,27 +2,61 @@ package org.github.akarkin1.s3;
 
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.TeeInputStream;
 import org.github.akarkin1.config.YamlApplicationConfiguration.S3Configuration;
 import org.github.akarkin1.config.exception.S3DownloadFailureException;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
+@Log4j2
 @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
 public final class S3ConfigManager {
 
+  private static final int NOT_MODIFIED = 304;
+  private static final int CONFLICT = 409;
+  private static final int PRECONDITION_FAILED = 412;
+  // PutObjectRequest of this SDK version has no ifMatch(), S3 honours the header nonetheless
+  private static final String IF_MATCH_HEADER = "If-Match";
+  private static final int DEFAULT_CONTENT_SIZE = 4 * 1024;
+
   private final S3Client s3Client;
   private final S3Configuration config;
 
   public static S3ConfigManager create(S3Configuration config) {
     S3Client createdClient = S3Client.create();
-    return new S3ConfigManager(createdClient, config);
+    return create(createdClient, config);
+  }
+
+  public static S3ConfigManager create(S3Client s3Client, S3Configuration config) {
+    return new S3ConfigManager(s3Client, config);
   }
 
   public String downloadConfigFromS3(String fileName) throws S3DownloadFailureException {
@@ -39,18 +73,199 @@ public final class S3ConfigManager {
     }
   }
 
+  // Parses the object while it is being downloaded, without reading it into a String first
+  public <T> T downloadConfigFromS3(String fileName, ConfigContentParser<T> parser)
+      throws S3DownloadFailureException {
+    String bucket = config.getConfigBucket();
+    GetObjectRequest request = GetObjectRequest.builder()
+        .bucket(bucket)
+        .key(joinPath(config.getConfigRootDir(), fileName))
+        .build();
+    try (ResponseInputStream<GetObjectResponse> resp = s3Client.getObject(request)) {
+      return parser.parse(resp);
+    } catch (Exception e) {
+      throw new S3DownloadFailureException(bucket, fileName, e);
+    }
+  }
+
+  // Downloads and parses the files concurrently, fails if any of them fails
+  public <T> Map<String, T> downloadConfigs(Collection<String> fileNames,
+                                            ConfigContentParser<T> parser)
+      throws S3DownloadFailureException {
+    Map<String, T> downloadedFiles = new HashMap<>();
+    submitAll(fileNames, fileName -> downloadConfigFromS3(fileName, parser))
+        .forEach((fileName, pendingFile) -> {
+          try {
+            downloadedFiles.put(fileName, pendingFile.get());
+          } catch (ExecutionException e) {
+            throw e.getCause() instanceof S3DownloadFailureException failure
+                ? failure
+                : new S3DownloadFailureException(config.getConfigBucket(), fileName, e.getCause());
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new S3DownloadFailureException(config.getConfigBucket(), fileName, e);
+          }
+        });
+    return downloadedFiles;
+  }
+
+  // Conditional GET, empty when the object still has the given ETag (S3 responds 304 with no body).
+  // The content is not parsed, for the snapshot files that are parsed on their first access.
+  private Optional<S3ConfigObject> downloadConfigIfModified(String fileName, String eTag)
+      throws S3DownloadFailureException {
+    String bucket = config.getConfigBucket();
+    GetObjectRequest request = GetObjectRequest.builder()
+        .bucket(bucket)
+        .key(joinPath(config.getConfigRootDir(), fileName))
+        .ifNoneMatch(eTag)
+        .build();
+    try (ResponseInputStream<GetObjectResponse> resp = s3Client.getObject(request)) {
+      return Optional.of(new S3ConfigObject(readContent(resp), resp.response().eTag()));
+    } catch (S3Exception e) {
+      if (e.statusCode() == NOT_MODIFIED) {
+        return Optional.empty();
+      }
+      throw new S3DownloadFailureException(bucket, fileName, e);
+    } catch (Exception e) {
+      throw new S3DownloadFailureException(bucket, fileName, e);
+    }
+  }
+
+  // Conditional GET parsed while the object is being downloaded. The raw content is kept as well
+  // only with keepContent, for the callers that persist it; it is null otherwise.
+  public <T> Optional<ParsedS3ConfigObject<T>> downloadConfigIfModified(
+      String fileName, String eTag, ConfigContentParser<T> parser, boolean keepContent)
+      throws S3DownloadFailureException {
+    String bucket = config.getConfigBucket();
+    GetObjectRequest request = GetObjectRequest.builder()
+        .bucket(bucket)
+        .key(joinPath(config.getConfigRootDir(), fileName))
+        .ifNoneMatch(eTag)
+        .build();
+    try (ResponseInputStream<GetObjectResponse> resp = s3Client.getObject(request)) {
+      String modifiedETag = resp.response().eTag();
+      if (!keepContent) {
+        return Optional.of(new ParsedS3ConfigObject<>(parser.parse(resp), null, modifiedETag));
+      }
+
+      ByteArrayOutputStream content = new ByteArrayOutputStream(initialSize(resp));
+      // the parser may close the stream or stop before its end, e.g. Jackson after the root value
+      InputStream teeStream = new TeeInputStream(resp, content);
+      T value = parser.parse(CloseShieldInputStream.wrap(teeStream));
+      if (teeStream.read() != -1) {
+        teeStream.transferTo(OutputStream.nullOutputStream());
+      }
+      return Optional.of(new ParsedS3ConfigObject<>(value, content.toByteArray(), modifiedETag));
+    } catch (S3Exception e) {
+      if (e.statusCode() == NOT_MODIFIED) {
+        return Optional.empty();
+      }
+      throw new S3DownloadFailureException(bucket, fileName, e);
+    } catch (Exception e) {
+      throw new S3DownloadFailureException(bucket, fileName, e);
+    }
+  }
+
+  // Revalidates the files concurrently, the files failed to revalidate are left out of the result
+  public Map<String, Optional<S3ConfigObject>> revalidateConfigs(
+      Map<String, String> eTagsByFileName) {
+    Map<String, Optional<S3ConfigObject>> revalidatedFiles = new HashMap<>();
+    submitAll(eTagsByFileName.keySet(),
+              fileName -> downloadConfigIfModified(fileName, eTagsByFileName.get(fileName)))
+        .forEach((fileName, pendingFile) -> {
+          try {
+            revalidatedFiles.put(fileName, pendingFile.get());
+          } catch (ExecutionException e) {
+            log.warn("Failed to revalidate config file {}", fileName, e.getCause());
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    return revalidatedFiles;
+  }
+
+  // Returns once all the files are done, one virtual thread per file
+  private static <T> Map<String, Future<T>> submitAll(Collection<String> fileNames,
+                                                      Function<String, T> download) {
+    Map<String, Future<T>> pendingFiles = new LinkedHashMap<>();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (String fileName : fileNames) {
+        pendingFiles.put(fileName, executor.submit(() -> download.apply(fileName)));
+      }
+    }
+    return pendingFiles;
+  }
+
+  // Sized by Content-Length when S3 sends it, instead of growing a buffer chunk by chunk
+  private static byte[] readContent(ResponseInputStream<GetObjectResponse> resp)
+      throws IOException {
+    Long contentLength = resp.response().contentLength();
+    return contentLength == null
+        ? resp.readAllBytes()
+        : IOUtils.toByteArray(resp, contentLength);
+  }
+
+  private static int initialSize(ResponseInputStream<GetObjectResponse> resp) {
+    Long contentLength = resp.response().contentLength();
+    return contentLength == null ? DEFAULT_CONTENT_SIZE : Math.toIntExact(contentLength);
+  }
+
+  // Uploads the file only if it still has the given ETag, empty if it has been changed meanwhile
+  public Optional<String> uploadConfigIfMatch(String fileName, String content, String eTag) {
+    PutObjectRequest request = PutObjectRequest.builder()
+        .bucket(config.getConfigBucket())
+        .key(joinPath(config.getConfigRootDir(), fileName))
+        .overrideConfiguration(override -> override.putHeader(IF_MATCH_HEADER, eTag))
+        .build();
+    try {
+      return Optional.of(s3Client.putObject(request, RequestBody.fromString(content)).eTag());
+    } catch (S3Exception e) {
+      if (e.statusCode() == PRECONDITION_FAILED || e.statusCode() == CONFLICT) {
+        return Optional.empty();
+      }
+      throw e;
+    }
+  }
+
+  // Files of the dir in key order, starting after the given file (null for the first page)
+  public S3ConfigPage listConfigs(String dirName, String startAfterFileName, int maxFiles) {
+    String rootPrefix = config.getConfigRootDir() + "/";
+    ListObjectsV2Request request = ListObjectsV2Request.builder()
+        .bucket(config.getConfigBucket())
+        .prefix(joinPath(config.getConfigRootDir(), dirName) + "/")
+        .startAfter(startAfterFileName == null
+                        ? null
+                        : joinPath(config.getConfigRootDir(), startAfterFileName))
+        .maxKeys(maxFiles)
+        .build();
+    ListObjectsV2Response response = s3Client.listObjectsV2(request);
+    List<String> fileNames = response.contents()
+        .stream()
+        .map(object -> object.key().substring(rootPrefix.length()))
+        .toList();
+    return new S3ConfigPage(fileNames, Boolean.TRUE.equals(response.isTruncated()));
+  }
+
+  public void deleteConfig(String fileName) {
+    s3Client.deleteObject(DeleteObjectRequest.builder()
+                              .bucket(config.getConfigBucket())
+                              .key(joinPath(config.getConfigRootDir(), fileName))
+                              .build());
+  }
+
   public static String joinPath(String... pathParts) {
     return String.join("/", pathParts);
   }
 
-  public void uploadConfigToS3(String fileName, String content) {
+  // Returns the ETag of the uploaded object
+  public String uploadConfigToS3(String fileName, String content) {
     String bucket = config.getConfigBucket();
     PutObjectRequest request = PutObjectRequest.builder()
         .bucket(bucket)
         .key(joinPath(config.getConfigRootDir(), fileName))
         .build();
 
-    s3Client.putObject(request, RequestBody.fromString(content));
+    return s3Client.putObject(request, RequestBody.fromString(content)).eTag();
   }
 
 }
@@ -0,0 +1,6 @@
+package org.github.akarkin1.s3;
+
+// content is kept as the raw UTF-8 bytes, it is parsed with a ConfigContentParser
+public record S3ConfigObject(byte[] content, String eTag) {
+
+}
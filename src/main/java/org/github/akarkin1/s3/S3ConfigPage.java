@@ -0,0 +1,8 @@
+package org.github.akarkin1.s3;
+
+import java.util.List;
+
+// fileNames are relative to the config root dir, like the ones the other operations take
+public record S3ConfigPage(List<String> fileNames, boolean truncated) {
+
+}
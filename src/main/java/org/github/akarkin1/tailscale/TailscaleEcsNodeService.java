@@ -6,6 +6,8 @@ import org.github.akarkin1.config.YamlApplicationConfiguration.EcsConfiguration;
 import org.github.akarkin1.ecs.EcsManager;
 import org.github.akarkin1.ecs.RunTaskStatus;
 import org.github.akarkin1.ecs.TaskInfo;
+import org.github.akarkin1.ecs.TaskInventory;
+import org.github.akarkin1.exception.CommandExecutionFailedException;
 import software.amazon.awssdk.regions.Region;
 
 import java.util.HashMap;
@@ -63,7 +65,7 @@ public class TailscaleEcsNodeService implements TailscaleNodeService {
         config.getServiceNameTag(), config.getServiceName(),
         config.getHostNameTag(), userHostName
     );
-    return ecsManager.listTasks(matchingTags).isEmpty();
+    return listTasksOfAllRegions(matchingTags).isEmpty();
   }
 
   @Override
@@ -96,7 +98,7 @@ public class TailscaleEcsNodeService implements TailscaleNodeService {
   }
 
   private String chooseHostName(String userTgId, String regionId) {
-    Set<String> hostNames = ecsManager.listTasks(Map.of(
+    Set<String> hostNames = listTasksOfAllRegions(Map.of(
             config.getServiceNameTag(), config.getServiceName()
         ))
         .stream()
@@ -113,6 +115,18 @@ public class TailscaleEcsNodeService implements TailscaleNodeService {
     return suggestedHostName;
   }
 
+  // a node of a region, that did not respond, would look like a free hostname,
+  // so unlike the node list, the hostname checks refuse to work with a partial inventory
+  private List<TaskInfo> listTasksOfAllRegions(Map<String, String> matchingTags) {
+    TaskInventory inventory = ecsManager.collectFreshInventory(matchingTags);
+    if (!inventory.isComplete()) {
+      throw new CommandExecutionFailedException(
+          "${command.run-node.inventory-incomplete.error}: %s".formatted(inventory.skippedRegions()));
+    }
+
+    return inventory.tasks();
+  }
+
   private String suggestHostName(String userTgId, String regionId, int nodeNumber) {
     String city = cityByRegion.get(regionId);
     return sanitizeHostName("%s-%s-%d".formatted(userTgId, city, nodeNumber));
@@ -123,14 +137,14 @@ public class TailscaleEcsNodeService implements TailscaleNodeService {
   }
 
   @Override
-  public List<TaskInfo> listTasks(String userTgId) {
+  public TaskInventory listTasks(String userTgId) {
     Map<String, String> matchingTags = new HashMap<>();
     matchingTags.put(config.getServiceNameTag(), config.getServiceName());
     if (userTgId != null) {
       matchingTags.put(config.getRunByTag(), userTgId);
     }
 
-    return ecsManager.listTasks(matchingTags);
+    return ecsManager.collectInventory(matchingTags);
   }
 
   @Override
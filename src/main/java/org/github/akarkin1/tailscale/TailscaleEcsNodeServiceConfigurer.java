@@ -1,31 +1,91 @@
 package org.github.akarkin1.tailscale;
 
-import org.github.akarkin1.config.CachedS3TaskConfigService;
 import org.github.akarkin1.config.ConfigManager;
 import org.github.akarkin1.config.S3TaskConfigService;
+import org.github.akarkin1.config.SnapshotTaskConfigService;
+import org.github.akarkin1.config.TaskConfigPreloader;
 import org.github.akarkin1.config.TaskConfigService;
 import org.github.akarkin1.config.YamlApplicationConfiguration;
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsConfiguration;
 import org.github.akarkin1.config.YamlApplicationConfiguration.S3Configuration;
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsInventory;
 import org.github.akarkin1.ec2.Ec2ClientPool;
+import org.github.akarkin1.ec2.PublicIpResolver;
+import org.github.akarkin1.ecs.CachingEcsManager;
+import org.github.akarkin1.ecs.ClusterScanTaskDiscovery;
 import org.github.akarkin1.ecs.EcsClientPool;
 import org.github.akarkin1.ecs.EcsManager;
 import org.github.akarkin1.ecs.EcsManagerImpl;
+import org.github.akarkin1.ecs.RegionalInventoryEngine;
+import org.github.akarkin1.ecs.SnapshotEcsManager;
+import org.github.akarkin1.ecs.StartedByMarker;
+import org.github.akarkin1.ecs.StartedByTaskDiscovery;
+import org.github.akarkin1.ecs.TaskDiscovery;
+import org.github.akarkin1.ecs.TaskHealthWatcher;
+import org.github.akarkin1.readiness.NodeReadinessRegistry;
+
+import java.util.concurrent.TimeUnit;
 
 public class TailscaleEcsNodeServiceConfigurer {
 
-  public TailscaleNodeService configure() {
+  private static final String STARTED_BY_DISCOVERY = "started-by";
+
+  public TailscaleNodeService configure(NodeReadinessRegistry readinessRegistry) {
     YamlApplicationConfiguration appConfig = ConfigManager.getApplicationYaml();
 
     S3Configuration s3Config = appConfig.getS3();
     S3TaskConfigService s3TaskConfigService = S3TaskConfigService.create(s3Config);
-    TaskConfigService cachedConfigService = new CachedS3TaskConfigService(s3TaskConfigService, s3Config);
+    // only warms up the config cache of the service, the first request finds every region there
+    new TaskConfigPreloader(s3TaskConfigService, s3Config.getPreloadTimeoutMs()).preload();
+    TaskConfigService snapshotConfigService = new SnapshotTaskConfigService(s3TaskConfigService);
     EcsClientPool ecsClientPool = new EcsClientPool();
     Ec2ClientPool ec2ClientPool = new Ec2ClientPool();
-    EcsManager ecsManager = new EcsManagerImpl(cachedConfigService, ecsClientPool,
-                                               ec2ClientPool, appConfig.getEcs(),
-                                               appConfig.getAws().getRegionCities());
+    EcsInventory inventoryConfig = appConfig.getEcs().getInventory();
+    PublicIpResolver publicIpResolver = new PublicIpResolver(
+        ec2ClientPool, TimeUnit.SECONDS.toMillis(inventoryConfig.getPublicIpCacheTtlSec()));
+    RegionalInventoryEngine inventoryEngine = new RegionalInventoryEngine(
+        inventoryConfig.getRegionTimeoutMs());
+    StartedByMarker startedByMarker = new StartedByMarker(appConfig.getEcs());
+    EcsManager ecsManagerImpl = new EcsManagerImpl(snapshotConfigService, ecsClientPool,
+                                                   publicIpResolver, appConfig.getEcs(),
+                                                   appConfig.getAws().getRegionCities(),
+                                                   inventoryEngine,
+                                                   taskDiscovery(inventoryConfig, ecsClientPool,
+                                                                 startedByMarker),
+                                                   startedByMarker,
+                                                   new TaskHealthWatcher(ecsClientPool,
+                                                                         appConfig.getEcs(),
+                                                                         readinessRegistry),
+                                                   readinessRegistry,
+                                                   ConfigManager.getNodeReadyCallbackUrl());
+    EcsManager ecsManager = new SnapshotEcsManager(
+        cachingEcsManager(ecsManagerImpl, inventoryEngine, appConfig.getEcs()),
+        appConfig.getEcs());
 
     return new TailscaleEcsNodeService(ecsManager, appConfig.getEcs(), appConfig.getAws());
   }
 
+  private static EcsManager cachingEcsManager(EcsManager ecsManager,
+                                              RegionalInventoryEngine inventoryEngine,
+                                              EcsConfiguration ecsConfig) {
+    EcsInventory inventoryConfig = ecsConfig.getInventory();
+    if (inventoryConfig.getCacheTtlSec() <= 0) {
+      return ecsManager;
+    }
+
+    return new CachingEcsManager(ecsManager, inventoryEngine, ecsConfig,
+                                 TimeUnit.SECONDS.toMillis(inventoryConfig.getCacheTtlSec()),
+                                 TimeUnit.SECONDS.toMillis(inventoryConfig.getCacheMaxStaleSec()));
+  }
+
+  private static TaskDiscovery taskDiscovery(EcsInventory inventoryConfig,
+                                             EcsClientPool ecsClientPool,
+                                             StartedByMarker startedByMarker) {
+    if (STARTED_BY_DISCOVERY.equals(inventoryConfig.getDiscovery())) {
+      return new StartedByTaskDiscovery(ecsClientPool, startedByMarker);
+    }
+
+    return new ClusterScanTaskDiscovery(ecsClientPool);
+  }
+
 }
@@ -2,6 +2,7 @@ package org.github.akarkin1.tailscale;
 
 import org.github.akarkin1.ecs.RunTaskStatus;
 import org.github.akarkin1.ecs.TaskInfo;
+import org.github.akarkin1.ecs.TaskInventory;
 import software.amazon.awssdk.regions.Region;
 
 
@@ -22,7 +23,7 @@ public interface TailscaleNodeService {
 
   RunTaskStatus checkNodeStatus(TaskInfo taskInfo);
 
-  List<TaskInfo> listTasks(String userTgId);
+  TaskInventory listTasks(String userTgId);
 
   List<String> getSupportedRegionDescriptions();
 
@@ -5,6 +5,9 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.experimental.UtilityClass;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 @UtilityClass
 public class JsonUtils {
 
@@ -26,4 +29,9 @@ public class JsonUtils {
     }
   }
 
+  // Reads the tokens right from the bytes, without decoding them into a String first
+  public static <T> T parseJson(InputStream json, TypeReference<T> returnType) throws IOException {
+    return MAPPER.readValue(json, returnType);
+  }
+
 }
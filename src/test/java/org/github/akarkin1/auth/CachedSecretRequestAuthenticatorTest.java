@@ -0,0 +1,111 @@
+package org.github.akarkin1.auth;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CachedSecretRequestAuthenticatorTest {
+
+  private static final String SECRET_ID = "bot-secret-token";
+  private static final long TTL_MS = 300_000;
+  private static final long MIN_REFRESH_INTERVAL_MS = 10_000;
+  private static final long PREVIOUS_GRACE_MS = 3_600_000;
+  private static final Instant CREATED_AT = Instant.parse("2024-10-01T10:00:00Z");
+
+  private final AtomicLong clock = new AtomicLong(CREATED_AT.toEpochMilli() + 86_400_000);
+  private final List<Runnable> pendingRefreshes = new ArrayList<>();
+  private final FakeSecretsManagerClient client = new FakeSecretsManagerClient("token-1",
+                                                                               CREATED_AT);
+  private final CachedSecretRequestAuthenticator authenticator =
+      new CachedSecretRequestAuthenticator(client, SECRET_ID, TTL_MS, MIN_REFRESH_INTERVAL_MS,
+                                           PREVIOUS_GRACE_MS, pendingRefreshes::add, clock::get);
+
+  @Test
+  void validToken_secretIsFetchedOnce() {
+    authenticator.authenticate(request("token-1"));
+    authenticator.authenticate(request("token-1"));
+
+    assertEquals(1, client.getGetSecretValueCalls());
+    assertEquals(new CachedSecretRequestAuthenticator.Stats(2, 0, 1, 0),
+                 authenticator.getStats());
+  }
+
+  @Test
+  void staleSecret_isRefreshedInBackground() {
+    authenticator.authenticate(request("token-1"));
+    clock.addAndGet(TTL_MS);
+
+    authenticator.authenticate(request("token-1"));
+    assertEquals(1, client.getGetSecretValueCalls());
+    runPendingRefreshes();
+
+    assertEquals(2, client.getGetSecretValueCalls());
+  }
+
+  @Test
+  void rotatedSecret_isRefreshedOnMismatch() {
+    authenticator.authenticate(request("token-1"));
+    Instant rotatedAt = Instant.ofEpochMilli(clock.addAndGet(MIN_REFRESH_INTERVAL_MS));
+    client.rotate("token-2", rotatedAt);
+
+    assertDoesNotThrow(() -> authenticator.authenticate(request("token-2")));
+    // retries of the updates sent before the webhook got the new token
+    assertDoesNotThrow(() -> authenticator.authenticate(request("token-1")));
+    assertEquals(1, authenticator.getStats().mismatchRefreshes());
+  }
+
+  @Test
+  void previousSecret_isRejectedAfterGracePeriod() {
+    client.rotate("token-2", CREATED_AT);
+
+    assertThrows(UnauthenticatedRequestException.class,
+                 () -> authenticator.authenticate(request("token-1")));
+    assertDoesNotThrow(() -> authenticator.authenticate(request("token-2")));
+  }
+
+  @Test
+  void wrongTokens_refreshAtMostOncePerInterval() {
+    authenticator.authenticate(request("token-1"));
+
+    for (int i = 0; i < 5; i++) {
+      assertThrows(UnauthenticatedRequestException.class,
+                   () -> authenticator.authenticate(request("wrong")));
+    }
+    assertEquals(1, client.getGetSecretValueCalls());
+
+    clock.addAndGet(MIN_REFRESH_INTERVAL_MS);
+    assertThrows(UnauthenticatedRequestException.class,
+                 () -> authenticator.authenticate(request("wrong")));
+    assertEquals(2, client.getGetSecretValueCalls());
+    assertEquals(6, authenticator.getStats().rejections());
+  }
+
+  @Test
+  void missingToken_isRejectedWithoutFetchingSecret() {
+    assertThrows(UnauthenticatedRequestException.class,
+                 () -> authenticator.authenticate(new APIGatewayProxyRequestEvent()
+                                                      .withHeaders(Map.of())));
+    assertEquals(0, client.getGetSecretValueCalls());
+  }
+
+  private static APIGatewayProxyRequestEvent request(String token) {
+    return new APIGatewayProxyRequestEvent()
+        .withHeaders(Map.of("x-telegram-bot-api-secret-token", token));
+  }
+
+  private void runPendingRefreshes() {
+    List<Runnable> refreshes = new ArrayList<>(pendingRefreshes);
+    pendingRefreshes.clear();
+    refreshes.forEach(Runnable::run);
+  }
+
+}
@@ -0,0 +1,56 @@
+package org.github.akarkin1.auth;
+
+import lombok.Getter;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
+import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
+import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueResponse;
+import software.amazon.awssdk.services.secretsmanager.model.ResourceNotFoundException;
+
+import java.time.Instant;
+
+// A single secret with the AWSCURRENT and AWSPREVIOUS versions, rotated like Secrets Manager does
+class FakeSecretsManagerClient implements SecretsManagerClient {
+
+  private volatile String currentValue;
+  private volatile Instant currentCreatedDate;
+  private volatile String previousValue;
+  @Getter
+  private volatile int getSecretValueCalls;
+
+  FakeSecretsManagerClient(String value, Instant createdDate) {
+    this.currentValue = value;
+    this.currentCreatedDate = createdDate;
+  }
+
+  void rotate(String newValue, Instant createdDate) {
+    previousValue = currentValue;
+    currentValue = newValue;
+    currentCreatedDate = createdDate;
+  }
+
+  @Override
+  public GetSecretValueResponse getSecretValue(GetSecretValueRequest request) {
+    getSecretValueCalls++;
+    if ("AWSPREVIOUS".equals(request.versionStage())) {
+      if (previousValue == null) {
+        throw ResourceNotFoundException.builder().message("No AWSPREVIOUS version").build();
+      }
+      return GetSecretValueResponse.builder().secretString(previousValue).build();
+    }
+
+    return GetSecretValueResponse.builder()
+        .secretString(currentValue)
+        .createdDate(currentCreatedDate)
+        .build();
+  }
+
+  @Override
+  public String serviceName() {
+    return "secretsmanager";
+  }
+
+  @Override
+  public void close() {
+  }
+
+}
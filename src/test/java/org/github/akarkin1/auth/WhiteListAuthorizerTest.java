@@ -0,0 +1,63 @@
+package org.github.akarkin1.auth;
+
+import org.github.akarkin1.config.YamlApplicationConfiguration.AuthConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WhiteListAuthorizerTest {
+
+  private final AtomicReference<Map<String, List<Permission>>> userPermissions =
+      new AtomicReference<>(Map.of("alice", List.of(Permission.LIST_NODES),
+                                   "root", List.of(Permission.ROOT_ACCESS)));
+  private final WhiteListAuthorizer authorizer = new WhiteListAuthorizer(authConfig(true),
+                                                                         userPermissions::get);
+
+  @Test
+  void userPermissions_areChecked() {
+    assertTrue(authorizer.hasPermission("alice", Permission.LIST_NODES));
+    assertFalse(authorizer.hasPermission("alice", Permission.RUN_NODES));
+    assertFalse(authorizer.hasPermission("bob", Permission.LIST_NODES));
+  }
+
+  @Test
+  void rootAccess_grantsEveryPermission() {
+    for (Permission permission : Permission.values()) {
+      assertTrue(authorizer.hasPermission("root", permission));
+    }
+  }
+
+  @Test
+  void changedPermissions_areRecompiledUnderNewVersion() {
+    OptionalLong version = authorizer.getPermissionsVersion();
+    assertEquals(version, authorizer.getPermissionsVersion());
+
+    userPermissions.set(Map.of("alice", List.of(Permission.RUN_NODES)));
+
+    assertNotEquals(version, authorizer.getPermissionsVersion());
+    assertTrue(authorizer.hasPermission("alice", Permission.RUN_NODES));
+    assertFalse(authorizer.hasPermission("alice", Permission.LIST_NODES));
+  }
+
+  @Test
+  void disabledWhiteList_permitsEverything() {
+    WhiteListAuthorizer disabled = new WhiteListAuthorizer(authConfig(false), Map::of);
+
+    assertTrue(disabled.hasPermission("bob", Permission.ROOT_ACCESS));
+  }
+
+  private static AuthConfiguration authConfig(boolean enabled) {
+    AuthConfiguration config = new AuthConfiguration();
+    config.setEnabled(enabled);
+    return config;
+  }
+
+}
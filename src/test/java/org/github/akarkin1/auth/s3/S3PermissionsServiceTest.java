@@ -0,0 +1,133 @@
+package org.github.akarkin1.auth.s3;
+
+import org.github.akarkin1.auth.Permission;
+import org.github.akarkin1.config.RevalidatingS3ConfigCache;
+import org.github.akarkin1.config.YamlApplicationConfiguration.S3Configuration;
+import org.github.akarkin1.s3.ConfigContentParser;
+import org.github.akarkin1.s3.ParsedS3ConfigObject;
+import org.github.akarkin1.s3.S3ConfigManager;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class S3PermissionsServiceTest {
+
+  private static final String PERMISSIONS_KEY = "user-permissions.json";
+  private static final long REVALIDATE_INTERVAL_MS = 10_000;
+
+  private final S3ConfigManager s3ConfigManager = mock(S3ConfigManager.class);
+  private final AtomicLong clock = new AtomicLong(1_000_000);
+  private final RevalidatingS3ConfigCache configCache = new RevalidatingS3ConfigCache(
+      s3ConfigManager, REVALIDATE_INTERVAL_MS, REVALIDATE_INTERVAL_MS, null, Runnable::run,
+      clock::get);
+  private final S3PermissionsService permissionsService = new S3PermissionsService(
+      s3ConfigManager, configCache, s3Config());
+
+  @Test
+  void revokedUser_losesAccessWithinRevalidateInterval() {
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified("{\"alice\":[\"RUN_NODES\"]}", "etag-1"));
+    when(downloadIfModified(s3ConfigManager, "etag-1"))
+        .thenAnswer(modified("{}", "etag-2"));
+
+    assertEquals(Map.of("alice", List.of(Permission.RUN_NODES)),
+                 permissionsService.getUserPermissions());
+    clock.addAndGet(REVALIDATE_INTERVAL_MS);
+
+    assertEquals(Map.of(), permissionsService.getUserPermissions());
+  }
+
+  @Test
+  void updatedPermissions_areNotDownloadedBack() {
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified("{}", "etag-1"));
+    when(s3ConfigManager.uploadConfigIfMatch(eq(PERMISSIONS_KEY), anyString(), eq("etag-1")))
+        .thenReturn(Optional.of("etag-2"));
+
+    permissionsService.updateUserPermissions("alice", Set.of(Permission.LIST_NODES));
+
+    assertEquals(Map.of("alice", List.of(Permission.LIST_NODES)),
+                 permissionsService.getUserPermissions());
+    downloadIfModified(verify(s3ConfigManager), null);
+  }
+
+  @Test
+  void batchOfChanges_isWrittenOnce() {
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified(
+            "{\"alice\":[\"RUN_NODES\"],\"bob\":[\"LIST_NODES\"]}", "etag-1"));
+    when(s3ConfigManager.uploadConfigIfMatch(eq(PERMISSIONS_KEY), anyString(), eq("etag-1")))
+        .thenReturn(Optional.of("etag-2"));
+
+    permissionsService.deleteUsers(List.of("alice", "bob"));
+
+    verify(s3ConfigManager).uploadConfigIfMatch(PERMISSIONS_KEY, "{}", "etag-1");
+  }
+
+  @Test
+  void concurrentChange_isMergedOnRetry() {
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified("{}", "etag-1"))
+        .thenAnswer(modified("{\"bob\":[\"LIST_NODES\"]}", "etag-2"));
+    when(s3ConfigManager.uploadConfigIfMatch(eq(PERMISSIONS_KEY), anyString(), eq("etag-1")))
+        .thenReturn(Optional.empty());
+    when(s3ConfigManager.uploadConfigIfMatch(eq(PERMISSIONS_KEY), anyString(), eq("etag-2")))
+        .thenReturn(Optional.of("etag-3"));
+
+    permissionsService.updateUserPermissions("alice", Set.of(Permission.RUN_NODES));
+
+    assertEquals(Map.of("alice", List.of(Permission.RUN_NODES),
+                        "bob", List.of(Permission.LIST_NODES)),
+                 permissionsService.getUserPermissions());
+  }
+
+  @Test
+  void persistentConflict_failsAfterMaxAttempts() {
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified("{}", "etag-1"));
+    when(s3ConfigManager.uploadConfigIfMatch(eq(PERMISSIONS_KEY), anyString(), eq("etag-1")))
+        .thenReturn(Optional.empty());
+
+    assertThrows(PermissionsUpdateConflictException.class,
+                 () -> permissionsService.deleteUser("alice"));
+  }
+
+  private static Optional<ParsedS3ConfigObject<Object>> downloadIfModified(
+      S3ConfigManager s3ConfigManager, String eTag) {
+    return s3ConfigManager.downloadConfigIfModified(eq(PERMISSIONS_KEY), eq(eTag), any(), anyBoolean());
+  }
+
+  // Parses the content with the parser passed, as S3ConfigManager does with the response stream
+  private static Answer<Optional<ParsedS3ConfigObject<?>>> modified(String content, String eTag) {
+    return invocation -> {
+      byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+      ConfigContentParser<?> parser = invocation.getArgument(2);
+      boolean keepContent = invocation.getArgument(3);
+      return Optional.of(new ParsedS3ConfigObject<>(parser.parse(bytes),
+                                                    keepContent ? bytes : null, eTag));
+    };
+  }
+
+  private static S3Configuration s3Config() {
+    S3Configuration config = new S3Configuration();
+    config.setUserPermissionsKey(PERMISSIONS_KEY);
+    return config;
+  }
+
+}
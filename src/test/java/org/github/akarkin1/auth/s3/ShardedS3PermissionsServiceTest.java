@@ -0,0 +1,162 @@
+package org.github.akarkin1.auth.s3;
+
+import org.github.akarkin1.auth.Authorizer;
+import org.github.akarkin1.auth.Permission;
+import org.github.akarkin1.auth.UsersPage;
+import org.github.akarkin1.auth.WhiteListAuthorizer;
+import org.github.akarkin1.config.RevalidatingS3ConfigCache;
+import org.github.akarkin1.config.YamlApplicationConfiguration.AuthConfiguration;
+import org.github.akarkin1.config.YamlApplicationConfiguration.S3Configuration;
+import org.github.akarkin1.s3.FakeS3Client;
+import org.github.akarkin1.s3.S3ConfigManager;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedS3PermissionsServiceTest {
+
+  private static final long REVALIDATE_INTERVAL_MS = 10_000;
+
+  private final FakeS3Client s3Client = new FakeS3Client();
+  private final S3ConfigManager s3ConfigManager = S3ConfigManager.create(s3Client, s3Config());
+  private final AtomicLong clock = new AtomicLong(1_000_000);
+  private final ShardedS3PermissionsService permissionsService = createService();
+
+  @Test
+  void storedUser_isLoadedAlone() {
+    permissionsService.applyChanges(Map.of("alice", Set.of(Permission.RUN_NODES),
+                                           "bob", Set.of(Permission.LIST_NODES)));
+    ShardedS3PermissionsService otherInstance = createService();
+    int getObjectCalls = s3Client.getGetObjectCalls().get();
+
+    assertEquals(List.of(Permission.RUN_NODES), otherInstance.getUserPermissions("alice"));
+    assertEquals(List.of(), otherInstance.getUserPermissions("carol"));
+    assertEquals(getObjectCalls + 2, s3Client.getGetObjectCalls().get());
+  }
+
+  @Test
+  void deletedUser_hasNoPermissions() {
+    permissionsService.applyChanges(Map.of("alice", Set.of(Permission.RUN_NODES)));
+
+    permissionsService.deleteUser("alice");
+
+    assertEquals(List.of(), permissionsService.getUserPermissions("alice"));
+    assertEquals(Map.of(), permissionsService.getUserPermissions());
+  }
+
+  @Test
+  void users_arePagedThrough() {
+    for (int i = 0; i < 5; i++) {
+      permissionsService.applyChanges(Map.of("user" + i, Set.of(Permission.LIST_NODES)));
+    }
+
+    List<String> listedUsers = new ArrayList<>();
+    String startAfter = null;
+    int pages = 0;
+    do {
+      UsersPage page = permissionsService.listUsers(startAfter, 2);
+      listedUsers.addAll(page.users().keySet());
+      startAfter = page.nextStartAfter();
+      pages++;
+    } while (startAfter != null);
+
+    assertEquals(3, pages);
+    assertEquals(Set.of("user0", "user1", "user2", "user3", "user4"), Set.copyOf(listedUsers));
+    assertEquals(5, listedUsers.size());
+  }
+
+  @Test
+  void changeOnAnotherInstance_changesRevisionAfterInterval() {
+    permissionsService.applyChanges(Map.of("alice", Set.of(Permission.RUN_NODES)));
+    Object revision = permissionsService.getPermissionsRevision();
+
+    createService().deleteUser("alice");
+    assertSame(revision, permissionsService.getPermissionsRevision());
+    clock.addAndGet(REVALIDATE_INTERVAL_MS);
+
+    assertNotSame(revision, permissionsService.getPermissionsRevision());
+  }
+
+  @Test
+  void newRevision_isCompiledWithUsersChangedBeforeIt() {
+    AuthConfiguration authConfig = new AuthConfiguration();
+    authConfig.setEnabled(true);
+    Authorizer authorizer = new WhiteListAuthorizer(authConfig, permissionsService);
+    createService().applyChanges(Map.of("alice", Set.of(Permission.RUN_NODES)));
+    authorizer.hasPermission("bob", Permission.RUN_NODES);
+    clock.addAndGet(REVALIDATE_INTERVAL_MS / 2);
+    assertTrue(authorizer.hasPermission("alice", Permission.RUN_NODES));
+
+    // cached later than the manifest, so the user is still fresh when the manifest is not
+    createService().applyChanges(Map.of("alice", Set.of(Permission.LIST_NODES)));
+    clock.addAndGet(REVALIDATE_INTERVAL_MS / 2);
+
+    assertFalse(authorizer.hasPermission("alice", Permission.RUN_NODES));
+    assertTrue(authorizer.hasPermission("alice", Permission.LIST_NODES));
+  }
+
+  @Test
+  void failedManifestBump_leavesChangeUnacknowledged() {
+    FakeS3Client failingS3Client = new FakeS3Client() {
+      @Override
+      public PutObjectResponse putObject(PutObjectRequest request, RequestBody requestBody) {
+        if (request.key().endsWith("manifest.json")) {
+          throw S3Exception.builder().statusCode(500).message("Internal Error").build();
+        }
+        return super.putObject(request, requestBody);
+      }
+    };
+    S3ConfigManager failingConfigManager = S3ConfigManager.create(failingS3Client, s3Config());
+    ShardedS3PermissionsService failingService = new ShardedS3PermissionsService(
+        failingConfigManager, new RevalidatingS3ConfigCache(
+            failingConfigManager, REVALIDATE_INTERVAL_MS, REVALIDATE_INTERVAL_MS, null,
+            Runnable::run, clock::get), "users");
+
+    assertThrows(S3Exception.class, () -> failingService.applyChanges(
+        Map.of("alice", Set.of(Permission.RUN_NODES))));
+    int getObjectCalls = failingS3Client.getGetObjectCalls().get();
+
+    // not served from the cache as if the change had been applied
+    assertEquals(List.of(Permission.RUN_NODES), failingService.getUserPermissions("alice"));
+    assertEquals(getObjectCalls + 1, failingS3Client.getGetObjectCalls().get());
+  }
+
+  @Test
+  void noUsers_firstPageIsEmpty() {
+    UsersPage page = permissionsService.listUsers(null, 10);
+
+    assertEquals(Map.of(), page.users());
+    assertNull(page.nextStartAfter());
+  }
+
+  private ShardedS3PermissionsService createService() {
+    RevalidatingS3ConfigCache configCache = new RevalidatingS3ConfigCache(
+        s3ConfigManager, REVALIDATE_INTERVAL_MS, REVALIDATE_INTERVAL_MS, null, Runnable::run,
+        clock::get);
+    return new ShardedS3PermissionsService(s3ConfigManager, configCache, "users");
+  }
+
+  private static S3Configuration s3Config() {
+    S3Configuration config = new S3Configuration();
+    config.setConfigBucket("bucket");
+    config.setConfigRootDir("config");
+    return config;
+  }
+
+}
@@ -0,0 +1,249 @@
+package org.github.akarkin1.config;
+
+import org.github.akarkin1.config.exception.S3DownloadFailureException;
+import org.github.akarkin1.s3.ConfigContentParser;
+import org.github.akarkin1.s3.ParsedS3ConfigObject;
+import org.github.akarkin1.s3.S3ConfigManager;
+import org.github.akarkin1.s3.S3ConfigObject;
+import org.github.akarkin1.config.ConfigSnapshotStore.SnapshotFile;
+import org.github.akarkin1.config.YamlApplicationConfiguration.S3Configuration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class RevalidatingS3ConfigCacheTest {
+
+  private static final String FILE_NAME = "supported-regions.txt";
+  private static final long TTL_MS = 10_000;
+  private static final long MAX_STALE_MS = 600_000;
+
+  private final S3ConfigManager s3ConfigManager = mock(S3ConfigManager.class);
+  private final AtomicLong clock = new AtomicLong(1_000_000);
+  private final List<Runnable> pendingRefreshes = new ArrayList<>();
+  private final List<String> parsedContents = new ArrayList<>();
+  private final ConfigContentParser<String> parser = content -> {
+    String text = new String(content.readAllBytes(), StandardCharsets.UTF_8);
+    parsedContents.add(text);
+    return text.toUpperCase();
+  };
+  private final RevalidatingS3ConfigCache cache = new RevalidatingS3ConfigCache(
+      s3ConfigManager, TTL_MS, MAX_STALE_MS, null, pendingRefreshes::add, clock::get);
+
+  @Test
+  void freshFile_isServedWithoutS3Calls() {
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified("eu-north-1", "etag-1"));
+
+    assertEquals("EU-NORTH-1", cache.get(FILE_NAME, parser));
+    clock.addAndGet(TTL_MS - 1);
+    assertEquals("EU-NORTH-1", cache.get(FILE_NAME, parser));
+
+    downloadIfModified(verify(s3ConfigManager), null);
+    verifyNoMoreInteractions(s3ConfigManager);
+    assertEquals(new RevalidatingS3ConfigCache.Stats(1, 0, 1, 0), cache.getStats());
+  }
+
+  @Test
+  void unchangedStaleFile_isRevalidatedWithoutParsing() {
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified("eu-north-1", "etag-1"));
+    when(downloadIfModified(s3ConfigManager, "etag-1"))
+        .thenReturn(Optional.empty());
+    cache.get(FILE_NAME, parser);
+
+    clock.addAndGet(TTL_MS);
+    assertEquals("EU-NORTH-1", cache.get(FILE_NAME, parser));
+    runPendingRefreshes();
+    assertEquals("EU-NORTH-1", cache.get(FILE_NAME, parser));
+
+    assertEquals(List.of("eu-north-1"), parsedContents);
+    assertEquals(new RevalidatingS3ConfigCache.Stats(1, 1, 1, 1), cache.getStats());
+  }
+
+  @Test
+  void changedStaleFile_isReplacedAfterRefresh() {
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified("eu-north-1", "etag-1"));
+    when(downloadIfModified(s3ConfigManager, "etag-1"))
+        .thenAnswer(modified("us-east-1", "etag-2"));
+    cache.get(FILE_NAME, parser);
+
+    clock.addAndGet(TTL_MS);
+    assertEquals("EU-NORTH-1", cache.get(FILE_NAME, parser));
+    runPendingRefreshes();
+
+    assertEquals("US-EAST-1", cache.get(FILE_NAME, parser));
+  }
+
+  @Test
+  void fileOlderThanMaxStaleness_isRevalidatedInPlace() {
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified("eu-north-1", "etag-1"));
+    when(downloadIfModified(s3ConfigManager, "etag-1"))
+        .thenAnswer(modified("us-east-1", "etag-2"));
+    cache.get(FILE_NAME, parser);
+
+    clock.addAndGet(MAX_STALE_MS);
+
+    assertEquals("US-EAST-1", cache.get(FILE_NAME, parser));
+    assertEquals(List.of(), pendingRefreshes);
+  }
+
+  @Test
+  void failedRefresh_keepsServingStaleFile() {
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified("eu-north-1", "etag-1"));
+    when(downloadIfModified(s3ConfigManager, "etag-1"))
+        .thenThrow(new S3DownloadFailureException("bucket", FILE_NAME,
+                                                  new IllegalStateException("S3 is down")));
+    cache.get(FILE_NAME, parser);
+
+    clock.addAndGet(TTL_MS);
+    cache.get(FILE_NAME, parser);
+    runPendingRefreshes();
+
+    assertEquals("EU-NORTH-1", cache.get(FILE_NAME, parser));
+    verify(s3ConfigManager, times(2))
+        .downloadConfigIfModified(eq(FILE_NAME), any(), any(), anyBoolean());
+  }
+
+  @Test
+  void uploadedFile_isServedWithoutDownloadingItBack() {
+    when(downloadIfModified(s3ConfigManager, "etag-2"))
+        .thenReturn(Optional.empty());
+
+    cache.put(FILE_NAME, "us-east-1".getBytes(StandardCharsets.UTF_8), "etag-2");
+    assertEquals("US-EAST-1", cache.get(FILE_NAME, parser));
+    clock.addAndGet(MAX_STALE_MS);
+    assertEquals("US-EAST-1", cache.get(FILE_NAME, parser));
+
+    downloadIfModified(verify(s3ConfigManager), "etag-2");
+    verifyNoMoreInteractions(s3ConfigManager);
+  }
+
+  @Test
+  void restoredSnapshot_isServedWithoutDownloading(@TempDir Path snapshotDir) {
+    ConfigSnapshotStore snapshotStore = ConfigSnapshotStore.create(snapshotDir.toString(), "test");
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified("eu-north-1", "etag-1"));
+    when(s3ConfigManager.revalidateConfigs(Map.of(FILE_NAME, "etag-1")))
+        .thenReturn(Map.of(FILE_NAME, Optional.empty()));
+    cacheWithSnapshot(snapshotStore).get(FILE_NAME, parser);
+
+    RevalidatingS3ConfigCache restoredCache = cacheWithSnapshot(snapshotStore);
+    restoredCache.restoreSnapshot();
+    assertEquals("EU-NORTH-1", restoredCache.get(FILE_NAME, parser));
+    runPendingRefreshes();
+
+    downloadIfModified(verify(s3ConfigManager), null);
+    verify(s3ConfigManager).revalidateConfigs(Map.of(FILE_NAME, "etag-1"));
+    verifyNoMoreInteractions(s3ConfigManager);
+    assertEquals(new RevalidatingS3ConfigCache.Stats(1, 0, 0, 1), restoredCache.getStats());
+  }
+
+  @Test
+  void restoredFileChangedInS3_isReplacedAndSaved(@TempDir Path snapshotDir) {
+    ConfigSnapshotStore snapshotStore = ConfigSnapshotStore.create(snapshotDir.toString(), "test");
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified("eu-north-1", "etag-1"));
+    when(s3ConfigManager.revalidateConfigs(Map.of(FILE_NAME, "etag-1")))
+        .thenReturn(Map.of(FILE_NAME, Optional.of(configObject("us-east-1", "etag-2"))));
+    cacheWithSnapshot(snapshotStore).get(FILE_NAME, parser);
+
+    RevalidatingS3ConfigCache restoredCache = cacheWithSnapshot(snapshotStore);
+    restoredCache.restoreSnapshot();
+    runPendingRefreshes();
+
+    assertEquals("US-EAST-1", restoredCache.get(FILE_NAME, parser));
+    assertEquals(List.of(new SnapshotFile(FILE_NAME, "etag-2", "us-east-1")),
+                 snapshotStore.load().orElseThrow().files());
+  }
+
+  @Test
+  void snapshotOlderThanMaxStaleness_isRevalidatedBeforeUse(@TempDir Path snapshotDir) {
+    ConfigSnapshotStore snapshotStore = ConfigSnapshotStore.create(snapshotDir.toString(), "test");
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified("eu-north-1", "etag-1"));
+    when(downloadIfModified(s3ConfigManager, "etag-1"))
+        .thenAnswer(modified("us-east-1", "etag-2"));
+    cacheWithSnapshot(snapshotStore).get(FILE_NAME, parser);
+
+    clock.addAndGet(MAX_STALE_MS);
+    RevalidatingS3ConfigCache restoredCache = cacheWithSnapshot(snapshotStore);
+    restoredCache.restoreSnapshot();
+
+    assertEquals("US-EAST-1", restoredCache.get(FILE_NAME, parser));
+    assertEquals(new RevalidatingS3ConfigCache.Stats(0, 0, 1, 0), restoredCache.getStats());
+  }
+
+  @Test
+  void unavailableSnapshotDir_disablesSnapshots(@TempDir Path tempDir) throws IOException {
+    // e.g. /mnt/efs when the Lambda runs without an EFS mount
+    Path notADirectory = Files.createFile(tempDir.resolve("efs"));
+    S3Configuration config = new S3Configuration();
+    config.setConfigSnapshotDir(notADirectory.resolve("configSnapshot").toString());
+    when(downloadIfModified(s3ConfigManager, null))
+        .thenAnswer(modified("eu-north-1", "etag-1"));
+
+    RevalidatingS3ConfigCache cacheWithoutSnapshot = RevalidatingS3ConfigCache.create(
+        s3ConfigManager, config, "test", TTL_MS, MAX_STALE_MS);
+
+    assertEquals("EU-NORTH-1", cacheWithoutSnapshot.get(FILE_NAME, parser));
+    try (Stream<Path> tempFiles = Files.list(tempDir)) {
+      assertEquals(List.of(notADirectory), tempFiles.toList());
+    }
+  }
+
+  private static Optional<ParsedS3ConfigObject<Object>> downloadIfModified(
+      S3ConfigManager s3ConfigManager, String eTag) {
+    return s3ConfigManager.downloadConfigIfModified(eq(FILE_NAME), eq(eTag), any(), anyBoolean());
+  }
+
+  // Parses the content with the parser passed, as S3ConfigManager does with the response stream
+  private static Answer<Optional<ParsedS3ConfigObject<?>>> modified(String content, String eTag) {
+    return invocation -> {
+      byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+      ConfigContentParser<?> parser = invocation.getArgument(2);
+      boolean keepContent = invocation.getArgument(3);
+      return Optional.of(new ParsedS3ConfigObject<>(parser.parse(bytes),
+                                                    keepContent ? bytes : null, eTag));
+    };
+  }
+
+  private static S3ConfigObject configObject(String content, String eTag) {
+    return new S3ConfigObject(content.getBytes(StandardCharsets.UTF_8), eTag);
+  }
+
+  private RevalidatingS3ConfigCache cacheWithSnapshot(ConfigSnapshotStore snapshotStore) {
+    return new RevalidatingS3ConfigCache(s3ConfigManager, TTL_MS, MAX_STALE_MS, snapshotStore,
+                                         pendingRefreshes::add, clock::get);
+  }
+
+  private void runPendingRefreshes() {
+    List<Runnable> refreshes = new ArrayList<>(pendingRefreshes);
+    pendingRefreshes.clear();
+    refreshes.forEach(Runnable::run);
+  }
+
+}
@@ -0,0 +1,89 @@
+package org.github.akarkin1.config;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaskConfigPreloaderTest {
+
+  private static final List<Region> REGIONS = List.of(Region.EU_NORTH_1, Region.US_EAST_1,
+                                                      Region.AP_SOUTH_1, Region.EU_WEST_1,
+                                                      Region.SA_EAST_1);
+  private static final long TIMEOUT_MS = 300;
+
+  @Test
+  void regions_areLoadedConcurrently() {
+    SlowTaskConfigService configService = new SlowTaskConfigService(100, null);
+
+    long startedAt = System.nanoTime();
+    int preloadedRegions = new TaskConfigPreloader(configService, TIMEOUT_MS).preload();
+
+    assertEquals(REGIONS.size(), preloadedRegions);
+    assertEquals(REGIONS, List.copyOf(configService.loadedRegions()));
+    assertTrue(elapsedMsSince(startedAt) < 100L * REGIONS.size());
+  }
+
+  @Test
+  void failedRegion_isLeftOut() {
+    int preloadedRegions = new TaskConfigPreloader(
+        new SlowTaskConfigService(0, Region.EU_WEST_1), TIMEOUT_MS).preload();
+
+    assertEquals(REGIONS.size() - 1, preloadedRegions);
+  }
+
+  @Test
+  void slowRegions_doNotDelayInitBeyondTimeout() {
+    long startedAt = System.nanoTime();
+    int preloadedRegions = new TaskConfigPreloader(
+        new SlowTaskConfigService(10_000, null), TIMEOUT_MS).preload();
+
+    assertEquals(0, preloadedRegions);
+    assertTrue(elapsedMsSince(startedAt) < 5_000);
+  }
+
+  private static long elapsedMsSince(long startedAt) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+  }
+
+  private record SlowTaskConfigService(long delayMs, Region failingRegion,
+                                       Set<Region> loadedRegions)
+      implements TaskConfigService {
+
+    SlowTaskConfigService(long delayMs, Region failingRegion) {
+      this(delayMs, failingRegion,
+           new ConcurrentSkipListSet<>(Comparator.comparingInt(REGIONS::indexOf)));
+    }
+
+    @Override
+    public List<Region> getSupportedRegions() {
+      return REGIONS;
+    }
+
+    @Override
+    public TaskRuntimeParameters getTaskRuntimeParameters(Region region) {
+      if (region.equals(failingRegion)) {
+        throw new IllegalStateException("Stack outputs are missing");
+      }
+
+      try {
+        TimeUnit.MILLISECONDS.sleep(delayMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      loadedRegions.add(region);
+      return TaskRuntimeParameters.builder()
+          .ecsClusterName("cluster-" + region.id())
+          .build();
+    }
+
+  }
+
+}
@@ -0,0 +1,165 @@
+package org.github.akarkin1.deduplication;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.github.akarkin1.deduplication.BucketedFSUpdateEventsRegistry.BUCKET_PREFIX;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BucketedFSUpdateEventsRegistryTest {
+
+  private static final long MINUTE_MS = 60_000;
+  private static final long TTL_MS = 3 * MINUTE_MS;
+
+  @TempDir
+  Path rootDir;
+
+  private final AtomicLong clock = new AtomicLong(1_000 * MINUTE_MS);
+  private BucketedFSUpdateEventsRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    registry = new BucketedFSUpdateEventsRegistry(TTL_MS, rootDir.toString(), clock::get);
+  }
+
+  @Test
+  void registeredEvent_isWrittenIntoItsIdBucket() {
+    registry.registerEvent(createEvent(1_001));
+
+    assertTrue(Files.exists(rootDir.resolve(BUCKET_PREFIX + 1).resolve("1001")));
+    assertTrue(registry.hasAlreadyProcessed(createEvent(1_001)));
+    assertFalse(registry.hasAlreadyProcessed(createEvent(1_002)));
+  }
+
+  @Test
+  void expiredBucket_isDeletedAsAWhole() throws IOException {
+    registry.registerEvent(createEvent(1));
+    registry.registerEvent(createEvent(2));
+    registry.registerEvent(createEvent(1_001));
+    touch(rootDir.resolve(BUCKET_PREFIX + 0), clock.get());
+    touch(rootDir.resolve(BUCKET_PREFIX + 1), clock.get() + TTL_MS);
+
+    clock.addAndGet(TTL_MS + 1);
+
+    assertEquals(2, registry.deleteExpired(Integer.MAX_VALUE));
+    assertFalse(Files.exists(rootDir.resolve(BUCKET_PREFIX + 0)));
+    assertFalse(registry.hasAlreadyProcessed(createEvent(1)));
+    assertFalse(registry.hasAlreadyProcessed(createEvent(2)));
+    assertTrue(registry.hasAlreadyProcessed(createEvent(1_001)));
+  }
+
+  @Test
+  void expiredBucket_isDeletedInBatches() throws IOException {
+    for (int updateId = 1; updateId <= 5; updateId++) {
+      registry.registerEvent(createEvent(updateId));
+    }
+    touch(rootDir.resolve(BUCKET_PREFIX + 0), clock.get());
+
+    clock.addAndGet(TTL_MS + 1);
+
+    assertEquals(3, registry.deleteExpired(3));
+    assertTrue(Files.exists(rootDir.resolve(BUCKET_PREFIX + 0)));
+    assertEquals(2, registry.deleteExpired(3));
+    assertFalse(Files.exists(rootDir.resolve(BUCKET_PREFIX + 0)));
+  }
+
+  @Test
+  void flatLayoutEvents_areHonoredUntilExpired() throws IOException {
+    Path freshLegacyEvent = Files.createFile(rootDir.resolve("10"));
+    touch(freshLegacyEvent, clock.get());
+    Path staleLegacyEvent = Files.createFile(rootDir.resolve("11"));
+    touch(staleLegacyEvent, clock.get() - 2 * TTL_MS);
+
+    assertTrue(registry.hasAlreadyProcessed(createEvent(10)));
+    assertFalse(registry.tryRegister(createEvent(10)));
+
+    registry.deleteExpired(Integer.MAX_VALUE);
+
+    assertFalse(Files.exists(staleLegacyEvent));
+    assertTrue(registry.hasAlreadyProcessed(createEvent(10)));
+
+    clock.addAndGet(TTL_MS + 1);
+    registry.deleteExpired(Integer.MAX_VALUE);
+
+    assertFalse(Files.exists(freshLegacyEvent));
+  }
+
+  @Test
+  void tryRegister_claimDoesNotDependOnTheClock() {
+    BucketedFSUpdateEventsRegistry nextMinuteRegistry = new BucketedFSUpdateEventsRegistry(
+        TTL_MS, rootDir.toString(), () -> clock.get() + MINUTE_MS);
+
+    assertTrue(registry.tryRegister(createEvent(1)));
+    assertFalse(nextMinuteRegistry.tryRegister(createEvent(1)));
+    assertTrue(nextMinuteRegistry.tryRegister(createEvent(2)));
+    assertFalse(registry.tryRegister(createEvent(2)));
+  }
+
+  @Test
+  void tryRegister_concurrentInstancesClaimEventOnce() throws Exception {
+    AtomicLong claimants = new AtomicLong();
+    // half of the claimants see the next minute already
+    long winners = countWinners(32, () -> {
+      long clockShift = claimants.incrementAndGet() % 2 * MINUTE_MS;
+      return new BucketedFSUpdateEventsRegistry(TTL_MS, rootDir.toString(),
+                                                () -> clock.get() + clockShift)
+          .tryRegister(createEvent(42));
+    });
+
+    assertEquals(1, winners);
+  }
+
+  private static void touch(Path path, long lastModifiedMs) throws IOException {
+    Files.setLastModifiedTime(path, FileTime.fromMillis(lastModifiedMs));
+  }
+
+  private static Update createEvent(int updateId) {
+    Update event = new Update();
+    event.setUpdateId(updateId);
+    return event;
+  }
+
+  private static long countWinners(int threads, Callable<Boolean> claim) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<Boolean>> claims = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        claims.add(executor.submit(() -> {
+          start.await();
+          return claim.call();
+        }));
+      }
+      start.countDown();
+
+      long winners = 0;
+      for (Future<Boolean> result : claims) {
+        if (result.get(10, TimeUnit.SECONDS)) {
+          winners++;
+        }
+      }
+      return winners;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
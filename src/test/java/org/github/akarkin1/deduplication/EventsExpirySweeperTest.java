@@ -0,0 +1,110 @@
+package org.github.akarkin1.deduplication;
+
+import org.github.akarkin1.deduplication.EventsExpirySweeper.SweepReport;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventsExpirySweeperTest {
+
+  private static final long INTERVAL_MS = 60_000;
+  private static final int BATCH_SIZE = 100;
+
+  private final AtomicLong clock = new AtomicLong(1_000_000);
+  private final RecordingRegistry registry = new RecordingRegistry();
+  private final EventsExpirySweeper sweeper = new EventsExpirySweeper(
+      registry, INTERVAL_MS, BATCH_SIZE, clock::get);
+
+  @Test
+  void sweep_reportsDeletedEvents() {
+    registry.expiredEvents = 42;
+
+    Optional<SweepReport> report = sweeper.sweepIfDue();
+
+    assertTrue(report.isPresent());
+    assertEquals(42, report.get().deletedEvents());
+    assertEquals(List.of(BATCH_SIZE), registry.requestedBatches);
+  }
+
+  @Test
+  void sweep_runsAtMostOncePerInterval() {
+    sweeper.sweepIfDue();
+    clock.addAndGet(INTERVAL_MS - 1);
+
+    assertTrue(sweeper.sweepIfDue().isEmpty());
+
+    clock.addAndGet(1);
+
+    assertTrue(sweeper.sweepIfDue().isPresent());
+    assertEquals(2, registry.requestedBatches.size());
+  }
+
+  @Test
+  void backlog_isDeletedInBatchesAcrossSweeps() {
+    registry.expiredEvents = 250;
+
+    int deletedEvents = 0;
+    for (int sweep = 0; sweep < 3; sweep++) {
+      deletedEvents += sweeper.sweepIfDue().orElseThrow().deletedEvents();
+      clock.addAndGet(INTERVAL_MS);
+    }
+
+    assertEquals(250, deletedEvents);
+    assertEquals(List.of(BATCH_SIZE, BATCH_SIZE, BATCH_SIZE), registry.requestedBatches);
+  }
+
+  @Test
+  void failedSweep_isNotPropagated() {
+    registry.failure = new UncheckedIOException(new IOException("Stale file handle"));
+
+    assertTrue(sweeper.sweepIfDue().isEmpty());
+
+    registry.failure = null;
+    clock.addAndGet(INTERVAL_MS);
+
+    assertTrue(sweeper.sweepIfDue().isPresent());
+  }
+
+  private static class RecordingRegistry implements ExpiringUpdateEventsRegistry {
+
+    private final List<Integer> requestedBatches = new ArrayList<>();
+    private int expiredEvents;
+    private RuntimeException failure;
+
+    @Override
+    public int deleteExpired(int maxDeletions) {
+      requestedBatches.add(maxDeletions);
+      if (failure != null) {
+        throw failure;
+      }
+      int deleted = Math.min(expiredEvents, maxDeletions);
+      expiredEvents -= deleted;
+      return deleted;
+    }
+
+    @Override
+    public boolean hasAlreadyProcessed(Update update) {
+      return false;
+    }
+
+    @Override
+    public void registerEvent(Update update) {
+    }
+
+    @Override
+    public boolean tryRegister(Update update) {
+      return true;
+    }
+
+  }
+
+}
@@ -5,12 +5,22 @@ import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -66,7 +76,7 @@ class FSUpdateEventsRegistryTest {
   }
 
   @Test
-  void registerEvent_expiredFilesAreCleanedUp() throws InterruptedException {
+  void deleteExpired_expiredFilesAreCleanedUp() throws InterruptedException {
     val registry = new FSUpdateEventsRegistry(TINY_TTL, ROOT_DIR);
     final var event1 = createEvent(EVENT_ID_1);
 
@@ -77,8 +87,69 @@ class FSUpdateEventsRegistryTest {
     final var event2 = createEvent(EVENT_ID_2);
     registry.registerEvent(event2);
 
+    assertEquals(1, registry.deleteExpired(Integer.MAX_VALUE));
     assertFalse(Files.exists(Paths.get(ROOT_DIR, String.valueOf(event1.getUpdateId()))));
     assertFalse(Files.exists(Paths.get(ROOT_DIR, String.valueOf(event2.getUpdateId()))));
   }
 
-}
\ No newline at end of file
+  @Test
+  void deleteExpired_deletesNoMoreThanBatch() throws InterruptedException {
+    val registry = new FSUpdateEventsRegistry(TINY_TTL, ROOT_DIR);
+    for (int updateId = 1; updateId <= 5; updateId++) {
+      registry.registerEvent(createEvent(updateId));
+    }
+
+    Thread.sleep(400);
+
+    assertEquals(3, registry.deleteExpired(3));
+    assertEquals(2, registry.deleteExpired(3));
+    assertEquals(0, registry.deleteExpired(3));
+  }
+
+  @Test
+  void tryRegister_onlyFirstAttemptWins() {
+    val registry = new FSUpdateEventsRegistry(DEFAULT_TTL, ROOT_DIR);
+    final var event = createEvent(EVENT_ID_1);
+
+    assertTrue(registry.tryRegister(event));
+    assertFalse(registry.tryRegister(event));
+    assertTrue(registry.hasAlreadyProcessed(event));
+  }
+
+  @Test
+  void tryRegister_concurrentInstancesClaimEventOnce(@TempDir Path rootDir) throws Exception {
+    final var event = createEvent(EVENT_ID_1);
+
+    long winners = countWinners(32, () -> new FSUpdateEventsRegistry(DEFAULT_TTL,
+                                                                    rootDir.toString())
+        .tryRegister(event));
+
+    assertEquals(1, winners);
+  }
+
+  private static long countWinners(int threads, Callable<Boolean> claim) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<Boolean>> claims = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        claims.add(executor.submit(() -> {
+          start.await();
+          return claim.call();
+        }));
+      }
+      start.countDown();
+
+      long winners = 0;
+      for (Future<Boolean> result : claims) {
+        if (result.get(10, TimeUnit.SECONDS)) {
+          winners++;
+        }
+      }
+      return winners;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
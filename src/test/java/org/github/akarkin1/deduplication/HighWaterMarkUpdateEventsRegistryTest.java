@@ -0,0 +1,142 @@
+package org.github.akarkin1.deduplication;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HighWaterMarkUpdateEventsRegistryTest {
+
+  private static final int WINDOW_SIZE = 128;
+  private static final int FIRST_UPDATE_ID = 900_000_000;
+
+  @TempDir
+  Path rootDir;
+
+  private HighWaterMarkUpdateEventsRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    registry = new HighWaterMarkUpdateEventsRegistry(rootDir.toString(), WINDOW_SIZE);
+  }
+
+  @Test
+  void retryOnWarmInstance_isAnsweredFromMemory() {
+    assertTrue(registry.tryRegister(createEvent(FIRST_UPDATE_ID)));
+
+    assertFalse(registry.tryRegister(createEvent(FIRST_UPDATE_ID)));
+    assertTrue(registry.hasAlreadyProcessed(createEvent(FIRST_UPDATE_ID)));
+
+    assertEquals(new HighWaterMarkUpdateEventsRegistry.Stats(2, 1), registry.getStats());
+  }
+
+  @Test
+  void eventRegisteredByAnotherInstance_isDetected() {
+    HighWaterMarkUpdateEventsRegistry anotherInstance = new HighWaterMarkUpdateEventsRegistry(
+        rootDir.toString(), WINDOW_SIZE);
+
+    assertTrue(anotherInstance.tryRegister(createEvent(FIRST_UPDATE_ID)));
+
+    assertTrue(registry.hasAlreadyProcessed(createEvent(FIRST_UPDATE_ID)));
+    assertFalse(registry.tryRegister(createEvent(FIRST_UPDATE_ID)));
+  }
+
+  @Test
+  void outOfOrderEventsWithinWindow_areRegisteredOnce() {
+    assertTrue(registry.tryRegister(createEvent(FIRST_UPDATE_ID + 10)));
+    assertTrue(registry.tryRegister(createEvent(FIRST_UPDATE_ID + 3)));
+
+    assertFalse(registry.tryRegister(createEvent(FIRST_UPDATE_ID + 3)));
+    assertFalse(registry.hasAlreadyProcessed(createEvent(FIRST_UPDATE_ID + 4)));
+  }
+
+  @Test
+  void eventsBelowWindow_areDeemedProcessed() {
+    assertTrue(registry.tryRegister(createEvent(FIRST_UPDATE_ID + WINDOW_SIZE)));
+
+    assertFalse(registry.tryRegister(createEvent(FIRST_UPDATE_ID)));
+    assertTrue(registry.tryRegister(createEvent(FIRST_UPDATE_ID + 1)));
+  }
+
+  @Test
+  void restartedSequence_startsNewWindow() {
+    int restartedUpdateId = 1_000;
+    assertTrue(registry.tryRegister(createEvent(FIRST_UPDATE_ID)));
+
+    assertFalse(registry.hasAlreadyProcessed(createEvent(restartedUpdateId)));
+    assertTrue(registry.tryRegister(createEvent(restartedUpdateId)));
+    assertTrue(registry.tryRegister(createEvent(restartedUpdateId + 1)));
+
+    HighWaterMarkUpdateEventsRegistry anotherInstance = new HighWaterMarkUpdateEventsRegistry(
+        rootDir.toString(), WINDOW_SIZE);
+    assertFalse(anotherInstance.tryRegister(createEvent(restartedUpdateId)));
+    assertTrue(anotherInstance.tryRegister(createEvent(restartedUpdateId + 2)));
+  }
+
+  @Test
+  void stateOfAnotherWindowSize_treatsEverythingBelowMarkAsProcessed() throws IOException {
+    new HighWaterMarkUpdateEventsRegistry(rootDir.toString(), WINDOW_SIZE * 2)
+        .tryRegister(createEvent(FIRST_UPDATE_ID));
+
+    assertTrue(registry.hasAlreadyProcessed(createEvent(FIRST_UPDATE_ID - 1)));
+    assertTrue(registry.tryRegister(createEvent(FIRST_UPDATE_ID + 1)));
+    assertEquals(Long.BYTES * (1 + WINDOW_SIZE / Long.SIZE),
+                 Files.size(rootDir.resolve(HighWaterMarkUpdateEventsRegistry.STATE_FILE_NAME)));
+  }
+
+  @Test
+  void concurrentInstances_claimEachEventOnce() throws Exception {
+    int threads = 16;
+    int events = 50;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<Integer>> claims = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        claims.add(executor.submit(() -> {
+          HighWaterMarkUpdateEventsRegistry instance = new HighWaterMarkUpdateEventsRegistry(
+              rootDir.toString(), WINDOW_SIZE);
+          start.await();
+          int won = 0;
+          for (int id = FIRST_UPDATE_ID; id < FIRST_UPDATE_ID + events; id++) {
+            if (instance.tryRegister(createEvent(id))) {
+              won++;
+            }
+          }
+          return won;
+        }));
+      }
+      start.countDown();
+
+      int winners = 0;
+      for (Future<Integer> claim : claims) {
+        winners += claim.get(10, TimeUnit.SECONDS);
+      }
+      assertEquals(events, winners);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Update createEvent(int updateId) {
+    Update event = new Update();
+    event.setUpdateId(updateId);
+    return event;
+  }
+
+}
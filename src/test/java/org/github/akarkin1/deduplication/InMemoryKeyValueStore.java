@@ -0,0 +1,52 @@
+package org.github.akarkin1.deduplication;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// Behaves like a DynamoDB table with a TTL attribute: a put conditional on the item being absent
+// or expired, and expired items are not returned.
+class InMemoryKeyValueStore implements KeyValueStore {
+
+  private final Map<String, Instant> expiresAtByKey = new ConcurrentHashMap<>();
+  private final Supplier<Instant> clock;
+  private volatile RuntimeException failure;
+
+  InMemoryKeyValueStore(Supplier<Instant> clock) {
+    this.clock = clock;
+  }
+
+  void failWith(RuntimeException failure) {
+    this.failure = failure;
+  }
+
+  @Override
+  public boolean putIfAbsent(String key, Instant expiresAt) {
+    throwIfFailing();
+    AtomicBoolean stored = new AtomicBoolean();
+    expiresAtByKey.compute(key, (k, current) -> {
+      if (current != null && current.isAfter(clock.get())) {
+        return current;
+      }
+      stored.set(true);
+      return expiresAt;
+    });
+    return stored.get();
+  }
+
+  @Override
+  public boolean contains(String key) {
+    throwIfFailing();
+    Instant expiresAt = expiresAtByKey.get(key);
+    return expiresAt != null && expiresAt.isAfter(clock.get());
+  }
+
+  private void throwIfFailing() {
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+}
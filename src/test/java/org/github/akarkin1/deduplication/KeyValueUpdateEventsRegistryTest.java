@@ -0,0 +1,90 @@
+package org.github.akarkin1.deduplication;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyValueUpdateEventsRegistryTest {
+
+  private static final long TTL_MS = 60_000;
+
+  private final AtomicLong clock = new AtomicLong(1_000_000);
+  private final InMemoryKeyValueStore store = new InMemoryKeyValueStore(
+      () -> Instant.ofEpochMilli(clock.get()));
+  private final KeyValueUpdateEventsRegistry registry = new KeyValueUpdateEventsRegistry(
+      store, TTL_MS, clock::get);
+
+  @Test
+  void event_isRegisteredOnce() {
+    assertFalse(registry.hasAlreadyProcessed(createEvent(1)));
+
+    assertTrue(registry.tryRegister(createEvent(1)));
+    assertFalse(registry.tryRegister(createEvent(1)));
+    assertTrue(registry.hasAlreadyProcessed(createEvent(1)));
+  }
+
+  @Test
+  void event_expiresByTtl() {
+    registry.registerEvent(createEvent(1));
+
+    clock.addAndGet(TTL_MS);
+
+    assertFalse(registry.hasAlreadyProcessed(createEvent(1)));
+    assertTrue(registry.tryRegister(createEvent(1)));
+  }
+
+  @Test
+  void unavailableStore_doesNotBlockUpdates() {
+    store.failWith(new IllegalStateException("Store is not available"));
+
+    assertTrue(registry.tryRegister(createEvent(1)));
+    assertFalse(registry.hasAlreadyProcessed(createEvent(1)));
+  }
+
+  @Test
+  void concurrentInstances_claimEventOnce() throws Exception {
+    int threads = 32;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<Boolean>> claims = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        claims.add(executor.submit(() -> {
+          KeyValueUpdateEventsRegistry instance = new KeyValueUpdateEventsRegistry(
+              store, TTL_MS, clock::get);
+          start.await();
+          return instance.tryRegister(createEvent(42));
+        }));
+      }
+      start.countDown();
+
+      int winners = 0;
+      for (Future<Boolean> claim : claims) {
+        winners += claim.get(10, TimeUnit.SECONDS) ? 1 : 0;
+      }
+      assertEquals(1, winners);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Update createEvent(int updateId) {
+    Update event = new Update();
+    event.setUpdateId(updateId);
+    return event;
+  }
+
+}
@@ -0,0 +1,137 @@
+package org.github.akarkin1.deduplication;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.github.akarkin1.deduplication.RingLogUpdateEventsRegistry.HEADER_SIZE;
+import static org.github.akarkin1.deduplication.RingLogUpdateEventsRegistry.RING_FILE_NAME;
+import static org.github.akarkin1.deduplication.RingLogUpdateEventsRegistry.SLOT_SIZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingLogUpdateEventsRegistryTest {
+
+  private static final long TTL_MS = 60_000;
+  private static final int RING_SIZE = 64;
+
+  @TempDir
+  Path rootDir;
+
+  private final AtomicLong clock = new AtomicLong(1_000_000);
+  private RingLogUpdateEventsRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    registry = newRegistry(RING_SIZE);
+  }
+
+  @Test
+  void registeredEvent_isDetectedByAnotherInstance() throws IOException {
+    assertFalse(registry.hasAlreadyProcessed(createEvent(1)));
+    assertTrue(registry.tryRegister(createEvent(1)));
+    assertFalse(registry.tryRegister(createEvent(1)));
+
+    assertTrue(newRegistry(RING_SIZE).hasAlreadyProcessed(createEvent(1)));
+    assertEquals(HEADER_SIZE + RING_SIZE * SLOT_SIZE, Files.size(rootDir.resolve(RING_FILE_NAME)));
+  }
+
+  @Test
+  void entryOlderThanTtl_isExpired() {
+    registry.registerEvent(createEvent(1));
+
+    clock.addAndGet(TTL_MS + 1);
+
+    assertFalse(registry.hasAlreadyProcessed(createEvent(1)));
+    assertTrue(registry.tryRegister(createEvent(1)));
+  }
+
+  @Test
+  void entryIsOverwrittenByUpdateOfSameSlot() {
+    registry.registerEvent(createEvent(1));
+    registry.registerEvent(createEvent(1 + RING_SIZE));
+
+    assertFalse(registry.hasAlreadyProcessed(createEvent(1)));
+    assertTrue(registry.hasAlreadyProcessed(createEvent(1 + RING_SIZE)));
+  }
+
+  @Test
+  void ringOfAnotherSize_isAdopted() throws IOException {
+    registry.registerEvent(createEvent(1));
+
+    RingLogUpdateEventsRegistry differentlyConfigured = newRegistry(RING_SIZE * 2);
+
+    assertTrue(differentlyConfigured.hasAlreadyProcessed(createEvent(1)));
+    assertTrue(differentlyConfigured.tryRegister(createEvent(1 + RING_SIZE)));
+    assertFalse(registry.hasAlreadyProcessed(createEvent(1)));
+    assertEquals(HEADER_SIZE + RING_SIZE * SLOT_SIZE, Files.size(rootDir.resolve(RING_FILE_NAME)));
+  }
+
+  @Test
+  void corruptedRing_isReinitialized() throws IOException {
+    Files.write(rootDir.resolve(RING_FILE_NAME), new byte[HEADER_SIZE + 3]);
+
+    assertTrue(registry.tryRegister(createEvent(1)));
+
+    assertTrue(newRegistry(RING_SIZE * 2).hasAlreadyProcessed(createEvent(1)));
+    assertEquals(HEADER_SIZE + RING_SIZE * SLOT_SIZE, Files.size(rootDir.resolve(RING_FILE_NAME)));
+  }
+
+  @Test
+  void concurrentInstances_claimEachEventOnce() throws Exception {
+    int threads = 16;
+    int events = RING_SIZE;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<Integer>> claims = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        claims.add(executor.submit(() -> {
+          RingLogUpdateEventsRegistry instance = newRegistry(RING_SIZE);
+          start.await();
+          int won = 0;
+          for (int id = 1; id <= events; id++) {
+            if (instance.tryRegister(createEvent(id))) {
+              won++;
+            }
+          }
+          return won;
+        }));
+      }
+      start.countDown();
+
+      int winners = 0;
+      for (Future<Integer> claim : claims) {
+        winners += claim.get(10, TimeUnit.SECONDS);
+      }
+      assertEquals(events, winners);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private RingLogUpdateEventsRegistry newRegistry(int ringSize) {
+    return new RingLogUpdateEventsRegistry(TTL_MS, rootDir.toString(), ringSize, clock::get);
+  }
+
+  private static Update createEvent(int updateId) {
+    Update event = new Update();
+    event.setUpdateId(updateId);
+    return event;
+  }
+
+}
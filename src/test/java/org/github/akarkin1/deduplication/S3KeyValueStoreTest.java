@@ -0,0 +1,124 @@
+package org.github.akarkin1.deduplication;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class S3KeyValueStoreTest {
+
+  private static final Instant EXPIRES_AT = Instant.parse("2024-10-01T10:00:00Z");
+
+  private final S3Client s3Client = mock(S3Client.class);
+  private final AtomicLong clock = new AtomicLong(EXPIRES_AT.toEpochMilli() - 1);
+  private final S3KeyValueStore store = new S3KeyValueStore(s3Client, "bucket", "event-ids",
+                                                            clock::get);
+
+  @Test
+  void putIfAbsent_createsObjectOnlyIfNoneExists() {
+    when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+        .thenReturn(PutObjectResponse.builder().build());
+
+    assertTrue(store.putIfAbsent("update-1", EXPIRES_AT));
+
+    ArgumentCaptor<PutObjectRequest> request = ArgumentCaptor.forClass(PutObjectRequest.class);
+    verify(s3Client).putObject(request.capture(), any(RequestBody.class));
+    assertEquals("event-ids/update-1", request.getValue().key());
+    assertEquals("*", request.getValue().ifNoneMatch());
+    assertEquals(EXPIRES_AT.toString(),
+                 request.getValue().metadata().get(S3KeyValueStore.EXPIRES_AT_METADATA));
+    assertNull(request.getValue().expires());
+  }
+
+  @Test
+  void putIfAbsent_liveObject() {
+    when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+        .thenThrow(s3Exception(412));
+    when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(existing("etag-1"));
+
+    assertFalse(store.putIfAbsent("update-1", EXPIRES_AT));
+    assertTrue(store.contains("update-1"));
+  }
+
+  @Test
+  void putIfAbsent_expiredObjectIsTakenOverByETag() {
+    when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+        .thenThrow(s3Exception(412))
+        .thenReturn(PutObjectResponse.builder().build());
+    when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(existing("etag-1"));
+    clock.set(EXPIRES_AT.toEpochMilli());
+
+    assertFalse(store.contains("update-1"));
+    assertTrue(store.putIfAbsent("update-1", EXPIRES_AT.plusSeconds(60)));
+
+    ArgumentCaptor<PutObjectRequest> requests = ArgumentCaptor.forClass(PutObjectRequest.class);
+    verify(s3Client, times(2)).putObject(requests.capture(), any(RequestBody.class));
+    PutObjectRequest takeover = requests.getAllValues().get(1);
+    assertNull(takeover.ifNoneMatch());
+    assertEquals(List.of("etag-1"),
+                 takeover.overrideConfiguration().orElseThrow().headers().get("If-Match"));
+  }
+
+  @Test
+  void putIfAbsent_expiredObjectTakenOverConcurrently() {
+    when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+        .thenThrow(s3Exception(412));
+    when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(existing("etag-1"));
+    clock.set(EXPIRES_AT.toEpochMilli());
+
+    assertFalse(store.putIfAbsent("update-1", EXPIRES_AT.plusSeconds(60)));
+  }
+
+  @Test
+  void contains_missingObject() {
+    when(s3Client.headObject(any(HeadObjectRequest.class)))
+        .thenThrow(NoSuchKeyException.builder().statusCode(404).build());
+
+    assertFalse(store.contains("update-1"));
+  }
+
+  @Test
+  void putIfAbsent_otherFailuresArePropagated() {
+    when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+        .thenThrow(s3Exception(403));
+
+    assertThrows(S3Exception.class, () -> store.putIfAbsent("update-1", EXPIRES_AT));
+  }
+
+  private static HeadObjectResponse existing(String eTag) {
+    return HeadObjectResponse.builder()
+        .eTag(eTag)
+        .metadata(Map.of(S3KeyValueStore.EXPIRES_AT_METADATA, EXPIRES_AT.toString()))
+        .build();
+  }
+
+  private static S3Exception s3Exception(int statusCode) {
+    return (S3Exception) S3Exception.builder()
+        .statusCode(statusCode)
+        .message("Status " + statusCode)
+        .build();
+  }
+
+}
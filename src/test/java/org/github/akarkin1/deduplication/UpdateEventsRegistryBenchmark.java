@@ -0,0 +1,73 @@
+package org.github.akarkin1.deduplication;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+// Not picked up by the default surefire includes, run it explicitly with
+// mvn test -Dtest=UpdateEventsRegistryBenchmark [-Dbenchmark.dir=/mnt/efs/benchmark]
+// (the temp directory is a local disk, point it to EFS to see the latencies the Lambda gets).
+class UpdateEventsRegistryBenchmark {
+
+  private static final long TTL_MS = 360_000;
+  private static final int WINDOW_SIZE = 4096;
+  private static final int RING_SIZE = 65536;
+  private static final int WARM_UP_EVENTS = 200;
+  private static final int EVENTS = 2_000;
+  // every n-th update is delivered twice, as when the webhook call is retried
+  private static final int RETRY_EVERY = 10;
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void compareRegistries() throws IOException {
+    Path benchmarkDir = Path.of(System.getProperty("benchmark.dir", tempDir.toString()));
+    Map<String, Function<String, UpdateEventsRegistry>> registries = new LinkedHashMap<>();
+    registries.put("flat files", rootDir -> new FSUpdateEventsRegistry(TTL_MS, rootDir));
+    registries.put("id buckets",
+                   rootDir -> new BucketedFSUpdateEventsRegistry(TTL_MS, rootDir));
+    registries.put("high-water mark",
+                   rootDir -> new HighWaterMarkUpdateEventsRegistry(rootDir, WINDOW_SIZE));
+    registries.put("ring log",
+                   rootDir -> new RingLogUpdateEventsRegistry(TTL_MS, rootDir, RING_SIZE));
+
+    for (Map.Entry<String, Function<String, UpdateEventsRegistry>> entry : registries.entrySet()) {
+      Path rootDir = Files.createTempDirectory(benchmarkDir, "registry");
+      UpdateEventsRegistry registry = entry.getValue().apply(rootDir.toString());
+
+      runEvents(registry, 1, WARM_UP_EVENTS);
+      long startedAt = System.nanoTime();
+      int duplicates = runEvents(registry, WARM_UP_EVENTS + 1, EVENTS);
+      long elapsedNs = System.nanoTime() - startedAt;
+
+      System.out.printf("%-16s %8.1f us/event, %d duplicates skipped%n", entry.getKey(),
+                        elapsedNs / 1_000.0 / (EVENTS + EVENTS / RETRY_EVERY), duplicates);
+    }
+  }
+
+  private static int runEvents(UpdateEventsRegistry registry, int firstId, int count) {
+    int duplicates = 0;
+    for (int id = firstId; id < firstId + count; id++) {
+      registry.tryRegister(createEvent(id));
+      if (id % RETRY_EVERY == 0 && !registry.tryRegister(createEvent(id))) {
+        duplicates++;
+      }
+    }
+    return duplicates;
+  }
+
+  private static Update createEvent(int updateId) {
+    Update event = new Update();
+    event.setUpdateId(updateId);
+    return event;
+  }
+
+}
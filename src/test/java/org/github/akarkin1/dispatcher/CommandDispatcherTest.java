@@ -0,0 +1,81 @@
+package org.github.akarkin1.dispatcher;
+
+import org.github.akarkin1.auth.Authorizer;
+import org.github.akarkin1.auth.Permission;
+import org.github.akarkin1.dispatcher.command.VersionCommand;
+import org.github.akarkin1.tg.BotCommunicator;
+import org.github.akarkin1.tg.TgRequestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class CommandDispatcherTest {
+
+  private final CountingAuthorizer authorizer = new CountingAuthorizer();
+  private final CommandDispatcher dispatcher = new CommandDispatcher(mock(BotCommunicator.class),
+                                                                     authorizer);
+
+  @BeforeEach
+  void initContext() {
+    dispatcher.registerCommand("/version", new VersionCommand());
+    User user = new User(1L, "Alice", false);
+    user.setUserName("alice");
+    Message message = new Message();
+    message.setFrom(user);
+    message.setChat(new Chat(1L, "private"));
+    Update update = new Update();
+    update.setMessage(message);
+    TgRequestContext.initContext(update);
+  }
+
+  @Test
+  void supportedCommands_areListedOncePerPermissionsVersion() {
+    String supportedCommands = dispatcher.getSupportedCommands();
+    int checks = authorizer.checks.get();
+
+    assertEquals(supportedCommands, dispatcher.getSupportedCommands());
+    assertEquals(checks, authorizer.checks.get());
+  }
+
+  @Test
+  void changedPermissions_relistSupportedCommands() {
+    assertFalse(dispatcher.getSupportedCommands().contains("/version"));
+
+    authorizer.rootAccess = true;
+    authorizer.version.incrementAndGet();
+
+    assertTrue(dispatcher.getSupportedCommands().contains("/version"));
+  }
+
+  private static class CountingAuthorizer implements Authorizer {
+
+    private final AtomicInteger checks = new AtomicInteger();
+    private final AtomicLong version = new AtomicLong(1);
+    private volatile boolean rootAccess;
+
+    @Override
+    public boolean hasPermission(String tgUsername, Permission permission) {
+      checks.incrementAndGet();
+      return rootAccess || permission != Permission.ROOT_ACCESS;
+    }
+
+    @Override
+    public OptionalLong getPermissionsVersion() {
+      return OptionalLong.of(version.get());
+    }
+
+  }
+
+}
@@ -0,0 +1,73 @@
+package org.github.akarkin1.ec2;
+
+import lombok.Getter;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeNetworkInterfacesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeNetworkInterfacesResponse;
+import software.amazon.awssdk.services.ec2.model.Filter;
+import software.amazon.awssdk.services.ec2.model.NetworkInterface;
+import software.amazon.awssdk.services.ec2.model.NetworkInterfaceAssociation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+class FakeEc2Client implements Ec2Client {
+
+  private static final int MAX_FILTER_VALUES = 200;
+
+  // an ENI mapped to an empty string has no public IP assigned yet
+  private final Map<String, String> publicIpByNetworkInterface = new ConcurrentHashMap<>();
+  @Getter
+  private final List<Integer> requestedChunkSizes = new CopyOnWriteArrayList<>();
+
+  void addNetworkInterface(String networkInterfaceId, String publicIp) {
+    publicIpByNetworkInterface.put(networkInterfaceId, publicIp == null ? "" : publicIp);
+  }
+
+  @Override
+  public DescribeNetworkInterfacesResponse describeNetworkInterfaces(
+      DescribeNetworkInterfacesRequest request) {
+    List<String> requestedIds = request.filters()
+        .stream()
+        .filter(filter -> "network-interface-id".equals(filter.name()))
+        .map(Filter::values)
+        .findFirst()
+        .orElse(List.of());
+    if (requestedIds.size() > MAX_FILTER_VALUES) {
+      throw new IllegalArgumentException("Too many filter values: " + requestedIds.size());
+    }
+
+    requestedChunkSizes.add(requestedIds.size());
+    return DescribeNetworkInterfacesResponse.builder()
+        .networkInterfaces(requestedIds.stream()
+                               .filter(publicIpByNetworkInterface::containsKey)
+                               .map(this::toNetworkInterface)
+                               .toList())
+        .build();
+  }
+
+  private NetworkInterface toNetworkInterface(String networkInterfaceId) {
+    String publicIp = publicIpByNetworkInterface.get(networkInterfaceId);
+    NetworkInterface.Builder networkInterface = NetworkInterface.builder()
+        .networkInterfaceId(networkInterfaceId);
+    if (!publicIp.isEmpty()) {
+      networkInterface.association(NetworkInterfaceAssociation.builder()
+                                       .publicIp(publicIp)
+                                       .build());
+    }
+
+    return networkInterface.build();
+  }
+
+  @Override
+  public String serviceName() {
+    return SERVICE_NAME;
+  }
+
+  @Override
+  public void close() {
+  }
+
+}
@@ -0,0 +1,98 @@
+package org.github.akarkin1.ec2;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PublicIpResolverTest {
+
+  private static final String REGION = "eu-north-1";
+  private static final long TTL_MS = 1_000;
+
+  private final FakeEc2Client ec2Client = new FakeEc2Client();
+  private final AtomicLong now = new AtomicLong(100_000);
+  private PublicIpResolver resolver;
+
+  @BeforeEach
+  void setUp() {
+    Ec2ClientPool ec2ClientPool = new Ec2ClientPool(new Ec2ClientProvider() {
+      @Override
+      public Ec2Client getForRegion(String regionName) {
+        return ec2Client;
+      }
+
+      @Override
+      public Ec2Client getForGlobal() {
+        return ec2Client;
+      }
+    });
+    resolver = new PublicIpResolver(ec2ClientPool, TTL_MS, now::get);
+  }
+
+  @Test
+  void manyInterfaces_describedInChunksOfTwoHundred() {
+    List<String> ids = IntStream.range(0, 450).mapToObj(i -> "eni-" + i).toList();
+    ids.forEach(id -> ec2Client.addNetworkInterface(id, "10.0.0." + id.hashCode()));
+
+    Map<String, String> publicIps = resolver.resolvePublicIps(REGION, ids);
+
+    assertEquals(450, publicIps.size());
+    assertEquals(List.of(200, 200, 50), ec2Client.getRequestedChunkSizes());
+  }
+
+  @Test
+  void duplicateIds_describedOnce() {
+    ec2Client.addNetworkInterface("eni-1", "1.1.1.1");
+
+    Map<String, String> publicIps = resolver.resolvePublicIps(REGION,
+                                                              List.of("eni-1", "eni-1"));
+
+    assertEquals(Map.of("eni-1", "1.1.1.1"), publicIps);
+    assertEquals(List.of(1), ec2Client.getRequestedChunkSizes());
+  }
+
+  @Test
+  void resolvedIps_servedFromCacheWithinTtl() {
+    ec2Client.addNetworkInterface("eni-1", "1.1.1.1");
+    ec2Client.addNetworkInterface("eni-2", "2.2.2.2");
+
+    resolver.resolvePublicIps(REGION, List.of("eni-1"));
+    now.addAndGet(TTL_MS);
+    Map<String, String> publicIps = resolver.resolvePublicIps(REGION, List.of("eni-1", "eni-2"));
+
+    assertEquals(Map.of("eni-1", "1.1.1.1", "eni-2", "2.2.2.2"), publicIps);
+    // only the interface, which was not cached yet, is described the second time
+    assertEquals(List.of(1, 1), ec2Client.getRequestedChunkSizes());
+  }
+
+  @Test
+  void expiredIps_describedAgain() {
+    ec2Client.addNetworkInterface("eni-1", "1.1.1.1");
+
+    resolver.resolvePublicIps(REGION, List.of("eni-1"));
+    now.addAndGet(TTL_MS + 1);
+    resolver.resolvePublicIps(REGION, List.of("eni-1"));
+
+    assertEquals(List.of(1, 1), ec2Client.getRequestedChunkSizes());
+  }
+
+  @Test
+  void unassignedIp_notCached() {
+    ec2Client.addNetworkInterface("eni-1", null);
+
+    assertTrue(resolver.resolvePublicIps(REGION, List.of("eni-1")).isEmpty());
+    ec2Client.addNetworkInterface("eni-1", "1.1.1.1");
+
+    assertEquals(Map.of("eni-1", "1.1.1.1"), resolver.resolvePublicIps(REGION, List.of("eni-1")));
+    assertEquals(List.of(1, 1), ec2Client.getRequestedChunkSizes());
+  }
+
+}
@@ -0,0 +1,151 @@
+package org.github.akarkin1.ecs;
+
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CachingEcsManagerTest {
+
+  private static final String SERVICE_NAME_TAG = "ServiceName";
+  private static final String HOST_NAME_TAG = "Hostname";
+  private static final String SERVICE_NAME = "tailscale-node";
+  private static final long TTL_MS = 1_000;
+  private static final long MAX_STALE_MS = 10_000;
+  private static final Map<String, String> SERVICE_TAGS = Map.of(SERVICE_NAME_TAG, SERVICE_NAME);
+
+  private final FakeEcsManager delegate = new FakeEcsManager();
+  private final AtomicLong now = new AtomicLong(100_000);
+  private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor();
+  private CachingEcsManager ecsManager;
+
+  @BeforeEach
+  void setUp() {
+    EcsConfiguration config = new EcsConfiguration();
+    config.setServiceName(SERVICE_NAME);
+    config.setServiceNameTag(SERVICE_NAME_TAG);
+    config.setHostNameTag(HOST_NAME_TAG);
+    ecsManager = new CachingEcsManager(delegate, new RegionalInventoryEngine(1_000), config,
+                                       TTL_MS, MAX_STALE_MS, refreshExecutor, now::get);
+
+    delegate.getTasks().add(task(Region.EU_NORTH_1, "node-1"));
+  }
+
+  @AfterEach
+  void tearDown() {
+    refreshExecutor.shutdownNow();
+  }
+
+  @Test
+  void freshRegions_servedFromCache() {
+    ecsManager.listTasks(SERVICE_TAGS);
+    List<TaskInfo> tasks = ecsManager.listTasks(Map.of(SERVICE_NAME_TAG, SERVICE_NAME,
+                                                       HOST_NAME_TAG, "node-1"));
+
+    assertEquals(1, tasks.size());
+    assertEquals(2, delegate.getQueries().size());
+    assertEquals(new CachingEcsManager.Stats(2, 0, 2), ecsManager.getStats());
+  }
+
+  @Test
+  void staleRegions_servedWhileRevalidated() throws Exception {
+    ecsManager.listTasks(SERVICE_TAGS);
+    delegate.getTasks().add(task(Region.EU_NORTH_1, "node-2"));
+    now.addAndGet(TTL_MS);
+
+    List<TaskInfo> staleTasks = ecsManager.listTasks(SERVICE_TAGS);
+    refreshExecutor.submit(() -> { }).get();
+    List<TaskInfo> refreshedTasks = ecsManager.listTasks(SERVICE_TAGS);
+
+    assertEquals(1, staleTasks.size());
+    assertEquals(2, refreshedTasks.size());
+    assertEquals(new CachingEcsManager.Stats(2, 2, 2), ecsManager.getStats());
+  }
+
+  @Test
+  void tooStaleRegions_reloadedInPlace() {
+    ecsManager.listTasks(SERVICE_TAGS);
+    delegate.getTasks().add(task(Region.EU_NORTH_1, "node-2"));
+    now.addAndGet(MAX_STALE_MS);
+
+    assertEquals(2, ecsManager.listTasks(SERVICE_TAGS).size());
+    assertEquals(new CachingEcsManager.Stats(0, 0, 4), ecsManager.getStats());
+  }
+
+  @Test
+  void startTask_invalidatesItsRegion() {
+    ecsManager.listTasks(SERVICE_TAGS);
+
+    ecsManager.startTask(Region.US_EAST_1, "node-2", Map.of(SERVICE_NAME_TAG, SERVICE_NAME,
+                                                            HOST_NAME_TAG, "node-2"));
+    List<TaskInfo> tasks = ecsManager.listTasks(SERVICE_TAGS);
+
+    assertEquals(2, tasks.size());
+    assertEquals(new CachingEcsManager.Stats(1, 0, 3), ecsManager.getStats());
+  }
+
+  @Test
+  void freshInventory_seesNodesStartedElsewhere_andUpdatesCache() {
+    ecsManager.listTasks(SERVICE_TAGS);
+    // started by another Lambda instance, so the cached region is not invalidated
+    delegate.getTasks().add(task(Region.EU_NORTH_1, "node-2"));
+
+    assertEquals(1, ecsManager.listTasks(SERVICE_TAGS).size());
+    assertEquals(2, ecsManager.collectFreshInventory(SERVICE_TAGS).tasks().size());
+    assertEquals(2, ecsManager.listTasks(SERVICE_TAGS).size());
+  }
+
+  @Test
+  void loadStartedBeforeStartTask_doesNotOverwriteInvalidation() {
+    AtomicBoolean startedDuringLoad = new AtomicBoolean();
+    FakeEcsManager racingDelegate = new FakeEcsManager() {
+      @Override
+      public List<TaskInfo> listTasks(Region region, Map<String, String> matchingTags) {
+        List<TaskInfo> tasks = super.listTasks(region, matchingTags);
+        if (Region.EU_NORTH_1.equals(region) && startedDuringLoad.compareAndSet(false, true)) {
+          ecsManager.startTask(Region.EU_NORTH_1, "node-2",
+                               Map.of(SERVICE_NAME_TAG, SERVICE_NAME, HOST_NAME_TAG, "node-2"));
+        }
+        return tasks;
+      }
+    };
+    racingDelegate.getTasks().add(task(Region.EU_NORTH_1, "node-1"));
+    EcsConfiguration config = new EcsConfiguration();
+    config.setServiceName(SERVICE_NAME);
+    config.setServiceNameTag(SERVICE_NAME_TAG);
+    config.setHostNameTag(HOST_NAME_TAG);
+    ecsManager = new CachingEcsManager(racingDelegate, new RegionalInventoryEngine(1_000), config,
+                                       TTL_MS, MAX_STALE_MS, refreshExecutor, now::get);
+
+    assertEquals(1, ecsManager.listTasks(SERVICE_TAGS).size());
+    assertEquals(2, ecsManager.listTasks(SERVICE_TAGS).size());
+  }
+
+  @Test
+  void queriesOutsideOfService_notCached() {
+    ecsManager.listTasks(Map.of(HOST_NAME_TAG, "node-1"));
+    ecsManager.listTasks(Map.of(HOST_NAME_TAG, "node-1"));
+
+    assertEquals(2, delegate.getQueries().size());
+  }
+
+  private static TaskInfo task(Region region, String hostName) {
+    return TaskInfo.builder()
+        .id("task-" + hostName)
+        .hostName(hostName)
+        .region(region)
+        .tags(Map.of(SERVICE_NAME_TAG, SERVICE_NAME, HOST_NAME_TAG, hostName))
+        .build();
+  }
+
+}
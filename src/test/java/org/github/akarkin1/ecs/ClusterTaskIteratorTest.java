@@ -0,0 +1,63 @@
+package org.github.akarkin1.ecs;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ClusterTaskIteratorTest {
+
+  private static final String CLUSTER_NAME = "tailscale-cluster";
+
+  private final FakeEcsClient ecsClient = new FakeEcsClient();
+
+  @Test
+  void emptyCluster_noChunks() {
+    ClusterTaskIterator taskChunks = new ClusterTaskIterator(ecsClient, CLUSTER_NAME);
+
+    assertFalse(taskChunks.hasNext());
+    assertEquals(0, ecsClient.getDescribeTasksCalls());
+  }
+
+  @Test
+  void largeCluster_describedInChunksOfHundred() {
+    for (int i = 0; i < 250; i++) {
+      ecsClient.addTask(CLUSTER_NAME, "task-" + i, Map.of());
+    }
+    ecsClient.addTask("another-cluster", "foreign-task", Map.of());
+
+    ClusterTaskIterator taskChunks = new ClusterTaskIterator(ecsClient, CLUSTER_NAME);
+    List<Integer> chunkSizes = new ArrayList<>();
+    List<Task> allTasks = new ArrayList<>();
+    while (taskChunks.hasNext()) {
+      List<Task> chunk = taskChunks.next();
+      chunkSizes.add(chunk.size());
+      allTasks.addAll(chunk);
+    }
+
+    assertEquals(List.of(100, 100, 50), chunkSizes);
+    assertEquals(250, allTasks.stream().map(Task::taskArn).distinct().count());
+    assertEquals(3, ecsClient.getListTasksCalls());
+    assertEquals(3, ecsClient.getDescribeTasksCalls());
+  }
+
+  @Test
+  void chunksAreDescribedLazily() {
+    for (int i = 0; i < 150; i++) {
+      ecsClient.addTask(CLUSTER_NAME, "task-" + i, Map.of());
+    }
+
+    ClusterTaskIterator taskChunks = new ClusterTaskIterator(ecsClient, CLUSTER_NAME);
+    taskChunks.next();
+
+    assertEquals(1, ecsClient.getDescribeTasksCalls());
+    assertEquals(1, ecsClient.getListTasksCalls());
+    assertEquals(100, ecsClient.getDescribedTasks());
+  }
+
+}
@@ -0,0 +1,143 @@
+package org.github.akarkin1.ecs;
+
+import lombok.Getter;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.Container;
+import software.amazon.awssdk.services.ecs.model.DescribeTasksRequest;
+import software.amazon.awssdk.services.ecs.model.DescribeTasksResponse;
+import software.amazon.awssdk.services.ecs.model.HealthStatus;
+import software.amazon.awssdk.services.ecs.model.InvalidParameterException;
+import software.amazon.awssdk.services.ecs.model.ListTasksRequest;
+import software.amazon.awssdk.services.ecs.model.ListTasksResponse;
+import software.amazon.awssdk.services.ecs.model.Tag;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+class FakeEcsClient implements EcsClient {
+
+  private static final int DEFAULT_PAGE_SIZE = 100;
+  static final String DEFAULT_TASK_DEFINITION_ARN =
+      "arn:aws:ecs:eu-north-1:123456789012:task-definition/tailscale-node:1";
+
+  // sorted by ARN, so that paging is stable while tasks are changed concurrently
+  private final Map<String, Task> tasksByArn = new ConcurrentSkipListMap<>();
+  @Getter
+  private volatile int listTasksCalls;
+  @Getter
+  private volatile int describeTasksCalls;
+  @Getter
+  private volatile int describedTasks;
+
+  Task addTask(String clusterName, String taskId, Map<String, String> tags) {
+    return addTask(clusterName, taskId, tags, null);
+  }
+
+  Task addTask(String clusterName, String taskId, Map<String, String> tags, String startedBy) {
+    return addTask(clusterName, taskId, tags, startedBy, DEFAULT_TASK_DEFINITION_ARN);
+  }
+
+  Task addTask(String clusterName, String taskId, Map<String, String> tags, String startedBy,
+               String taskDefinitionArn) {
+    String taskArn = "arn:aws:ecs:eu-north-1:123456789012:task/%s/%s".formatted(clusterName,
+                                                                               taskId);
+    Task task = Task.builder()
+        .taskArn(taskArn)
+        .clusterArn(clusterName)
+        .desiredStatus("RUNNING")
+        .startedBy(startedBy)
+        .taskDefinitionArn(taskDefinitionArn)
+        .tags(tags.entrySet()
+                  .stream()
+                  .map(tag -> Tag.builder().key(tag.getKey()).value(tag.getValue()).build())
+                  .toList())
+        .build();
+    tasksByArn.put(taskArn, task);
+    return task;
+  }
+
+  void markHealthy(String taskArn, String containerName) {
+    tasksByArn.computeIfPresent(taskArn, (arn, task) -> task.toBuilder()
+        .healthStatus(HealthStatus.HEALTHY)
+        .containers(Container.builder()
+                        .name(containerName)
+                        .healthStatus(HealthStatus.HEALTHY)
+                        .build())
+        .build());
+  }
+
+  void setLastStatus(String taskArn, String lastStatus) {
+    tasksByArn.computeIfPresent(taskArn, (arn, task) -> task.toBuilder()
+        .lastStatus(lastStatus)
+        .build());
+  }
+
+  void stopTask(String taskArn) {
+    tasksByArn.computeIfPresent(taskArn, (arn, task) -> task.toBuilder()
+        .desiredStatus("STOPPED")
+        .build());
+  }
+
+  @Override
+  public ListTasksResponse listTasks(ListTasksRequest request) {
+    listTasksCalls++;
+    List<String> clusterTaskArns = tasksByArn.values()
+        .stream()
+        .filter(task -> request.cluster().equals(task.clusterArn()))
+        .filter(task -> "RUNNING".equals(task.desiredStatus()))
+        .filter(task -> request.startedBy() == null
+                        || request.startedBy().equals(task.startedBy()))
+        .filter(task -> request.family() == null
+                        || request.family().equals(
+            StartedByTaskDiscovery.taskFamilyOf(task.taskDefinitionArn())))
+        .map(Task::taskArn)
+        .toList();
+    int from = Optional.ofNullable(request.nextToken()).map(Integer::parseInt).orElse(0);
+    int pageSize = Optional.ofNullable(request.maxResults()).orElse(DEFAULT_PAGE_SIZE);
+    int to = Math.min(from + pageSize, clusterTaskArns.size());
+
+    return ListTasksResponse.builder()
+        .taskArns(clusterTaskArns.subList(from, to))
+        .nextToken(to < clusterTaskArns.size() ? String.valueOf(to) : null)
+        .build();
+  }
+
+  @Override
+  public DescribeTasksResponse describeTasks(DescribeTasksRequest request) {
+    describeTasksCalls++;
+    if (request.tasks().size() > ClusterTaskIterator.MAX_DESCRIBED_TASKS) {
+      throw InvalidParameterException.builder()
+          .message("Too many tasks to describe: " + request.tasks().size())
+          .build();
+    }
+
+    List<Task> tasks = new ArrayList<>();
+    for (String taskArnOrId : request.tasks()) {
+      tasksByArn.values()
+          .stream()
+          .filter(task -> task.taskArn().equals(taskArnOrId)
+                          || task.taskArn().endsWith("/" + taskArnOrId))
+          .findFirst()
+          .ifPresent(tasks::add);
+    }
+    describedTasks += tasks.size();
+
+    return DescribeTasksResponse.builder()
+        .tasks(tasks)
+        .build();
+  }
+
+  @Override
+  public String serviceName() {
+    return SERVICE_NAME;
+  }
+
+  @Override
+  public void close() {
+  }
+
+}
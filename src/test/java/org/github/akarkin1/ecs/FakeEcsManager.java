@@ -0,0 +1,63 @@
+package org.github.akarkin1.ecs;
+
+import lombok.Getter;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@Getter
+public class FakeEcsManager implements EcsManager {
+
+  private final List<TaskInfo> tasks = new CopyOnWriteArrayList<>();
+  private final List<Map<String, String>> queries = new CopyOnWriteArrayList<>();
+  private final List<Region> startedIn = new CopyOnWriteArrayList<>();
+  private final List<Region> skippedRegions = new CopyOnWriteArrayList<>();
+
+  @Override
+  public TaskInfo startTask(Region region, String hostName, Map<String, String> tags) {
+    startedIn.add(region);
+    TaskInfo taskInfo = TaskInfo.builder()
+        .id("task-" + hostName)
+        .hostName(hostName)
+        .region(region)
+        .tags(tags)
+        .build();
+    tasks.add(taskInfo);
+    return taskInfo;
+  }
+
+  @Override
+  public RunTaskStatus checkTaskHealth(Region region, String clusterName, String taskId) {
+    return RunTaskStatus.HEALTHY;
+  }
+
+  @Override
+  public TaskInventory collectInventory(Map<String, String> matchingTags) {
+    queries.add(matchingTags);
+    return new TaskInventory(List.copyOf(tasks), List.copyOf(skippedRegions)).narrow(matchingTags);
+  }
+
+  @Override
+  public List<TaskInfo> listTasks(Region region, Map<String, String> matchingTags) {
+    queries.add(matchingTags);
+    return tasks.stream()
+        .filter(task -> region.equals(task.getRegion()))
+        .filter(task -> task.matchesTags(matchingTags))
+        .toList();
+  }
+
+  @Override
+  public Set<String> getSupportedRegions() {
+    return Set.of(Region.EU_NORTH_1.id(), Region.US_EAST_1.id());
+  }
+
+  @Override
+  public Optional<TaskInfo> getFullTaskInfo(Region region, String clusterName, String taskId) {
+    return Optional.empty();
+  }
+
+}
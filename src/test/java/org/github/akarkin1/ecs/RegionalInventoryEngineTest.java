@@ -0,0 +1,160 @@
+package org.github.akarkin1.ecs;
+
+import org.github.akarkin1.config.SnapshotTaskConfigService;
+import org.github.akarkin1.config.TaskConfigService;
+import org.github.akarkin1.config.TaskRuntimeParameters;
+import org.github.akarkin1.context.RequestSnapshot;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegionalInventoryEngineTest {
+
+  private static final long REGION_TIMEOUT_MS = 300;
+
+  private final RegionalInventoryEngine engine = new RegionalInventoryEngine(REGION_TIMEOUT_MS);
+
+  @Test
+  void collect_allRegionsRespond() {
+    TaskInventory inventory = engine.collect(
+        List.of(Region.EU_NORTH_1, Region.US_EAST_1),
+        region -> List.of(taskIn(region)));
+
+    assertTrue(inventory.isComplete());
+    assertEquals(List.of(Region.EU_NORTH_1, Region.US_EAST_1),
+                 inventory.tasks().stream().map(TaskInfo::getRegion).toList());
+  }
+
+  @Test
+  void collect_regionsAreQueriedConcurrently() {
+    List<Region> regions = List.of(Region.EU_NORTH_1, Region.US_EAST_1, Region.AP_SOUTH_1,
+                                   Region.EU_WEST_1, Region.SA_EAST_1);
+    long startedAt = System.currentTimeMillis();
+
+    TaskInventory inventory = engine.collect(regions, region -> {
+      sleep(100);
+      return List.of(taskIn(region));
+    });
+
+    assertTrue(inventory.isComplete());
+    assertEquals(regions.size(), inventory.tasks().size());
+    assertTrue(System.currentTimeMillis() - startedAt < 100L * regions.size());
+  }
+
+  @Test
+  void collect_withinSnapshotScope_regionQueriesShareTheRequestSnapshot() {
+    AtomicInteger configReads = new AtomicInteger();
+    TaskConfigService taskConfigService = new SnapshotTaskConfigService(new TaskConfigService() {
+      @Override
+      public List<Region> getSupportedRegions() {
+        return List.of(Region.EU_NORTH_1, Region.US_EAST_1);
+      }
+
+      @Override
+      public TaskRuntimeParameters getTaskRuntimeParameters(Region region) {
+        configReads.incrementAndGet();
+        return TaskRuntimeParameters.builder().ecsClusterName("cluster-" + region.id()).build();
+      }
+    });
+
+    try (RequestSnapshot.Scope ignored = RequestSnapshot.open()) {
+      taskConfigService.getTaskRuntimeParameters(Region.EU_NORTH_1);
+      for (int scan = 0; scan < 2; scan++) {
+        TaskInventory inventory = engine.collect(
+            taskConfigService.getSupportedRegions(),
+            region -> {
+              taskConfigService.getTaskRuntimeParameters(region);
+              return List.of(taskIn(region));
+            });
+        assertTrue(inventory.isComplete());
+      }
+      taskConfigService.getTaskRuntimeParameters(Region.US_EAST_1);
+    }
+
+    // read once per region: on the handler thread, by the first scan, and never again
+    assertEquals(2, configReads.get());
+  }
+
+  @Test
+  void collect_outsideSnapshotScope_regionQueriesReadConfigEveryTime() {
+    AtomicInteger configReads = new AtomicInteger();
+    TaskConfigService taskConfigService = new SnapshotTaskConfigService(new TaskConfigService() {
+      @Override
+      public List<Region> getSupportedRegions() {
+        return List.of(Region.EU_NORTH_1);
+      }
+
+      @Override
+      public TaskRuntimeParameters getTaskRuntimeParameters(Region region) {
+        configReads.incrementAndGet();
+        return TaskRuntimeParameters.builder().build();
+      }
+    });
+
+    for (int scan = 0; scan < 2; scan++) {
+      engine.collect(taskConfigService.getSupportedRegions(), region -> {
+        taskConfigService.getTaskRuntimeParameters(region);
+        return List.of(taskIn(region));
+      });
+    }
+
+    assertEquals(2, configReads.get());
+  }
+
+  @Test
+  void collect_slowRegionIsSkipped() {
+    long startedAt = System.currentTimeMillis();
+
+    TaskInventory inventory = engine.collect(
+        List.of(Region.EU_NORTH_1, Region.US_EAST_1),
+        region -> {
+          if (Region.US_EAST_1.equals(region)) {
+            sleep(10_000);
+          }
+          return List.of(taskIn(region));
+        });
+
+    assertFalse(inventory.isComplete());
+    assertEquals(List.of(Region.US_EAST_1), inventory.skippedRegions());
+    assertEquals(1, inventory.tasks().size());
+    assertTrue(System.currentTimeMillis() - startedAt < 5_000);
+  }
+
+  @Test
+  void collect_failedRegionIsSkipped() {
+    TaskInventory inventory = engine.collect(
+        List.of(Region.EU_NORTH_1, Region.US_EAST_1),
+        region -> {
+          if (Region.EU_NORTH_1.equals(region)) {
+            throw new IllegalStateException("Region is not available");
+          }
+          return List.of(taskIn(region));
+        });
+
+    assertEquals(List.of(Region.EU_NORTH_1), inventory.skippedRegions());
+    assertEquals(Region.US_EAST_1, inventory.tasks().getFirst().getRegion());
+  }
+
+  private static TaskInfo taskIn(Region region) {
+    return TaskInfo.builder()
+        .id("task-" + region.id())
+        .region(region)
+        .build();
+  }
+
+  private static void sleep(long millis) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,113 @@
+package org.github.akarkin1.ecs;
+
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsConfiguration;
+import org.github.akarkin1.context.RequestSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotEcsManagerTest {
+
+  private static final String SERVICE_NAME_TAG = "ServiceName";
+  private static final String HOST_NAME_TAG = "Hostname";
+  private static final String RUN_BY_TAG = "RunBy";
+  private static final String SERVICE_NAME = "tailscale-node";
+
+  private final FakeEcsManager delegate = new FakeEcsManager();
+  private SnapshotEcsManager ecsManager;
+
+  @BeforeEach
+  void setUp() {
+    EcsConfiguration config = new EcsConfiguration();
+    config.setServiceNameTag(SERVICE_NAME_TAG);
+    config.setHostNameTag(HOST_NAME_TAG);
+    config.setRunByTag(RUN_BY_TAG);
+    ecsManager = new SnapshotEcsManager(delegate, config);
+
+    delegate.getTasks().add(task("alice-stockholm-1", "alice"));
+    delegate.getTasks().add(task("bob-stockholm-1", "bob"));
+  }
+
+  @Test
+  void withinScope_hostnameCheckAndHostnameChoiceShareOneScan() {
+    long savedBefore = RequestSnapshot.getSavedCalls(SnapshotEcsManager.INVENTORY_CATEGORY);
+
+    try (RequestSnapshot.Scope ignored = RequestSnapshot.open()) {
+      List<TaskInfo> sameHost = ecsManager.listTasks(Map.of(SERVICE_NAME_TAG, SERVICE_NAME,
+                                                            HOST_NAME_TAG, "bob-stockholm-1"));
+      List<TaskInfo> allHosts = ecsManager.listTasks(Map.of(SERVICE_NAME_TAG, SERVICE_NAME));
+
+      assertEquals(List.of("bob-stockholm-1"), sameHost.stream().map(TaskInfo::getHostName)
+          .toList());
+      assertEquals(2, allHosts.size());
+    }
+
+    assertEquals(List.of(Map.of(SERVICE_NAME_TAG, SERVICE_NAME)), delegate.getQueries());
+    assertEquals(savedBefore + 1,
+                 RequestSnapshot.getSavedCalls(SnapshotEcsManager.INVENTORY_CATEGORY));
+  }
+
+  @Test
+  void withinScope_narrowerQueryIsServedFromWiderSnapshot() {
+    try (RequestSnapshot.Scope ignored = RequestSnapshot.open()) {
+      ecsManager.listTasks(Map.of(SERVICE_NAME_TAG, SERVICE_NAME));
+      List<TaskInfo> aliceTasks = ecsManager.listTasks(Map.of(SERVICE_NAME_TAG, SERVICE_NAME,
+                                                              RUN_BY_TAG, "alice"));
+
+      assertEquals(List.of("alice-stockholm-1"), aliceTasks.stream().map(TaskInfo::getHostName)
+          .toList());
+    }
+
+    assertEquals(1, delegate.getQueries().size());
+  }
+
+  @Test
+  void startTask_invalidatesSnapshot() {
+    try (RequestSnapshot.Scope ignored = RequestSnapshot.open()) {
+      ecsManager.listTasks(Map.of(SERVICE_NAME_TAG, SERVICE_NAME));
+      ecsManager.startTask(Region.EU_NORTH_1, "alice-stockholm-2", Map.of());
+      ecsManager.listTasks(Map.of(SERVICE_NAME_TAG, SERVICE_NAME));
+    }
+
+    assertEquals(2, delegate.getQueries().size());
+  }
+
+  @Test
+  void withinScope_freshInventoryDoesNotReuseCachedScan() {
+    try (RequestSnapshot.Scope ignored = RequestSnapshot.open()) {
+      ecsManager.listTasks(Map.of(SERVICE_NAME_TAG, SERVICE_NAME));
+      ecsManager.collectFreshInventory(Map.of(SERVICE_NAME_TAG, SERVICE_NAME,
+                                              HOST_NAME_TAG, "bob-stockholm-1"));
+      ecsManager.collectFreshInventory(Map.of(SERVICE_NAME_TAG, SERVICE_NAME));
+    }
+
+    assertEquals(2, delegate.getQueries().size());
+  }
+
+  @Test
+  void outsideScope_everyQueryGoesToDelegate() {
+    ecsManager.listTasks(Map.of(SERVICE_NAME_TAG, SERVICE_NAME));
+    ecsManager.listTasks(Map.of(SERVICE_NAME_TAG, SERVICE_NAME));
+
+    assertEquals(2, delegate.getQueries().size());
+    assertTrue(RequestSnapshot.getAll(SnapshotEcsManager.INVENTORY_CATEGORY).isEmpty());
+  }
+
+  private static TaskInfo task(String hostName, String runBy) {
+    return TaskInfo.builder()
+        .id("task-" + hostName)
+        .hostName(hostName)
+        .region(Region.EU_NORTH_1)
+        .tags(Map.of(SERVICE_NAME_TAG, SERVICE_NAME,
+                     HOST_NAME_TAG, hostName,
+                     RUN_BY_TAG, runBy))
+        .build();
+  }
+
+}
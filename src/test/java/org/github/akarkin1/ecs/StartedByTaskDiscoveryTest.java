@@ -0,0 +1,135 @@
+package org.github.akarkin1.ecs;
+
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StartedByTaskDiscoveryTest {
+
+  private static final String CLUSTER_NAME = "tailscale-cluster";
+  private static final String SERVICE_NAME_TAG = "ServiceName";
+  private static final String RUN_BY_TAG = "RunBy";
+
+  private final FakeEcsClient ecsClient = new FakeEcsClient();
+  private StartedByMarker startedByMarker;
+  private StartedByTaskDiscovery discovery;
+
+  @BeforeEach
+  void setUp() {
+    EcsConfiguration config = new EcsConfiguration();
+    config.setServiceNameTag(SERVICE_NAME_TAG);
+    config.setRunByTag(RUN_BY_TAG);
+    startedByMarker = new StartedByMarker(config);
+    discovery = new StartedByTaskDiscovery(new FixedEcsClientProvider(), startedByMarker);
+  }
+
+  @Test
+  void userQuery_onlyUserTasksAreDescribed() {
+    for (int i = 0; i < 150; i++) {
+      addTaskRunBy("user-" + i, "task-" + i);
+    }
+    addTaskRunBy("42", "task-of-42");
+    // the first query finds out there are no unmarked tasks in the cluster
+    discover(Map.of(SERVICE_NAME_TAG, "tailscale-node", RUN_BY_TAG, "42"));
+    int describedBefore = ecsClient.getDescribedTasks();
+
+    List<Task> tasks = discover(Map.of(SERVICE_NAME_TAG, "tailscale-node", RUN_BY_TAG, "42"));
+
+    assertEquals(List.of("task-of-42"), taskIds(tasks));
+    assertEquals(1, ecsClient.getDescribedTasks() - describedBefore);
+  }
+
+  @Test
+  void userQuery_unmarkedTasksAreFoundUntilNoneIsLeft() {
+    Map<String, String> userTags = Map.of(SERVICE_NAME_TAG, "tailscale-node", RUN_BY_TAG, "42");
+    addTaskRunBy("42", "task-of-42");
+    // started before the startedBy marker was introduced
+    Task legacyTask = ecsClient.addTask(CLUSTER_NAME, "legacy-task-of-42", userTags);
+
+    assertEquals(List.of("legacy-task-of-42", "task-of-42"), taskIds(discover(userTags)));
+    assertEquals(List.of("legacy-task-of-42", "task-of-42"), taskIds(discover(userTags)));
+
+    ecsClient.stopTask(legacyTask.taskArn());
+    assertEquals(List.of("task-of-42"), taskIds(discover(userTags)));
+    int describedBefore = ecsClient.getDescribedTasks();
+    addTaskRunBy("7", "task-of-7");
+
+    assertEquals(List.of("task-of-42"), taskIds(discover(userTags)));
+    assertEquals(1, ecsClient.getDescribedTasks() - describedBefore);
+  }
+
+  @Test
+  void queryWithoutUser_onlyServiceTaskFamilyIsScanned() {
+    addTaskRunBy("1", "task-1");
+    addTaskRunBy("2", "task-2");
+    ecsClient.addTask(CLUSTER_NAME, "task-of-other-family", Map.of(), "ecs-svc/other",
+                      "arn:aws:ecs:eu-north-1:123456789012:task-definition/other-service:3");
+
+    List<Task> tasks = discover(Map.of(SERVICE_NAME_TAG, "tailscale-node"));
+
+    assertEquals(List.of("task-1", "task-2"), taskIds(tasks));
+    assertEquals(2, ecsClient.getDescribedTasks());
+  }
+
+  @Test
+  void taskFamily_isTakenFromArnOrFamilyWithRevision() {
+    assertEquals("tailscale-node",
+                 StartedByTaskDiscovery.taskFamilyOf(FakeEcsClient.DEFAULT_TASK_DEFINITION_ARN));
+    assertEquals("tailscale-node", StartedByTaskDiscovery.taskFamilyOf("tailscale-node:4"));
+    assertEquals("tailscale-node", StartedByTaskDiscovery.taskFamilyOf("tailscale-node"));
+  }
+
+  @Test
+  void marker_invalidCharactersAreReplaced() {
+    String marker = startedByMarker.of(Map.of(SERVICE_NAME_TAG, "tailscale-node",
+                                              RUN_BY_TAG, "john.doe@mail")).orElseThrow();
+
+    assertEquals("tailscale-node/john_doe_mail", marker);
+  }
+
+  private void addTaskRunBy(String runBy, String taskId) {
+    Map<String, String> tags = Map.of(SERVICE_NAME_TAG, "tailscale-node", RUN_BY_TAG, runBy);
+    ecsClient.addTask(CLUSTER_NAME, taskId, tags, startedByMarker.of(tags).orElseThrow());
+  }
+
+  private List<Task> discover(Map<String, String> matchingTags) {
+    List<Task> tasks = new ArrayList<>();
+    Iterator<List<Task>> taskChunks = discovery.discoverTasks(
+        Region.EU_NORTH_1, CLUSTER_NAME, "tailscale-node:1", matchingTags);
+    taskChunks.forEachRemaining(tasks::addAll);
+    return tasks;
+  }
+
+  private class FixedEcsClientProvider implements EcsClientProvider {
+
+    @Override
+    public EcsClient get() {
+      return ecsClient;
+    }
+
+    @Override
+    public EcsClient get(Region region) {
+      return ecsClient;
+    }
+
+  }
+
+  private static List<String> taskIds(List<Task> tasks) {
+    return tasks.stream().map(StartedByTaskDiscoveryTest::taskId).sorted().toList();
+  }
+
+  private static String taskId(Task task) {
+    return task.taskArn().substring(task.taskArn().lastIndexOf('/') + 1);
+  }
+
+}
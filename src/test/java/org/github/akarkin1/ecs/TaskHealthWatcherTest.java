@@ -0,0 +1,209 @@
+package org.github.akarkin1.ecs;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsConfiguration;
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsContainerHealth;
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsNodeReadiness;
+import org.github.akarkin1.context.InvocationDeadline;
+import org.github.akarkin1.readiness.FSNodeReadinessRegistry;
+import org.github.akarkin1.readiness.NodeReadinessRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TaskHealthWatcherTest {
+
+  private static final String CLUSTER_NAME = "tailscale-cluster";
+  private static final String CONTAINER_NAME = "vpn-container";
+
+  private final FakeEcsClient ecsClient = new FakeEcsClient();
+  private final List<Runnable> pollingLoops = new ArrayList<>();
+  private final EcsConfiguration config = new EcsConfiguration();
+  private final ManualPollingClock clock = new ManualPollingClock();
+  private NodeReadinessRegistry readinessRegistry;
+  private TaskHealthWatcher watcher;
+
+  @BeforeEach
+  void setUp(@TempDir Path readyNodesDir) {
+    EcsContainerHealth health = new EcsContainerHealth();
+    health.setIntervalMs(10);
+    health.setPendingMaxIntervalMs(40);
+    health.setTimeoutSec(60);
+    config.setHealth(health);
+    EcsNodeReadiness readiness = new EcsNodeReadiness();
+    readiness.setFallbackPollIntervalMs(60_000);
+    config.setReadiness(readiness);
+    config.setEssentialContainerName(CONTAINER_NAME);
+    readinessRegistry = new FSNodeReadinessRegistry(60_000, readyNodesDir.toString());
+    watcher = new TaskHealthWatcher(new FixedEcsClientProvider(), config, readinessRegistry,
+                                    pollingLoops::add, clock);
+  }
+
+  @Test
+  void tasksOfTheSameCluster_checkedWithOneCall() {
+    List<CompletableFuture<RunTaskStatus>> statuses = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      Task task = ecsClient.addTask(CLUSTER_NAME, "task-" + i, Map.of());
+      ecsClient.markHealthy(task.taskArn(), CONTAINER_NAME);
+      statuses.add(watcher.watch(Region.EU_NORTH_1, CLUSTER_NAME, "task-" + i));
+    }
+
+    runPollingLoops();
+
+    assertEquals(1, pollingLoops.size());
+    assertEquals(1, ecsClient.getDescribeTasksCalls());
+    statuses.forEach(status -> assertEquals(RunTaskStatus.HEALTHY, status.join()));
+  }
+
+  @Test
+  void manyTasks_checkedInChunksOfHundred() {
+    List<CompletableFuture<RunTaskStatus>> statuses = new ArrayList<>();
+    for (int i = 0; i < 150; i++) {
+      Task task = ecsClient.addTask(CLUSTER_NAME, "task-" + i, Map.of());
+      ecsClient.markHealthy(task.taskArn(), CONTAINER_NAME);
+      statuses.add(watcher.watch(Region.EU_NORTH_1, CLUSTER_NAME, "task-" + i));
+    }
+
+    runPollingLoops();
+
+    assertEquals(2, ecsClient.getDescribeTasksCalls());
+    statuses.forEach(status -> assertEquals(RunTaskStatus.HEALTHY, status.join()));
+  }
+
+  @Test
+  void taskNotHealthyInTime_lastStatusReturned() {
+    config.getHealth().setTimeoutSec(0);
+    ecsClient.addTask(CLUSTER_NAME, "task-1", Map.of());
+
+    CompletableFuture<RunTaskStatus> status = watcher.watch(Region.EU_NORTH_1, CLUSTER_NAME,
+                                                            "task-1");
+    runPollingLoops();
+
+    assertEquals(RunTaskStatus.UNKNOWN, status.join());
+  }
+
+  @Test
+  void pendingTask_polledWithGrowingInterval() {
+    Task task = ecsClient.addTask(CLUSTER_NAME, "task-1", Map.of());
+    ecsClient.setLastStatus(task.taskArn(), "PENDING");
+    AtomicInteger pendingPolls = new AtomicInteger();
+    clock.at(300, () -> {
+      pendingPolls.set(ecsClient.getDescribeTasksCalls());
+      ecsClient.setLastStatus(task.taskArn(), "RUNNING");
+    });
+    clock.at(345, () -> ecsClient.markHealthy(task.taskArn(), CONTAINER_NAME));
+
+    CompletableFuture<RunTaskStatus> status = watcher.watch(Region.EU_NORTH_1, CLUSTER_NAME,
+                                                            "task-1");
+    runPollingLoops();
+
+    assertEquals(RunTaskStatus.HEALTHY, status.join());
+    // at 10, 30, 70, 110, ..., 270 ms, rather than every 10 ms
+    assertEquals(8, pendingPolls.get());
+    // RUNNING is seen at 310 ms, then polled every 10 ms until healthy at 350 ms
+    assertEquals(13, ecsClient.getDescribeTasksCalls());
+    assertEquals(1, watcher.getStats().checkedTasks());
+    assertEquals(ecsClient.getDescribeTasksCalls(), watcher.getStats().polls());
+  }
+
+  @Test
+  void nodeReportedReady_completedWithoutPollingEcs() {
+    ecsClient.addTask(CLUSTER_NAME, "task-1", Map.of());
+    String readinessToken = readinessRegistry.issueToken();
+    clock.at(45, () -> readinessRegistry.markReady(readinessToken));
+
+    CompletableFuture<RunTaskStatus> status = watcher.watch(Region.EU_NORTH_1, CLUSTER_NAME,
+                                                            "task-1", readinessToken);
+    runPollingLoops();
+
+    assertEquals(RunTaskStatus.HEALTHY, status.join());
+    // the readiness registry is checked every 10 ms, so the node is seen ready at 50 ms
+    assertEquals(50, clock.now() - clock.startedAt);
+    assertEquals(0, ecsClient.getDescribeTasksCalls());
+    assertFalse(readinessRegistry.isReady(readinessToken));
+  }
+
+  @Test
+  void invocationAboutToEnd_lastStatusReturned() {
+    config.getHealth().setDeadlineMarginMs(60_000);
+    Context context = mock(Context.class);
+    when(context.getRemainingTimeInMillis()).thenReturn(30_000);
+    InvocationDeadline.init(context);
+    try {
+      ecsClient.addTask(CLUSTER_NAME, "task-1", Map.of());
+
+      CompletableFuture<RunTaskStatus> status = watcher.watch(Region.EU_NORTH_1, CLUSTER_NAME,
+                                                              "task-1");
+      runPollingLoops();
+
+      assertEquals(RunTaskStatus.UNKNOWN, status.join());
+      assertEquals(0, ecsClient.getDescribeTasksCalls());
+    } finally {
+      InvocationDeadline.clear();
+    }
+  }
+
+  private void runPollingLoops() {
+    List.copyOf(pollingLoops).forEach(Runnable::run);
+  }
+
+  // moves the time forward instantly instead of waiting, running the actions due on the way
+  private static class ManualPollingClock implements TaskHealthWatcher.PollingClock {
+
+    private final long startedAt = System.currentTimeMillis();
+    private final TreeMap<Long, Runnable> actions = new TreeMap<>();
+    private long now = startedAt;
+
+    void at(long offsetMs, Runnable action) {
+      actions.put(startedAt + offsetMs, action);
+    }
+
+    @Override
+    public long now() {
+      return now;
+    }
+
+    @Override
+    public void waitOn(Object monitor, long waitMs) {
+      long wakeUpAt = now + waitMs;
+      while (!actions.isEmpty() && actions.firstKey() <= wakeUpAt) {
+        Map.Entry<Long, Runnable> action = actions.pollFirstEntry();
+        now = action.getKey();
+        action.getValue().run();
+      }
+      now = wakeUpAt;
+    }
+
+  }
+
+  private class FixedEcsClientProvider implements EcsClientProvider {
+
+    @Override
+    public EcsClient get() {
+      return ecsClient;
+    }
+
+    @Override
+    public EcsClient get(Region region) {
+      return ecsClient;
+    }
+
+  }
+
+}
@@ -0,0 +1,88 @@
+package org.github.akarkin1.queue;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent.ProxyRequestContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.lambda.model.InvocationType;
+import software.amazon.awssdk.services.lambda.model.InvokeRequest;
+import software.amazon.awssdk.services.lambda.model.InvokeResponse;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LambdaEventCommandQueueTest {
+
+  private static final String FUNCTION_NAME = "vpnbot";
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final LambdaClient lambdaClient = mock(LambdaClient.class);
+  private final LambdaEventCommandQueue commandQueue = new LambdaEventCommandQueue(
+      lambdaClient, FUNCTION_NAME);
+
+  @Test
+  void submittedUpdate_isDeliveredAsQueuedCommandEvent() throws Exception {
+    when(lambdaClient.invoke(any(InvokeRequest.class)))
+        .thenReturn(InvokeResponse.builder().statusCode(202).build());
+
+    commandQueue.submit(createUpdate(42, "/runNodeIn eu-north-1"));
+
+    ArgumentCaptor<InvokeRequest> invoked = ArgumentCaptor.forClass(InvokeRequest.class);
+    verify(lambdaClient).invoke(invoked.capture());
+    assertEquals(FUNCTION_NAME, invoked.getValue().functionName());
+    assertEquals(InvocationType.EVENT, invoked.getValue().invocationType());
+
+    APIGatewayProxyRequestEvent event = MAPPER.readValue(
+        invoked.getValue().payload().asUtf8String(), APIGatewayProxyRequestEvent.class);
+    assertTrue(LambdaEventCommandQueue.isQueuedCommand(event));
+    Update delivered = MAPPER.readValue(event.getBody(), Update.class);
+    assertEquals(42, delivered.getUpdateId());
+    assertEquals("/runNodeIn eu-north-1", delivered.getMessage().getText());
+  }
+
+  @Test
+  void webhookRequestWithEventHeader_isNotQueuedCommand() {
+    APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+        .withHeaders(Map.of(LambdaEventCommandQueue.EVENT_HEADER,
+                            LambdaEventCommandQueue.RUN_COMMAND_EVENT))
+        .withRequestContext(new ProxyRequestContext());
+
+    assertFalse(LambdaEventCommandQueue.isQueuedCommand(request));
+  }
+
+  @Test
+  void notAcceptedInvocation_fails() {
+    when(lambdaClient.invoke(any(InvokeRequest.class)))
+        .thenReturn(InvokeResponse.builder().statusCode(500).build());
+
+    assertThrows(IllegalStateException.class,
+                 () -> commandQueue.submit(createUpdate(42, "/version")));
+  }
+
+  private static Update createUpdate(int updateId, String text) {
+    Chat chat = new Chat();
+    chat.setId(1L);
+    chat.setType("private");
+    Message message = new Message();
+    message.setChat(chat);
+    message.setText(text);
+    Update update = new Update();
+    update.setUpdateId(updateId);
+    update.setMessage(message);
+    return update;
+  }
+
+}
@@ -0,0 +1,99 @@
+package org.github.akarkin1.readiness;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FSNodeReadinessRegistryTest {
+
+  @TempDir
+  Path rootDir;
+
+  private FSNodeReadinessRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    registry = new FSNodeReadinessRegistry(60_000, rootDir.toString());
+  }
+
+  @Test
+  void issuedToken_canBeMarkedReady() {
+    String token = registry.issueToken();
+
+    assertFalse(registry.isReady(token));
+    assertTrue(registry.markReady(token));
+    assertTrue(registry.isReady(token));
+  }
+
+  @Test
+  void unknownToken_rejected() {
+    registry.issueToken();
+
+    assertFalse(registry.markReady("forged-token"));
+    assertFalse(registry.isReady("forged-token"));
+  }
+
+  @Test
+  void tokensAreUniqueAndNotStoredAsIs() throws IOException {
+    String token = registry.issueToken();
+
+    assertNotEquals(token, registry.issueToken());
+    try (Stream<Path> files = Files.list(rootDir)) {
+      assertTrue(files.noneMatch(file -> file.getFileName().toString().contains(token)));
+    }
+  }
+
+  @Test
+  void forget_removesToken() throws IOException {
+    String token = registry.issueToken();
+    registry.markReady(token);
+
+    registry.forget(token);
+
+    assertFalse(registry.isReady(token));
+    assertFalse(registry.markReady(token));
+    try (Stream<Path> files = Files.list(rootDir)) {
+      assertEquals(0, files.count());
+    }
+  }
+
+  @Test
+  void issueToken_leavesExpiredTokensToTheSweeper() throws IOException {
+    Path expiredToken = expiredFile("expired.pending");
+
+    registry.issueToken();
+
+    assertTrue(Files.exists(expiredToken));
+  }
+
+  @Test
+  void deleteExpired_deletesNoMoreThanRequested() throws IOException {
+    expiredFile("expired-1.pending");
+    expiredFile("expired-2.pending");
+    expiredFile("expired-3.ready");
+    String liveToken = registry.issueToken();
+
+    assertEquals(2, registry.deleteExpired(2));
+    assertEquals(1, registry.deleteExpired(10));
+    assertEquals(0, registry.deleteExpired(10));
+    assertTrue(registry.markReady(liveToken));
+  }
+
+  private Path expiredFile(String fileName) throws IOException {
+    Path file = Files.createFile(rootDir.resolve(fileName));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+    return file;
+  }
+
+}
@@ -0,0 +1,123 @@
+package org.github.akarkin1.s3;
+
+import lombok.Getter;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Serves objects from memory, the ETag of an object is the hash of its content
+public class FakeS3Client implements S3Client {
+
+  private static final int NOT_MODIFIED = 304;
+
+  // sorted by key, as S3 lists the objects
+  private final NavigableMap<String, byte[]> objectsByKey = new ConcurrentSkipListMap<>();
+  @Getter
+  private final AtomicInteger getObjectCalls = new AtomicInteger();
+
+  public void putObject(String key, String content) {
+    objectsByKey.put(key, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static String eTagOf(byte[] content) {
+    return "\"%08x\"".formatted(Arrays.hashCode(content));
+  }
+
+  @Override
+  public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+    getObjectCalls.incrementAndGet();
+    byte[] content = objectsByKey.get(request.key());
+    if (content == null) {
+      throw NoSuchKeyException.builder().statusCode(404).message(request.key()).build();
+    }
+
+    String eTag = eTagOf(content);
+    if (eTag.equals(request.ifNoneMatch())) {
+      throw S3Exception.builder().statusCode(NOT_MODIFIED).message("Not Modified").build();
+    }
+
+    GetObjectResponse response = GetObjectResponse.builder()
+        .eTag(eTag)
+        .contentLength((long) content.length)
+        .build();
+    return new ResponseInputStream<>(response,
+                                     AbortableInputStream.create(new ByteArrayInputStream(content)));
+  }
+
+  @Override
+  public PutObjectResponse putObject(PutObjectRequest request, RequestBody requestBody) {
+    String ifMatch = request.overrideConfiguration()
+        .map(override -> override.headers().get("If-Match"))
+        .map(List::getFirst)
+        .orElse(null);
+    byte[] existing = objectsByKey.get(request.key());
+    if (ifMatch != null && (existing == null || !ifMatch.equals(eTagOf(existing)))) {
+      throw S3Exception.builder().statusCode(412).message("Precondition Failed").build();
+    }
+
+    try (InputStream content = requestBody.contentStreamProvider().newStream()) {
+      byte[] bytes = content.readAllBytes();
+      objectsByKey.put(request.key(), bytes);
+      return PutObjectResponse.builder().eTag(eTagOf(bytes)).build();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public ListObjectsV2Response listObjectsV2(ListObjectsV2Request request) {
+    String startAfter = Optional.ofNullable(request.startAfter()).orElse("");
+    List<S3Object> objects = objectsByKey.tailMap(startAfter, false)
+        .keySet()
+        .stream()
+        .filter(key -> key.startsWith(request.prefix()))
+        .limit(request.maxKeys() + 1L)
+        .map(key -> S3Object.builder().key(key).build())
+        .toList();
+    boolean truncated = objects.size() > request.maxKeys();
+    return ListObjectsV2Response.builder()
+        .contents(truncated ? objects.subList(0, request.maxKeys()) : objects)
+        .isTruncated(truncated)
+        .build();
+  }
+
+  @Override
+  public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+    objectsByKey.remove(request.key());
+    return DeleteObjectResponse.builder().build();
+  }
+
+  @Override
+  public String serviceName() {
+    return "s3";
+  }
+
+  @Override
+  public void close() {
+  }
+
+}
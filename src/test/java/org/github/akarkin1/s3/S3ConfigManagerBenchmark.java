@@ -0,0 +1,91 @@
+package org.github.akarkin1.s3;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.github.akarkin1.config.RevalidatingS3ConfigCache;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.github.akarkin1.util.JsonUtils.parseJson;
+import static org.github.akarkin1.util.JsonUtils.toJson;
+
+// Not picked up by the default surefire includes, run it explicitly with
+// mvn test -Dtest=S3ConfigManagerBenchmark
+// Compares the bytes allocated per download of reading a file into a String and parsing it with
+// a config cache miss, which parses the response stream as it is read, and with the same download
+// keeping the bytes for a snapshot as well.
+class S3ConfigManagerBenchmark {
+
+  private static final String PERMISSIONS = "user-permissions.json";
+  private static final String REGIONS = "supported-regions.txt";
+  private static final int USERS = 500;
+  private static final int WARM_UP_CALLS = 2_000;
+  private static final int CALLS = 5_000;
+  private static final TypeReference<Map<String, List<String>>> PERMISSIONS_TYPE =
+      new TypeReference<>() {};
+
+  private final FakeS3Client s3Client = new FakeS3Client();
+  private final S3ConfigManager s3ConfigManager = S3ConfigManager.create(
+      s3Client, S3ConfigManagerTest.s3Config());
+  private final RevalidatingS3ConfigCache configCache = new RevalidatingS3ConfigCache(
+      s3ConfigManager, 0, 0, null);
+
+  @Test
+  void compareAllocations() {
+    s3Client.putObject("config/" + PERMISSIONS, toJson(
+        IntStream.range(0, USERS)
+            .boxed()
+            .collect(Collectors.toMap(i -> "user" + i, i -> List.of("RUN_NODES", "LIST_NODES")))));
+    s3Client.putObject("config/" + REGIONS, "eu-north-1\nus-east-1\neu-west-1\nap-south-1\n");
+
+    measure("permissions, string", () -> parseJson(
+        s3ConfigManager.downloadConfigFromS3(PERMISSIONS), PERMISSIONS_TYPE));
+    measure("permissions, cache", () -> {
+      configCache.invalidate(PERMISSIONS);
+      return configCache.get(PERMISSIONS, parsePermissions());
+    });
+    measure("permissions, kept", () -> s3ConfigManager.downloadConfigIfModified(
+        PERMISSIONS, null, parsePermissions(), true));
+    measure("regions, string", () -> Stream.of(
+            s3ConfigManager.downloadConfigFromS3(REGIONS).split("\n"))
+        .map(String::trim)
+        .toList());
+    measure("regions, cache", () -> {
+      configCache.invalidate(REGIONS);
+      return configCache.get(REGIONS, ConfigContentParser.lines());
+    });
+    measure("regions, kept", () -> s3ConfigManager.downloadConfigIfModified(
+        REGIONS, null, ConfigContentParser.lines(), true));
+  }
+
+  private static ConfigContentParser<Map<String, List<String>>> parsePermissions() {
+    return content -> parseJson(content, PERMISSIONS_TYPE);
+  }
+
+  private static void measure(String name, Supplier<?> download) {
+    com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().threadId();
+    for (int i = 0; i < WARM_UP_CALLS; i++) {
+      download.get();
+    }
+
+    long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+    long startedAt = System.nanoTime();
+    for (int i = 0; i < CALLS; i++) {
+      download.get();
+    }
+    long elapsedNs = System.nanoTime() - startedAt;
+    long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+    System.out.printf("%-20s %10d bytes/call %8.1f us/call%n", name, allocated / CALLS,
+                      elapsedNs / 1_000.0 / CALLS);
+  }
+
+}
@@ -0,0 +1,117 @@
+package org.github.akarkin1.s3;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.github.akarkin1.config.YamlApplicationConfiguration.S3Configuration;
+import org.github.akarkin1.config.exception.S3DownloadFailureException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.github.akarkin1.util.JsonUtils.parseJson;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3ConfigManagerTest {
+
+  private static final String PERMISSIONS = "user-permissions.json";
+  private static final ConfigContentParser<Map<String, List<String>>> PERMISSIONS_PARSER =
+      content -> parseJson(content, new TypeReference<>() {});
+
+  private final FakeS3Client s3Client = new FakeS3Client();
+  private final S3ConfigManager s3ConfigManager = S3ConfigManager.create(s3Client, s3Config());
+
+  @Test
+  void downloadConfigFromS3_parsesResponseStream() {
+    s3Client.putObject("config/" + PERMISSIONS, "{\"alice\":[\"RUN_NODES\"]}");
+
+    Map<String, List<String>> permissions = s3ConfigManager.downloadConfigFromS3(
+        PERMISSIONS, content -> parseJson(content, new TypeReference<>() {}));
+
+    assertEquals(Map.of("alice", List.of("RUN_NODES")), permissions);
+  }
+
+  @Test
+  void downloadConfigs_downloadsAllFiles() {
+    s3Client.putObject("config/eu-north-1/outputs.json", "eu-north-1");
+    s3Client.putObject("config/us-east-1/outputs.json", "us-east-1");
+
+    Map<String, String> contents = s3ConfigManager.downloadConfigs(
+        List.of("eu-north-1/outputs.json", "us-east-1/outputs.json"),
+        content -> new String(content.readAllBytes(), StandardCharsets.UTF_8));
+
+    assertEquals(Map.of("eu-north-1/outputs.json", "eu-north-1",
+                        "us-east-1/outputs.json", "us-east-1"), contents);
+    assertEquals(2, s3Client.getGetObjectCalls().get());
+  }
+
+  @Test
+  void downloadConfigs_failsIfAnyFileFails() {
+    s3Client.putObject("config/eu-north-1/outputs.json", "eu-north-1");
+
+    assertThrows(S3DownloadFailureException.class, () -> s3ConfigManager.downloadConfigs(
+        List.of("eu-north-1/outputs.json", "us-east-1/outputs.json"),
+        content -> new String(content.readAllBytes(), StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  void downloadConfigIfModified_parsesResponseStream() {
+    s3Client.putObject("config/" + PERMISSIONS, "{\"alice\":[\"RUN_NODES\"]}");
+
+    ParsedS3ConfigObject<Map<String, List<String>>> downloaded = s3ConfigManager
+        .downloadConfigIfModified(PERMISSIONS, null, PERMISSIONS_PARSER, false)
+        .orElseThrow();
+
+    assertEquals(Map.of("alice", List.of("RUN_NODES")), downloaded.value());
+    assertNull(downloaded.content());
+    assertEquals(Optional.empty(), s3ConfigManager.downloadConfigIfModified(
+        PERMISSIONS, downloaded.eTag(), PERMISSIONS_PARSER, false));
+  }
+
+  @Test
+  void downloadConfigIfModified_keepsWholeContentParsedFromStream() {
+    // Jackson stops after the root value and closes the stream, the trailing newline is kept too
+    String content = "{\"alice\":[\"RUN_NODES\"]}\n";
+    s3Client.putObject("config/" + PERMISSIONS, content);
+
+    ParsedS3ConfigObject<Map<String, List<String>>> downloaded = s3ConfigManager
+        .downloadConfigIfModified(PERMISSIONS, null, PERMISSIONS_PARSER, true)
+        .orElseThrow();
+
+    assertEquals(Map.of("alice", List.of("RUN_NODES")), downloaded.value());
+    assertArrayEquals(content.getBytes(StandardCharsets.UTF_8), downloaded.content());
+  }
+
+  @Test
+  void lines_skipBlankLines() {
+    s3Client.putObject("config/regions.txt", "eu-north-1\r\n\nus-east-1");
+
+    assertEquals(List.of("eu-north-1", "us-east-1"),
+                 s3ConfigManager.downloadConfigFromS3("regions.txt", ConfigContentParser.lines()));
+  }
+
+  @Test
+  void uploadConfigIfMatch_rejectsChangedObject() {
+    s3Client.putObject("config/" + PERMISSIONS, "{}");
+    String eTag = s3ConfigManager.downloadConfigIfModified(PERMISSIONS, null, PERMISSIONS_PARSER,
+                                                           false).orElseThrow().eTag();
+
+    Optional<String> newETag = s3ConfigManager.uploadConfigIfMatch(PERMISSIONS, "{\"a\":[]}", eTag);
+
+    assertTrue(newETag.isPresent());
+    assertEquals(Optional.empty(), s3ConfigManager.uploadConfigIfMatch(PERMISSIONS, "{}", eTag));
+  }
+
+  static S3Configuration s3Config() {
+    S3Configuration config = new S3Configuration();
+    config.setConfigBucket("bucket");
+    config.setConfigRootDir("config");
+    return config;
+  }
+
+}
@@ -0,0 +1,93 @@
+package org.github.akarkin1.tailscale;
+
+import org.github.akarkin1.config.YamlApplicationConfiguration.AWSConfiguration;
+import org.github.akarkin1.config.YamlApplicationConfiguration.EcsConfiguration;
+import org.github.akarkin1.ecs.FakeEcsManager;
+import org.github.akarkin1.ecs.TaskInfo;
+import org.github.akarkin1.exception.CommandExecutionFailedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TailscaleEcsNodeServiceTest {
+
+  private static final String SERVICE_NAME_TAG = "ServiceName";
+  private static final String HOST_NAME_TAG = "Hostname";
+  private static final String RUN_BY_TAG = "RunBy";
+  private static final String SERVICE_NAME = "tailscale-node";
+
+  private final FakeEcsManager ecsManager = new FakeEcsManager();
+  private TailscaleEcsNodeService nodeService;
+
+  @BeforeEach
+  void setUp() {
+    EcsConfiguration ecsConfig = new EcsConfiguration();
+    ecsConfig.setServiceName(SERVICE_NAME);
+    ecsConfig.setServiceNameTag(SERVICE_NAME_TAG);
+    ecsConfig.setHostNameTag(HOST_NAME_TAG);
+    ecsConfig.setRunByTag(RUN_BY_TAG);
+    AWSConfiguration awsConfig = new AWSConfiguration();
+    awsConfig.setRegionCities(Map.of(Region.EU_NORTH_1.id(), "Stockholm",
+                                     Region.US_EAST_1.id(), "Virginia"));
+    nodeService = new TailscaleEcsNodeService(ecsManager, ecsConfig, awsConfig);
+
+    ecsManager.getTasks().add(task("alice-stockholm-1", Region.EU_NORTH_1));
+  }
+
+  @Test
+  void completeInventory_hostnameInUse_isNotAvailable() {
+    assertFalse(nodeService.isHostnameAvailable("Stockholm", "alice-stockholm-1"));
+    assertTrue(nodeService.isHostnameAvailable("Stockholm", "alice-stockholm-2"));
+  }
+
+  @Test
+  void skippedRegion_hostnameCheckIsRefused() {
+    ecsManager.getSkippedRegions().add(Region.US_EAST_1);
+
+    assertThrows(CommandExecutionFailedException.class,
+                 () -> nodeService.isHostnameAvailable("Stockholm", "alice-virginia-1"));
+  }
+
+  @Test
+  void skippedRegion_nodeWithoutHostnameIsNotStarted() {
+    ecsManager.getSkippedRegions().add(Region.US_EAST_1);
+
+    assertThrows(CommandExecutionFailedException.class,
+                 () -> nodeService.runNode("Stockholm", "alice", null));
+    assertTrue(ecsManager.getStartedIn().isEmpty());
+  }
+
+  @Test
+  void completeInventory_nodeWithoutHostname_getsNextFreeName() {
+    TaskInfo taskInfo = nodeService.runNode("Stockholm", "alice", null);
+
+    assertEquals("alice-stockholm-2", taskInfo.getHostName());
+  }
+
+  @Test
+  void skippedRegion_nodeListIsStillReturned() {
+    ecsManager.getSkippedRegions().add(Region.US_EAST_1);
+
+    assertEquals(List.of(Region.US_EAST_1), nodeService.listTasks("alice").skippedRegions());
+  }
+
+  private static TaskInfo task(String hostName, Region region) {
+    return TaskInfo.builder()
+        .id("task-" + hostName)
+        .hostName(hostName)
+        .region(region)
+        .tags(Map.of(SERVICE_NAME_TAG, SERVICE_NAME,
+                     HOST_NAME_TAG, hostName,
+                     RUN_BY_TAG, "alice"))
+        .build();
+  }
+
+}